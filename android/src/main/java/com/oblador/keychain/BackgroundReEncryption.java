@@ -0,0 +1,207 @@
+package com.oblador.keychain;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.oblador.keychain.PrefsStorage.ResultSet;
+import com.oblador.keychain.cipherStorage.CipherStorage;
+import com.oblador.keychain.cipherStorage.CipherStorage.EncryptionResult;
+import com.oblador.keychain.cipherStorage.CipherStorage.SecretBytes;
+import com.oblador.keychain.exceptions.CryptoFailedException;
+
+import java.util.List;
+
+/**
+ * Re-encrypt stored entries in background, in throttled batches.
+ * <p>
+ * Each entry is replaced only if nobody changed it during re-encryption, so concurrent writes
+ * always win. Old keys are recorded in {@link KeyJournal} and removed one batch later, that gives
+ * in-flight reads of the old entries time to complete and survives the process death. Entries
+ * of the biometric storages are never touched, they cannot be decrypted without user presence.
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+/* package */ abstract class BackgroundReEncryption {
+  private static final String LOG_TAG = BackgroundReEncryption.class.getSimpleName();
+
+  /** Progress of the processing. */
+  public interface ProgressListener {
+    void onProgress(int processed, int total);
+  }
+
+  /** Where the entry should be re-encrypted to. */
+  protected static final class Target {
+    @NonNull
+    public final CipherStorage storage;
+    @NonNull
+    public final String keyAlias;
+    public final int keyVersion;
+
+    public Target(@NonNull final CipherStorage storage, @NonNull final String keyAlias, final int keyVersion) {
+      this.storage = storage;
+      this.keyAlias = keyAlias;
+      this.keyVersion = keyVersion;
+    }
+  }
+
+  //region Members
+  @NonNull
+  protected final KeychainModule module;
+  @NonNull
+  protected final PrefsStorage prefs;
+  private final int batchSize;
+  private final long batchDelay;
+  /** Old keys waiting for removal. */
+  @NonNull
+  private final KeyJournal journal;
+  /** Keys were retired since last journal replay. */
+  private boolean hasRetiredKeys;
+  @Nullable
+  private ProgressListener listener;
+
+  private int reEncrypted;
+  private int skipped;
+  private int failed;
+  //endregion
+
+  protected BackgroundReEncryption(@NonNull final KeychainModule module,
+                                   @NonNull final PrefsStorage prefs,
+                                   final int batchSize,
+                                   final long batchDelay) {
+    this.module = module;
+    this.prefs = prefs;
+    this.journal = module.getKeyJournal();
+    this.batchSize = Math.max(1, batchSize);
+    this.batchDelay = Math.max(0, batchDelay);
+  }
+
+  //region Configuration
+  @NonNull
+  public BackgroundReEncryption setProgressListener(@Nullable final ProgressListener listener) {
+    this.listener = listener;
+    return this;
+  }
+  //endregion
+
+  //region Results
+
+  /** Number of re-encrypted entries. */
+  public int getReEncrypted() {
+    return reEncrypted;
+  }
+
+  /** Number of entries that are already up to date, changed concurrently or not supported. */
+  public int getSkipped() {
+    return skipped;
+  }
+
+  /** Number of entries that cannot be re-encrypted. */
+  public int getFailed() {
+    return failed;
+  }
+  //endregion
+
+  //region Extension points
+
+  /** Get target of the entry re-encryption. NULL - entry stays as is. */
+  @Nullable
+  protected abstract Target getTarget(@NonNull final String service,
+                                      @NonNull final CipherStorage current,
+                                      @NonNull final ResultSet entry);
+
+  /** Services to process, in processing order. */
+  @NonNull
+  protected List<String> getServices() {
+    return prefs.getServices();
+  }
+
+  /** Batch is done and its retired keys removed. */
+  protected void onBatchCompleted(@NonNull final String lastService) {
+  }
+  //endregion
+
+  //region Implementation
+
+  /** Process all services in throttled batches. */
+  public void run() throws InterruptedException, CryptoFailedException {
+    final List<String> services = getServices();
+    final int total = services.size();
+
+    for (int i = 0; i < total; i++) {
+      if (i > 0 && 0 == i % batchSize) {
+        Thread.sleep(batchDelay);
+        removeRetiredKeys();
+        onBatchCompleted(services.get(i - 1));
+      }
+
+      reEncrypt(services.get(i));
+
+      if (null != listener) listener.onProgress(i + 1, total);
+    }
+
+    if (hasRetiredKeys) {
+      Thread.sleep(batchDelay);
+      removeRetiredKeys();
+    }
+
+    if (total > 0) {
+      onBatchCompleted(services.get(total - 1));
+    }
+  }
+
+  /** Re-encrypt one entry, if it has a target. */
+  private void reEncrypt(@NonNull final String service) {
+    final ResultSet entry = prefs.getEncryptedEntry(service);
+    final CipherStorage current = (null == entry) ? null : module.getCipherStorageByName(entry.cipherStorageName);
+
+    if (null == current || current.isBiometrySupported()) {
+      skipped++;
+      return;
+    }
+
+    final Target target = getTarget(service, current, entry);
+
+    if (null == target) {
+      skipped++;
+      return;
+    }
+
+    final String oldKeyAlias = KeychainModule.getKeyAlias(entry, service);
+
+    try (final SecretBytes username = new SecretBytes();
+         final SecretBytes password = new SecretBytes()) {
+      // new key should be not weaker than the current one
+      final SecurityLevel level = current.decrypt(oldKeyAlias,
+        entry.username, entry.password, SecurityLevel.ANY, username, password);
+      final EncryptionResult result = target.storage.encrypt(target.keyAlias, username, password, level);
+
+      final boolean replaced = prefs.replaceEncryptedEntry(service, entry, result,
+        KeychainModule.getRecordedKeyAlias(target.keyAlias, service), target.keyVersion);
+
+      if (replaced) {
+        // all keystore storages share one keystore, same alias is the same key
+        if (!oldKeyAlias.equals(target.keyAlias)) {
+          journal.retire(current, oldKeyAlias);
+          hasRetiredKeys = true;
+        }
+
+        reEncrypted++;
+      } else {
+        // entry was written concurrently, new value is already encrypted by the up to date key
+        skipped++;
+      }
+    } catch (Throwable fail) {
+      KeychainLog.w(LOG_TAG, fail, "Re-encryption failed for service: {s}", service);
+
+      failed++;
+    }
+  }
+
+  /** Remove keys that are not referenced by entries anymore, one disk flush per batch. */
+  private void removeRetiredKeys() {
+    if (!hasRetiredKeys) return;
+
+    journal.replay();
+    hasRetiredKeys = false;
+  }
+  //endregion
+}
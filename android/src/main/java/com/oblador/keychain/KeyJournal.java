@@ -0,0 +1,153 @@
+package com.oblador.keychain;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.oblador.keychain.PrefsStorage.ResultSet;
+import com.oblador.keychain.cipherStorage.CipherStorage;
+import com.oblador.keychain.exceptions.KeyStoreAccessException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Write-ahead journal of the keys removal.
+ * <p>
+ * Entries are written by async {@code apply}, so key removed right after the entry overwrite may
+ * outlive the entry on crash: prefs on disk keep pointing to the removed key. Journal records the
+ * key first and removes it only when entries are flushed to disk and none of them references the
+ * key anymore. Records left by the crash are replayed on next start.
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+/* package */ final class KeyJournal {
+  private static final String LOG_TAG = KeyJournal.class.getSimpleName();
+  /** Name of the journal shared preferences. */
+  public static final String KEYCHAIN_JOURNAL = "RN_KEYCHAIN_JOURNAL";
+  /** Separator of the storage name and key alias in the record name. Storage names never contain it. */
+  private static final char SEPARATOR = ':';
+
+  //region Members
+  @NonNull
+  private final SharedPreferences journal;
+  @NonNull
+  private final PrefsStorage prefs;
+  @NonNull
+  private final KeychainModule module;
+  //endregion
+
+  /* package */ KeyJournal(@NonNull final Context context,
+                           @NonNull final PrefsStorage prefs,
+                           @NonNull final KeychainModule module) {
+    this.journal = context.getSharedPreferences(KEYCHAIN_JOURNAL, Context.MODE_PRIVATE);
+    this.prefs = prefs;
+    this.module = module;
+  }
+
+  //region Journal
+
+  /**
+   * Record the key for removal, key is removed by next {@link #replay()}. Record itself is written
+   * asynchronously: record lost by crash leaves unused key in keystore, never a broken entry.
+   */
+  public void retire(@NonNull final CipherStorage storage, @NonNull final String keyAlias) {
+    journal.edit().putString(getRecordName(storage.getCipherStorageName(), keyAlias), keyAlias).apply();
+  }
+
+  /** Record the key for removal and remove it right away, if no entry references it. */
+  public synchronized void removeKey(@NonNull final CipherStorage storage, @NonNull final String keyAlias)
+    throws KeyStoreAccessException {
+    final String record = getRecordName(storage.getCipherStorageName(), keyAlias);
+    journal.edit().putString(record, keyAlias).apply();
+
+    prefs.flush();
+    removeIfUnused(storage, keyAlias, record);
+  }
+
+  /** True - no keys wait for removal. */
+  public boolean isEmpty() {
+    return journal.getAll().isEmpty();
+  }
+
+  /**
+   * Remove all recorded keys that are not referenced by entries. Keys that cannot be removed stay
+   * in journal for the next replay.
+   *
+   * @return number of removed keys.
+   */
+  public synchronized int replay() {
+    final List<String> records = new ArrayList<>(journal.getAll().keySet());
+    if (records.isEmpty()) return 0;
+
+    // entries should be on disk before their old keys are gone
+    prefs.flush();
+
+    int removed = 0;
+
+    for (final String record : records) {
+      final String keyAlias = journal.getString(record, null);
+      final int separator = record.indexOf(SEPARATOR);
+      final CipherStorage storage = (null == keyAlias || separator < 0) ? null
+        : module.getCipherStorageByName(record.substring(0, separator));
+
+      try {
+        if (null == storage) {
+          journal.edit().remove(record).apply();
+        } else if (removeIfUnused(storage, keyAlias, record)) {
+          removed++;
+        }
+      } catch (KeyStoreAccessException fail) {
+        KeychainLog.w(LOG_TAG, fail, "Cannot remove retired key: {s}", keyAlias);
+      }
+    }
+
+    return removed;
+  }
+  //endregion
+
+  //region Implementation
+
+  /** Remove the key and its record. Referenced key is kept, only the record is dropped. */
+  private boolean removeIfUnused(@NonNull final CipherStorage storage,
+                                 @NonNull final String keyAlias,
+                                 @NonNull final String record) throws KeyStoreAccessException {
+    final boolean isReferenced = isReferenced(storage.getCipherStorageName(), keyAlias);
+
+    if (!isReferenced) {
+      storage.removeKey(keyAlias);
+    }
+
+    journal.edit().remove(record).apply();
+
+    return !isReferenced;
+  }
+
+  /** True - stored entry is encrypted by the key. All keystore storages share one keys namespace. */
+  private boolean isReferenced(@Nullable final String storageName, @NonNull final String keyAlias) {
+    for (final String service : prefs.getServices()) {
+      final ResultSet entry = prefs.getEncryptedEntry(service);
+
+      if (null != entry
+        && keyAlias.equals(KeychainModule.getKeyAlias(entry, service))
+        && isSameKeysNamespace(storageName, entry.cipherStorageName)) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  private boolean isSameKeysNamespace(@Nullable final String first, @Nullable final String second) {
+    if (null == first || null == second) return false;
+
+    return first.equals(second) || (module.isKeystoreBacked(first) && module.isKeystoreBacked(second));
+  }
+
+  @NonNull
+  private static String getRecordName(@Nullable final String storageName, @NonNull final String keyAlias) {
+    return storageName + SEPARATOR + keyAlias;
+  }
+  //endregion
+}
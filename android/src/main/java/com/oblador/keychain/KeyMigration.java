@@ -0,0 +1,98 @@
+package com.oblador.keychain;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.oblador.keychain.PrefsStorage.ResultSet;
+import com.oblador.keychain.cipherStorage.CipherStorage;
+import com.oblador.keychain.exceptions.CryptoFailedException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Move all stored entries to the best storage available without biometry, same upgrade that
+ * {@link KeychainModule.Rules#AUTOMATIC_UPGRADE} does on read, but for all entries at once.
+ * <p>
+ * Services are processed in alphabetical order and the last service of each completed batch is
+ * persisted, so migration interrupted by the process death continues from that point. Entries
+ * written after the cursor position are stored by the best storage already.
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+/* package */ final class KeyMigration extends BackgroundReEncryption {
+  @Nullable
+  private CipherStorage target;
+
+  /* package */ KeyMigration(@NonNull final KeychainModule module,
+                             @NonNull final PrefsStorage prefs,
+                             final int batchSize,
+                             final long batchDelay) {
+    super(module, prefs, batchSize, batchDelay);
+  }
+
+  /** Name of the storage that entries are migrated to. */
+  @Nullable
+  public String getTargetStorageName() {
+    return null == target ? null : target.getCipherStorageName();
+  }
+
+  /**
+   * Select target storage and migrate all entries in throttled batches.
+   *
+   * @throws CryptoFailedException no storage is available on this device.
+   */
+  @Override
+  public void run() throws InterruptedException, CryptoFailedException {
+    target = module.getCipherStorageForCurrentAPILevel(false);
+
+    final String cursor = prefs.getMigrationCursor();
+    prefs.setMigrationCursor(null == cursor ? KeychainModule.EMPTY_STRING : cursor);
+
+    super.run();
+
+    prefs.setMigrationCursor(null);
+  }
+
+  /** Services that are not processed yet by the unfinished migration. */
+  @NonNull
+  @Override
+  protected List<String> getServices() {
+    final List<String> services = super.getServices();
+    final String cursor = prefs.getMigrationCursor();
+    Collections.sort(services);
+
+    if (null == cursor || cursor.isEmpty()) return services;
+
+    final List<String> left = new ArrayList<>();
+    for (final String service : services) {
+      if (service.compareTo(cursor) > 0) left.add(service);
+    }
+
+    return left;
+  }
+
+  @Override
+  protected void onBatchCompleted(@NonNull final String lastService) {
+    prefs.setMigrationCursor(lastService);
+  }
+
+  /** Entries of weaker storages and entries with outdated key aliases are moved. */
+  @Nullable
+  @Override
+  protected Target getTarget(@NonNull final String service,
+                             @NonNull final CipherStorage current,
+                             @NonNull final ResultSet entry) {
+    if (null == target) return null;
+
+    if (target.getCipherStorageName().equals(current.getCipherStorageName())) {
+      if (!module.isKeyAliasOutdated(service, current, entry)) return null;
+    } else if (module.getCapabilityLevel(current) >= module.getCapabilityLevel(target)) {
+      return null;
+    }
+
+    final int keyVersion = module.getKeyVersion(target);
+
+    return new Target(target, module.getKeyAlias(target, service, keyVersion), keyVersion);
+  }
+}
@@ -0,0 +1,190 @@
+package com.oblador.keychain;
+
+import android.os.Process;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import com.oblador.keychain.cipherStorage.CipherStorage;
+import com.oblador.keychain.cipherStorage.CipherStorageBase;
+
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Pool of keys generated ahead of time in background. Key generation is the slowest operation
+ * of the keystore storages, pool moves it out of the first write of each service.
+ * <p>
+ * Keystore keys cannot be renamed, so spare key is assigned to the service by recording its
+ * alias together with the encrypted entry.
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public class KeyPool {
+  //region Constants
+  private static final String LOG_TAG = KeyPool.class.getSimpleName();
+  //endregion
+
+  //region Members
+  /** Storage that owns spare keys. */
+  @NonNull
+  private final CipherStorageBase storage;
+  /** Source of already assigned key aliases. */
+  @NonNull
+  private final PrefsStorage prefsStorage;
+  /** How many spare keys to keep ready. */
+  private final int capacity;
+  /** Background thread for keys generation. */
+  @NonNull
+  private final Executor executor;
+  /** Aliases of spare keys ready for use. */
+  private final Queue<String> spares = new ConcurrentLinkedQueue<>();
+  /** Only one refill at a time. */
+  private final AtomicBoolean isRefilling = new AtomicBoolean(false);
+  /** Spare keys of previous sessions are loaded only once. */
+  private volatile boolean isLoaded;
+  //endregion
+
+  //region Initialization
+  public KeyPool(@NonNull final CipherStorageBase storage,
+                 @NonNull final PrefsStorage prefsStorage,
+                 final int capacity) {
+    this(storage, prefsStorage, capacity, Executors.newSingleThreadExecutor(runnable -> {
+      final Thread thread = new Thread(() -> {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+        runnable.run();
+      }, "keychain-key-pool");
+      thread.setDaemon(true);
+
+      return thread;
+    }));
+  }
+
+  @VisibleForTesting
+  /* package */ KeyPool(@NonNull final CipherStorageBase storage,
+                        @NonNull final PrefsStorage prefsStorage,
+                        final int capacity,
+                        @NonNull final Executor executor) {
+    this.storage = storage;
+    this.prefsStorage = prefsStorage;
+    this.capacity = capacity;
+    this.executor = executor;
+  }
+  //endregion
+
+  //region API
+
+  /** True - pool serves keys of the provided storage. */
+  public boolean isServing(@NonNull final CipherStorage storage) {
+    return this.storage == storage;
+  }
+
+  /**
+   * Take spare key that satisfies the level. Taken key is never returned again, pool starts
+   * refill in background.
+   *
+   * @return alias of the spare key, or NULL if no suitable key is ready yet.
+   */
+  @Nullable
+  public String take(@NonNull final SecurityLevel level) {
+    String alias = null;
+
+    try {
+      while (null == alias) {
+        final String candidate = spares.poll();
+        if (null == candidate) break;
+
+        try {
+          if (storage.isKeySatisfyingLevel(candidate, level)) {
+            alias = candidate;
+          } else {
+            // all spares are generated the same way, no reason to check others
+            spares.add(candidate);
+            break;
+          }
+        } catch (Throwable fail) {
+          KeychainLog.w(LOG_TAG, fail, "Spare key dropped: {s}", candidate);
+
+          // otherwise broken key is loaded again as spare on the next start
+          removeKeyQuietly(candidate);
+        }
+      }
+    } finally {
+      refill();
+    }
+
+    return alias;
+  }
+
+  /** Number of spare keys ready for use. */
+  public int size() {
+    return spares.size();
+  }
+
+  /** Stop background generation, pool is not used anymore. */
+  public void shutdown() {
+    if (executor instanceof ExecutorService) {
+      ((ExecutorService) executor).shutdownNow();
+    }
+  }
+
+  /** Schedule generation of missing spare keys in background. */
+  public void refill() {
+    if (!isRefilling.compareAndSet(false, true)) return;
+
+    try {
+      executor.execute(() -> {
+        try {
+          refillNow();
+        } finally {
+          isRefilling.set(false);
+        }
+      });
+    } catch (RejectedExecutionException ignored) {
+      // pool is shut down, spare keys are not needed anymore
+      isRefilling.set(false);
+    }
+  }
+  //endregion
+
+  //region Implementation
+
+  /** Remove spare key from keystore, failure is only logged. */
+  private void removeKeyQuietly(@NonNull final String alias) {
+    try {
+      storage.removeKey(alias);
+    } catch (Throwable fail) {
+      KeychainLog.w(LOG_TAG, fail, "Spare key removal failed: {s}", alias);
+    }
+  }
+
+  /** Load spare keys of the previous sessions and generate missing keys. */
+  @VisibleForTesting
+  /* package */ void refillNow() {
+    try {
+      if (!isLoaded) {
+        // keys assigned to services are recorded by entries, all others are free to use
+        final Set<String> assigned = prefsStorage.getKeyAliases();
+
+        for (String alias : storage.getSpareKeyAliases()) {
+          if (!assigned.contains(alias)) spares.add(alias);
+        }
+
+        isLoaded = true;
+      }
+
+      while (spares.size() < capacity) {
+        spares.add(storage.generateSpareKey());
+      }
+    } catch (Throwable fail) {
+      KeychainLog.w(LOG_TAG, fail, "Spare keys generation failed.");
+    }
+  }
+  //endregion
+}
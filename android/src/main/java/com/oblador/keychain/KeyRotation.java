@@ -0,0 +1,45 @@
+package com.oblador.keychain;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.oblador.keychain.PrefsStorage.ResultSet;
+import com.oblador.keychain.cipherStorage.CipherStorage;
+import com.oblador.keychain.exceptions.CryptoFailedException;
+
+/** Re-encrypt all stored entries by keys of the new version. */
+@SuppressWarnings({"unused", "WeakerAccess"})
+/* package */ final class KeyRotation extends BackgroundReEncryption {
+  private int keyVersion;
+
+  /* package */ KeyRotation(@NonNull final KeychainModule module,
+                            @NonNull final PrefsStorage prefs,
+                            final int batchSize,
+                            final long batchDelay) {
+    super(module, prefs, batchSize, batchDelay);
+  }
+
+  /** Version of the keys that entries are rotated to. */
+  public int getKeyVersion() {
+    return keyVersion;
+  }
+
+  /** Start new keys version and re-encrypt all entries in throttled batches. */
+  @Override
+  public void run() throws InterruptedException, CryptoFailedException {
+    keyVersion = prefs.incrementKeyVersion();
+
+    super.run();
+  }
+
+  /** Entries of the previous versions are moved to the key of current version. */
+  @Nullable
+  @Override
+  protected Target getTarget(@NonNull final String service,
+                             @NonNull final CipherStorage current,
+                             @NonNull final ResultSet entry) {
+    if (entry.keyVersion >= keyVersion || !module.isKeyRotationSupported(current)) return null;
+
+    return new Target(current, module.getKeyAlias(current, service, keyVersion), keyVersion);
+  }
+}
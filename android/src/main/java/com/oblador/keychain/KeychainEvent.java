@@ -0,0 +1,72 @@
+package com.oblador.keychain;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Start or end of the module or cipher storage operation, delivered to {@link KeychainEventListener}.
+ * Service name is never exposed, only its hash.
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public final class KeychainEvent {
+  //region Constants
+  /** Module operations. */
+  public static final String SET_GENERIC_PASSWORD = "setGenericPassword";
+  public static final String GET_GENERIC_PASSWORD = "getGenericPassword";
+  public static final String RESET_GENERIC_PASSWORD = "resetGenericPassword";
+  /** Cipher storage operations. */
+  public static final String ENCRYPT = "encrypt";
+  public static final String DECRYPT = "decrypt";
+  public static final String MIGRATE = "migrate";
+  //endregion
+
+  /** Result of the operation. */
+  public enum Outcome {
+    /** Operation completed. */
+    SUCCESS,
+    /** No entry stored for the service. */
+    NOT_FOUND,
+    /** Operation failed, error is reported to the caller. */
+    FAILURE
+  }
+
+  //region Members
+  /** Operation name, one of the constants. */
+  @NonNull
+  public final String operation;
+  /** Hash of the service name. */
+  public final int serviceHash;
+  /** Name of the cipher storage. NULL - not selected yet. */
+  @Nullable
+  public final String storage;
+  /** Duration of the operation in nanoseconds, zero for start events. */
+  public final long durationNanos;
+  /** Result of the operation. NULL - start event. */
+  @Nullable
+  public final Outcome outcome;
+  //endregion
+
+  public KeychainEvent(@NonNull final String operation,
+                       final int serviceHash,
+                       @Nullable final String storage,
+                       final long durationNanos,
+                       @Nullable final Outcome outcome) {
+    this.operation = operation;
+    this.serviceHash = serviceHash;
+    this.storage = storage;
+    this.durationNanos = durationNanos;
+    this.outcome = outcome;
+  }
+
+  /** True - event reports start of the operation. */
+  public boolean isStart() {
+    return null == outcome;
+  }
+
+  @NonNull
+  @Override
+  public String toString() {
+    return operation + "{service=" + Integer.toHexString(serviceHash) + ", storage=" + storage +
+      ", duration=" + durationNanos + "ns, outcome=" + outcome + "}";
+  }
+}
@@ -0,0 +1,18 @@
+package com.oblador.keychain;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Receives start and end events of the module and cipher storage operations. Register it by
+ * {@link KeychainModuleBuilder#withEventListener(KeychainEventListener)}.
+ * <p>
+ * Callbacks are invoked synchronously on the thread of the operation, so they should be fast
+ * and must not call the module. Exceptions of the listener are logged and ignored.
+ */
+public interface KeychainEventListener {
+  /** Operation started. */
+  void onStart(@NonNull KeychainEvent event);
+
+  /** Operation completed, event holds duration and outcome. */
+  void onEnd(@NonNull KeychainEvent event);
+}
@@ -0,0 +1,160 @@
+package com.oblador.keychain;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Internal logger with runtime level. Messages are templates with {@code {}} placeholders for
+ * plain arguments and {@code {s}} placeholders for service names and key aliases, which are
+ * printed only as a hash. Templates are formatted only if the level is enabled, so disabled
+ * calls cost a single field comparison and no string building.
+ * <p>
+ * Default level is {@link Log#WARN}, debug output is enabled by
+ * {@link KeychainModuleBuilder#withLogLevel(int)} or for debuggable apps.
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public final class KeychainLog {
+  /** Level that disables all output. */
+  public static final int NONE = Integer.MAX_VALUE;
+  /** Placeholder of the plain argument. */
+  private static final String PLAIN = "{}";
+  /** Placeholder of the redacted argument. */
+  private static final String REDACTED = "{s}";
+
+  /** Minimal printed priority, one of {@link Log} constants or {@link #NONE}. */
+  private static volatile int level = Log.WARN;
+
+  private KeychainLog() {
+  }
+
+  //region Configuration
+
+  /** Set minimal printed priority, e.g. {@link Log#DEBUG}. */
+  public static void setLevel(final int priority) {
+    level = priority;
+  }
+
+  public static int getLevel() {
+    return level;
+  }
+
+  /** True - messages of provided priority are printed. */
+  public static boolean isLoggable(final int priority) {
+    return priority >= level;
+  }
+  //endregion
+
+  //region Logging
+
+  public static void v(@NonNull final String tag, @NonNull final String template) {
+    if (isLoggable(Log.VERBOSE)) Log.v(tag, template);
+  }
+
+  public static void v(@NonNull final String tag, @NonNull final String template, @Nullable final Object arg) {
+    if (isLoggable(Log.VERBOSE)) Log.v(tag, format(template, arg, null));
+  }
+
+  public static void d(@NonNull final String tag, @NonNull final String template) {
+    if (isLoggable(Log.DEBUG)) Log.d(tag, template);
+  }
+
+  public static void d(@NonNull final String tag, @NonNull final String template, @Nullable final Object arg) {
+    if (isLoggable(Log.DEBUG)) Log.d(tag, format(template, arg, null));
+  }
+
+  public static void d(@NonNull final String tag, @NonNull final String template,
+                       @Nullable final Object arg1, @Nullable final Object arg2) {
+    if (isLoggable(Log.DEBUG)) Log.d(tag, format(template, arg1, arg2));
+  }
+
+  public static void d(@NonNull final String tag, @NonNull final Throwable fail, @NonNull final String template) {
+    if (isLoggable(Log.DEBUG)) Log.d(tag, template, fail);
+  }
+
+  public static void w(@NonNull final String tag, @NonNull final String template) {
+    if (isLoggable(Log.WARN)) Log.w(tag, template);
+  }
+
+  public static void w(@NonNull final String tag, @NonNull final String template, @Nullable final Object arg) {
+    if (isLoggable(Log.WARN)) Log.w(tag, format(template, arg, null));
+  }
+
+  public static void w(@NonNull final String tag, @NonNull final Throwable fail, @NonNull final String template) {
+    if (isLoggable(Log.WARN)) Log.w(tag, template, fail);
+  }
+
+  public static void w(@NonNull final String tag, @NonNull final Throwable fail,
+                       @NonNull final String template, @Nullable final Object arg) {
+    if (isLoggable(Log.WARN)) Log.w(tag, format(template, arg, null), fail);
+  }
+
+  public static void e(@NonNull final String tag, @NonNull final String template) {
+    if (isLoggable(Log.ERROR)) Log.e(tag, template);
+  }
+
+  public static void e(@NonNull final String tag, @NonNull final String template, @Nullable final Object arg) {
+    if (isLoggable(Log.ERROR)) Log.e(tag, format(template, arg, null));
+  }
+
+  /** Error with the message of the throwable. */
+  public static void e(@NonNull final String tag, @NonNull final Throwable fail) {
+    if (isLoggable(Log.ERROR)) Log.e(tag, String.valueOf(fail.getMessage()), fail);
+  }
+
+  public static void e(@NonNull final String tag, @NonNull final Throwable fail, @NonNull final String template) {
+    if (isLoggable(Log.ERROR)) Log.e(tag, template, fail);
+  }
+
+  public static void e(@NonNull final String tag, @NonNull final Throwable fail,
+                       @NonNull final String template, @Nullable final Object arg) {
+    if (isLoggable(Log.ERROR)) Log.e(tag, format(template, arg, null), fail);
+  }
+  //endregion
+
+  //region Implementation
+
+  /** Replace placeholders by arguments in order of appearance. */
+  @NonNull
+  /* package */ static String format(@NonNull final String template,
+                                     @Nullable final Object arg1,
+                                     @Nullable final Object arg2) {
+    final StringBuilder result = new StringBuilder(template.length() + 32);
+    int start = 0;
+    int index = 0;
+
+    while (index < 2) {
+      final int plain = template.indexOf(PLAIN, start);
+      final int redacted = template.indexOf(REDACTED, start);
+
+      final int position;
+      final boolean isRedacted;
+      if (plain < 0 && redacted < 0) {
+        break;
+      } else if (redacted < 0 || (plain >= 0 && plain < redacted)) {
+        position = plain;
+        isRedacted = false;
+      } else {
+        position = redacted;
+        isRedacted = true;
+      }
+
+      final Object arg = (0 == index++) ? arg1 : arg2;
+      result.append(template, start, position)
+        .append(isRedacted ? redact(arg) : String.valueOf(arg));
+      start = position + (isRedacted ? REDACTED.length() : PLAIN.length());
+    }
+
+    return result.append(template, start, template.length()).toString();
+  }
+
+  /** Stable short representation of the sensitive value, e.g. {@code #5e8b1c2a}. */
+  @NonNull
+  /* package */ static String redact(@Nullable final Object value) {
+    if (null == value) return "null";
+
+    return "#" + Integer.toHexString(value.hashCode());
+  }
+  //endregion
+}
@@ -1,13 +1,16 @@
 package com.oblador.keychain;
 
 import android.os.Build;
+import android.os.Handler;
 import android.os.Looper;
+import android.os.Process;
+import android.os.Trace;
 import android.text.TextUtils;
-import android.util.Log;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.annotation.StringDef;
+import androidx.annotation.VisibleForTesting;
 import androidx.biometric.BiometricPrompt;
 import androidx.biometric.BiometricPrompt.PromptInfo;
 import androidx.fragment.app.FragmentActivity;
@@ -18,28 +21,42 @@ import com.facebook.react.bridge.Promise;
 import com.facebook.react.bridge.ReactApplicationContext;
 import com.facebook.react.bridge.ReactContextBaseJavaModule;
 import com.facebook.react.bridge.ReactMethod;
+import com.facebook.react.bridge.ReadableArray;
 import com.facebook.react.bridge.ReadableMap;
 import com.facebook.react.bridge.WritableMap;
+import com.facebook.react.modules.core.DeviceEventManagerModule.RCTDeviceEventEmitter;
 import com.oblador.keychain.PrefsStorage.ResultSet;
 import com.oblador.keychain.cipherStorage.CipherStorage;
 import com.oblador.keychain.cipherStorage.CipherStorage.DecryptionContext;
 import com.oblador.keychain.cipherStorage.CipherStorage.DecryptionResult;
 import com.oblador.keychain.cipherStorage.CipherStorage.DecryptionResultHandler;
 import com.oblador.keychain.cipherStorage.CipherStorage.EncryptionResult;
+import com.oblador.keychain.cipherStorage.CipherStorage.SecretBytes;
 import com.oblador.keychain.cipherStorage.CipherStorageBase;
-import com.oblador.keychain.cipherStorage.CipherStorageFacebookConceal;
+import com.oblador.keychain.cipherStorage.CipherStorageDescriptor;
 import com.oblador.keychain.cipherStorage.CipherStorageKeystoreAesCbc;
 import com.oblador.keychain.cipherStorage.CipherStorageKeystoreRsaEcb;
 import com.oblador.keychain.cipherStorage.CipherStorageKeystoreRsaEcb.NonInteractiveHandler;
+import com.oblador.keychain.cipherStorage.CipherStorageSoftwareAesGcm;
+import com.oblador.keychain.cipherStorage.FileCipher;
 import com.oblador.keychain.exceptions.CryptoFailedException;
 import com.oblador.keychain.exceptions.EmptyParameterException;
 import com.oblador.keychain.exceptions.KeyStoreAccessException;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.crypto.Cipher;
 
@@ -48,9 +65,21 @@ public class KeychainModule extends ReactContextBaseJavaModule {
   //region Constants
   public static final String KEYCHAIN_MODULE = "RNKeychainManager";
   public static final String FINGERPRINT_SUPPORTED_NAME = "Fingerprint";
+  /** Event with progress of the file encryption/decryption. */
+  public static final String FILE_PROGRESS_EVENT = "RNKeychainFileProgress";
+  /** Event with progress of the bulk entries migration. */
+  public static final String MIGRATION_PROGRESS_EVENT = "RNKeychainMigrationProgress";
   public static final String EMPTY_STRING = "";
 
   private static final String LOG_TAG = KeychainModule.class.getSimpleName();
+  /** Entries re-encrypted by keys rotation in one batch. */
+  public static final int DEFAULT_ROTATION_BATCH_SIZE = 10;
+  /** Pause between keys rotation batches, in milliseconds. */
+  public static final int DEFAULT_ROTATION_BATCH_DELAY = 100;
+  /** Time budget of the entry upgrade on read, in milliseconds. One frame. */
+  public static final int DEFAULT_UPGRADE_BUDGET = 16;
+  /** Lifetime of the prefetched secrets, in milliseconds. */
+  public static final int DEFAULT_PREFETCH_TTL = 10_000;
 
   @StringDef({AccessControl.NONE
     , AccessControl.USER_PRESENCE
@@ -85,13 +114,38 @@ public class KeychainModule extends ReactContextBaseJavaModule {
     String ACCESSIBLE = "accessible";
     String AUTH_PROMPT = "authenticationPrompt";
     String AUTH_TYPE = "authenticationType";
+    String AUTH_VALIDITY = "authenticationValidityDuration";
     String SERVICE = "service";
     String SECURITY_LEVEL = "securityLevel";
     String RULES = "rules";
+    String UPGRADE_BUDGET = "upgradeBudget";
 
     String USERNAME = "username";
     String PASSWORD = "password";
     String STORAGE = "storage";
+
+    String BATCH_SIZE = "batchSize";
+    String BATCH_DELAY = "batchDelay";
+    String KEY_VERSION = "keyVersion";
+    String ROTATED = "rotated";
+    String MIGRATED = "migrated";
+    String SKIPPED = "skipped";
+    String FAILED = "failed";
+
+    String PATH = "path";
+    String PROCESSED = "processed";
+    String TOTAL = "total";
+
+    String COUNT = "count";
+    String MEAN = "mean";
+    String P50 = "p50";
+    String P90 = "p90";
+    String P99 = "p99";
+    String MAX = "max";
+    String COUNTERS = "counters";
+
+    String CODE = "code";
+    String MESSAGE = "message";
   }
 
   /** Known error codes. */
@@ -100,6 +154,8 @@ public class KeychainModule extends ReactContextBaseJavaModule {
     String E_CRYPTO_FAILED = "E_CRYPTO_FAILED";
     String E_KEYSTORE_ACCESS_ERROR = "E_KEYSTORE_ACCESS_ERROR";
     String E_SUPPORTED_BIOMETRY_ERROR = "E_SUPPORTED_BIOMETRY_ERROR";
+    /** Entry can be read only with the user authentication, synchronous read is not possible. */
+    String E_INTERACTION_REQUIRED = "E_INTERACTION_REQUIRED";
     /** Raised for unexpected errors. */
     String E_UNKNOWN_ERROR = "E_UNKNOWN_ERROR";
   }
@@ -116,36 +172,105 @@ public class KeychainModule extends ReactContextBaseJavaModule {
   }
 
   /** Secret manipulation rules. */
-  @StringDef({Rules.AUTOMATIC_UPGRADE, Rules.NONE})
+  @StringDef({Rules.AUTOMATIC_UPGRADE, Rules.NONE, Rules.BACKGROUND_UPGRADE, Rules.UPGRADE_WITHIN_BUDGET})
   @interface Rules {
+    /** Never upgrade. */
     String NONE = "none";
+    /** Upgrade on read, before the secret is returned. */
     String AUTOMATIC_UPGRADE = "automaticUpgradeToMoreSecuredStorage";
+    /** Return the secret and upgrade it in background. */
+    String BACKGROUND_UPGRADE = "backgroundUpgrade";
+    /** Upgrade on read only if it fits into time budget, otherwise in background. */
+    String UPGRADE_WITHIN_BUDGET = "upgradeWithinBudget";
   }
   //endregion
 
   //region Members
-  /** Name-to-instance lookup  map. */
-  private final Map<String, CipherStorage> cipherStorageMap = new HashMap<>();
+  /** Name-to-descriptor lookup map. Storages are instantiated on first use. */
+  private final Map<String, CipherStorageDescriptor> cipherStorageMap = new HashMap<>();
   /** Shared preferences storage. */
   private final PrefsStorage prefsStorage;
+  /** Keys waiting for removal. */
+  private final KeyJournal keyJournal;
+  /** Decides when entries of weaker storages are upgraded. */
+  private final UpgradePolicy upgradePolicy = new UpgradePolicy();
+  /** Services with upgrade scheduled in background. */
+  private final Set<String> pendingUpgrades = Collections.synchronizedSet(new HashSet<>());
+  /** Latency histograms of the operation phases, disabled by default. */
+  private final Metrics metrics = new Metrics();
+  /** Receiver of the operation events. NULL - nobody listens. */
+  @Nullable
+  private volatile KeychainEventListener eventListener;
+  /** Encrypt new entries by keys that belong only to one storage and service. */
+  private boolean useNamespacedKeys;
+  /** Keys generated ahead of time. NULL - pool is disabled. */
+  @Nullable
+  private KeyPool keyPool;
+  /** Executor of the long running operations, e.g. keys rotation. */
+  private final ExecutorService backgroundExecutor;
+  /** Bulk migration is scheduled or running. */
+  private final AtomicBoolean isMigrationScheduled = new AtomicBoolean();
+  /** Files encryption, created on first use. */
+  @Nullable
+  private FileCipher fileCipher;
+  /** Secrets decrypted ahead of the first read. */
+  private final PrefetchCache prefetchCache = new PrefetchCache(DEFAULT_PREFETCH_TTL);
   //endregion
 
   //region Initialization
 
   /** Default constructor. */
   public KeychainModule(@NonNull final ReactApplicationContext reactContext) {
+    this(reactContext, newBackgroundExecutor());
+  }
+
+  @VisibleForTesting
+  /* package */ KeychainModule(@NonNull final ReactApplicationContext reactContext,
+                                @NonNull final ExecutorService backgroundExecutor) {
     super(reactContext);
+    this.backgroundExecutor = backgroundExecutor;
     prefsStorage = new PrefsStorage(reactContext);
+    keyJournal = new KeyJournal(reactContext, prefsStorage, this);
 
-    addCipherStorageToMap(new CipherStorageFacebookConceal(reactContext));
-    addCipherStorageToMap(new CipherStorageKeystoreAesCbc());
+    addCipherStorageToMap(new CipherStorageDescriptor(KnownCiphers.FB,
+      Build.VERSION_CODES.JELLY_BEAN, false, false, () -> attach(new CipherStorageSoftwareAesGcm(reactContext))));
+    addCipherStorageToMap(new CipherStorageDescriptor(KnownCiphers.AES,
+      Build.VERSION_CODES.M, false, true, () -> attach(new CipherStorageKeystoreAesCbc())));
 
     // we have a references to newer api that will fail load of app classes in old androids OS
     if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
-      addCipherStorageToMap(new CipherStorageKeystoreRsaEcb());
+      addCipherStorageToMap(new CipherStorageDescriptor(KnownCiphers.RSA,
+        Build.VERSION_CODES.M, true, true, () -> attach(new CipherStorageKeystoreRsaEcb())));
+    }
+
+    // finish keys removal interrupted by the process death
+    if (!keyJournal.isEmpty()) {
+      backgroundExecutor.execute(keyJournal::replay);
     }
   }
 
+  /** Single low priority thread of the background operations, it does not keep the process alive. */
+  @NonNull
+  private static ExecutorService newBackgroundExecutor() {
+    return Executors.newSingleThreadExecutor(runnable -> {
+      final Thread thread = new Thread(() -> {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+        runnable.run();
+      }, "keychain-background");
+      thread.setDaemon(true);
+
+      return thread;
+    });
+  }
+
+  /** Report metrics and lost keys of the storage to this module. */
+  @NonNull
+  private CipherStorage attach(@NonNull final CipherStorageBase storage) {
+    return storage
+      .setMetrics(metrics)
+      .setKeyLossListener(this::purgeEntriesOfLostKey);
+  }
+
   /** Allow initialization in chain. */
   public static KeychainModule withWarming(@NonNull final ReactApplicationContext reactContext) {
     final KeychainModule instance = new KeychainModule(reactContext);
@@ -158,12 +283,80 @@ public class KeychainModule extends ReactContextBaseJavaModule {
     return instance;
   }
 
+  /**
+   * Use per-storage and per-service key aliases for new entries. Entries encrypted by service
+   * named keys are moved to own keys on next read if automatic upgrade rules are in use.
+   */
+  /* package */ KeychainModule setUseNamespacedKeys(final boolean enabled) {
+    useNamespacedKeys = enabled;
+    return this;
+  }
+
+  /**
+   * Keep provided number of spare keys generated in background, so first write of the service
+   * does not wait for key generation. Pool serves the AES storage only.
+   */
+  /* package */ KeychainModule setKeyPoolCapacity(final int capacity) {
+    final CipherStorage storage = getCipherStorageByName(KnownCiphers.AES);
+
+    if (null != keyPool) {
+      keyPool.shutdown();
+    }
+
+    if (capacity <= 0 || Build.VERSION.SDK_INT < Build.VERSION_CODES.M || null == storage) {
+      keyPool = null;
+    } else {
+      keyPool = new KeyPool((CipherStorageBase) storage, prefsStorage, capacity);
+      keyPool.refill();
+    }
+
+    return this;
+  }
+
+  /**
+   * Migrate all entries to the best storage in background on each start. Migration interrupted by
+   * the process death is continued on start even if automatic mode is disabled.
+   */
+  /* package */ KeychainModule setBackgroundMigration(final boolean enabled) {
+    if (enabled || null != prefsStorage.getMigrationCursor()) {
+      scheduleMigration(DEFAULT_ROTATION_BATCH_SIZE, DEFAULT_ROTATION_BATCH_DELAY, null);
+    }
+
+    return this;
+  }
+
+  /** Collect latency histograms of the operation phases, see {@link #getMetrics(Promise)}. */
+  /* package */ KeychainModule setMetricsEnabled(final boolean enabled) {
+    metrics.setEnabled(enabled);
+    return this;
+  }
+
+  /** Deliver start and end events of the operations to provided listener. */
+  /* package */ KeychainModule setEventListener(@Nullable final KeychainEventListener listener) {
+    eventListener = listener;
+    return this;
+  }
+
+  /** Decrypt entries of provided services in background, so their first reads are served from memory. */
+  /* package */ KeychainModule setPrefetch(@NonNull final Collection<String> services) {
+    if (services.isEmpty()) return this;
+
+    final List<String> list = new ArrayList<>(services.size());
+    for (final String service : services) {
+      list.add(getAliasOrDefault(service));
+    }
+
+    schedulePrefetch(list, null);
+
+    return this;
+  }
+
   /** cipher (crypto api) warming up logic. force java load classes and intializations. */
   private void internalWarmingBestCipher() {
     try {
       final long startTime = System.nanoTime();
 
-      Log.v(KEYCHAIN_MODULE, "warming up started at " + startTime);
+      KeychainLog.v(KEYCHAIN_MODULE, "warming up started at {}", startTime);
       final CipherStorageBase best = (CipherStorageBase) getCipherStorageForCurrentAPILevel();
       final Cipher instance = best.getCachedInstance();
       final boolean isSecure = best.supportsSecureHardware();
@@ -171,11 +364,10 @@ public class KeychainModule extends ReactContextBaseJavaModule {
       best.generateKeyAndStoreUnderAlias("warmingUp", requiredLevel);
       best.getKeyStoreAndLoad();
 
-      Log.v(KEYCHAIN_MODULE, "warming up takes: " +
-        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime) +
-        " ms");
+      KeychainLog.v(KEYCHAIN_MODULE, "warming up takes: {} ms",
+        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
     } catch (Throwable ex) {
-      Log.e(KEYCHAIN_MODULE, "warming up failed!", ex);
+      KeychainLog.e(KEYCHAIN_MODULE, ex, "warming up failed!");
     }
   }
   //endregion
@@ -201,6 +393,20 @@ public class KeychainModule extends ReactContextBaseJavaModule {
 
     return constants;
   }
+
+  /** Stop background threads and wipe prefetched secrets, bridge does not use module anymore. */
+  @Override
+  public void onCatalystInstanceDestroy() {
+    backgroundExecutor.shutdownNow();
+
+    if (null != keyPool) {
+      keyPool.shutdown();
+    }
+
+    prefetchCache.clear();
+
+    super.onCatalystInstanceDestroy();
+  }
   //endregion
 
   //region React Methods
@@ -209,34 +415,64 @@ public class KeychainModule extends ReactContextBaseJavaModule {
                                     @NonNull final String password,
                                     @Nullable final ReadableMap options,
                                     @NonNull final Promise promise) {
+    final long operationTime = beginOperation(KeychainEvent.SET_GENERIC_PASSWORD, alias);
+    KeychainEvent.Outcome outcome = KeychainEvent.Outcome.FAILURE;
+    String storageName = null;
+
     try {
       throwIfEmptyLoginPassword(username, password);
 
       final SecurityLevel level = getSecurityLevelOrDefault(options);
       final CipherStorage storage = getSelectedStorage(options);
+      storageName = storage.getCipherStorageName();
 
       throwIfInsufficientLevel(storage, level);
 
-      final EncryptionResult result = storage.encrypt(alias, username, password, level);
-      prefsStorage.storeEncryptedEntry(alias, result);
+      final ResultSet existing = readEntry(alias);
+
+      final int keyVersion = getKeyVersion(storage);
+      final int authValidity = getAuthValidity(options, storage, existing, alias);
+      final String keyAlias = isKeyReusable(alias, storage, existing, keyVersion, authValidity)
+        ? getKeyAlias(existing, alias)
+        : getKeyAliasWithAuthValidity(storage, takeKeyAlias(storage, alias, level, keyVersion), authValidity);
+
+      final EncryptionResult result = encryptEntry(alias, storage, keyAlias, username, password, level);
+
+      final long startTime = metrics.begin(Metrics.Phase.PREFS_WRITE);
+      try {
+        prefsStorage.storeEncryptedEntry(alias, result, getRecordedKeyAlias(keyAlias, alias), keyVersion,
+          getAccessControlOrDefault(options));
+      } finally {
+        metrics.end(Metrics.Phase.PREFS_WRITE, startTime);
+      }
+
+      prefetchCache.remove(alias);
+
+      // overwritten entry may leave its key unused
+      if (null != existing) {
+        removeKeyIfUnused(alias, existing, keyAlias);
+      }
 
       final WritableMap results = Arguments.createMap();
       results.putString(Maps.SERVICE, alias);
       results.putString(Maps.STORAGE, storage.getCipherStorageName());
 
+      outcome = KeychainEvent.Outcome.SUCCESS;
       promise.resolve(results);
     } catch (EmptyParameterException e) {
-      Log.e(KEYCHAIN_MODULE, e.getMessage(), e);
+      KeychainLog.e(KEYCHAIN_MODULE, e, "Write failed for service: {s}", alias);
 
       promise.reject(Errors.E_EMPTY_PARAMETERS, e);
     } catch (CryptoFailedException e) {
-      Log.e(KEYCHAIN_MODULE, e.getMessage(), e);
+      KeychainLog.e(KEYCHAIN_MODULE, e, "Write failed for service: {s}", alias);
 
       promise.reject(Errors.E_CRYPTO_FAILED, e);
     } catch (Throwable fail) {
-      Log.e(KEYCHAIN_MODULE, fail.getMessage(), fail);
+      KeychainLog.e(KEYCHAIN_MODULE, fail, "Write failed for service: {s}", alias);
 
       promise.reject(Errors.E_UNKNOWN_ERROR, fail);
+    } finally {
+      endOperation(KeychainEvent.SET_GENERIC_PASSWORD, alias, storageName, operationTime, outcome);
     }
   }
 
@@ -256,61 +492,140 @@ public class KeychainModule extends ReactContextBaseJavaModule {
     final String accessControl = getAccessControlOrDefault(options);
     final boolean useBiometry = getUseBiometry(accessControl);
     final String cipherName = getSpecificStorageOrDefault(options);
+    final long startTime = metrics.begin(Metrics.Phase.SELECTION);
+
+    try {
+      CipherStorage result = null;
 
-    CipherStorage result = null;
+      if (null != cipherName) {
+        result = getCipherStorageByName(cipherName);
+      }
+
+      // attempt to access none existing storage will force fallback logic.
+      if (null == result) {
+        result = getCipherStorageForCurrentAPILevel(useBiometry);
+      }
 
-    if (null != cipherName) {
-      result = getCipherStorageByName(cipherName);
+      return result;
+    } finally {
+      metrics.end(Metrics.Phase.SELECTION, startTime);
     }
+  }
+
+  /** Get the best storage for current API level, measured as selection phase. */
+  @NonNull
+  private CipherStorage getCurrentStorage(final boolean useBiometry) throws CryptoFailedException {
+    final long startTime = metrics.begin(Metrics.Phase.SELECTION);
 
-    // attempt to access none existing storage will force fallback logic.
-    if (null == result) {
-      result = getCipherStorageForCurrentAPILevel(useBiometry);
+    try {
+      return getCipherStorageForCurrentAPILevel(useBiometry);
+    } finally {
+      metrics.end(Metrics.Phase.SELECTION, startTime);
     }
+  }
+
+  /** Read entry of the service from preferences. */
+  @Nullable
+  private ResultSet readEntry(@NonNull final String alias) {
+    final long startTime = metrics.begin(Metrics.Phase.PREFS_READ);
 
-    return result;
+    try {
+      return prefsStorage.getEncryptedEntry(alias);
+    } finally {
+      metrics.end(Metrics.Phase.PREFS_READ, startTime);
+    }
+  }
+
+  /** Encrypt credentials of the service by provided storage. */
+  @NonNull
+  private EncryptionResult encryptEntry(@NonNull final String alias,
+                                        @NonNull final CipherStorage storage,
+                                        @NonNull final String keyAlias,
+                                        @NonNull final String username,
+                                        @NonNull final String password,
+                                        @NonNull final SecurityLevel level)
+    throws CryptoFailedException {
+    final String storageName = storage.getCipherStorageName();
+    final long eventTime = notifyStart(KeychainEvent.ENCRYPT, alias, storageName);
+    final long startTime = metrics.begin(Metrics.Phase.ENCRYPT);
+    KeychainEvent.Outcome outcome = KeychainEvent.Outcome.FAILURE;
+
+    try {
+      final EncryptionResult result = storage.encrypt(keyAlias, username, password, level);
+      outcome = KeychainEvent.Outcome.SUCCESS;
+
+      return result;
+    } finally {
+      metrics.end(Metrics.Phase.ENCRYPT, startTime);
+      notifyEnd(KeychainEvent.ENCRYPT, alias, storageName, eventTime, outcome);
+    }
   }
 
   protected void getGenericPassword(@NonNull final String alias,
                                     @Nullable final ReadableMap options,
                                     @NonNull final Promise promise) {
+    final long operationTime = beginOperation(KeychainEvent.GET_GENERIC_PASSWORD, alias);
+    KeychainEvent.Outcome outcome = KeychainEvent.Outcome.FAILURE;
+    String storageName = null;
+
     try {
-      final ResultSet resultSet = prefsStorage.getEncryptedEntry(alias);
+      final ResultSet resultSet = readEntry(alias);
 
       if (resultSet == null) {
-        Log.e(KEYCHAIN_MODULE, "No entry found for service: " + alias);
+        KeychainLog.d(KEYCHAIN_MODULE, "No entry found for service: {s}", alias);
+        outcome = KeychainEvent.Outcome.NOT_FOUND;
         promise.resolve(false);
         return;
       }
 
-      // get the best storage
-      final String accessControl = getAccessControlOrDefault(options);
+      storageName = resultSet.cipherStorageName;
+
+      // get the best storage for the access policy the entry was written with, reads with other
+      // options do not move the entry back and forth between storages
+      final String accessControl = getPinnedAccessControl(resultSet, getAccessControlOrDefault(options));
       final boolean useBiometry = getUseBiometry(accessControl);
-      final CipherStorage current = getCipherStorageForCurrentAPILevel(useBiometry);
-      final String rules = getSecurityRulesOrDefault(options);
+
+      final WritableMap prefetched = useBiometry ? null : takePrefetched(alias, resultSet);
+      if (null != prefetched) {
+        outcome = KeychainEvent.Outcome.SUCCESS;
+        promise.resolve(prefetched);
+        return;
+      }
+
+      final CipherStorage current = getCurrentStorage(useBiometry);
+      final UpgradePolicy.Decision upgrade = upgradePolicy.decide(getSecurityRulesOrDefault(options),
+        getIntOrDefault(options, Maps.UPGRADE_BUDGET, DEFAULT_UPGRADE_BUDGET));
 
       final PromptInfo promptInfo = getPromptInfo(options);
-      final DecryptionResult decryptionResult = decryptCredentials(alias, current, resultSet, rules, promptInfo);
 
-      final WritableMap credentials = Arguments.createMap();
-      credentials.putString(Maps.SERVICE, alias);
-      credentials.putString(Maps.USERNAME, decryptionResult.username);
-      credentials.putString(Maps.PASSWORD, decryptionResult.password);
-      credentials.putString(Maps.STORAGE, current.getCipherStorageName());
+      // plain text lives only in wipe-able buffers until the bridge hand-off
+      try (final SecretBytes username = new SecretBytes();
+           final SecretBytes password = new SecretBytes()) {
+        decryptCredentials(alias, current, resultSet, upgrade, promptInfo, username, password);
 
-      promise.resolve(credentials);
+        outcome = KeychainEvent.Outcome.SUCCESS;
+        promise.resolve(createCredentials(alias, current, username, password));
+      }
     } catch (KeyStoreAccessException e) {
-      Log.e(KEYCHAIN_MODULE, e.getMessage());
+      KeychainLog.e(KEYCHAIN_MODULE, e, "Read failed for service: {s}", alias);
 
       promise.reject(Errors.E_KEYSTORE_ACCESS_ERROR, e);
     } catch (CryptoFailedException e) {
-      Log.e(KEYCHAIN_MODULE, e.getMessage());
+      if (isEntryPurged(alias)) {
+        outcome = KeychainEvent.Outcome.NOT_FOUND;
+        promise.resolve(false);
+        return;
+      }
+
+      KeychainLog.e(KEYCHAIN_MODULE, e, "Read failed for service: {s}", alias);
 
       promise.reject(Errors.E_CRYPTO_FAILED, e);
     } catch (Throwable fail) {
-      Log.e(KEYCHAIN_MODULE, fail.getMessage(), fail);
+      KeychainLog.e(KEYCHAIN_MODULE, fail, "Read failed for service: {s}", alias);
 
       promise.reject(Errors.E_UNKNOWN_ERROR, fail);
+    } finally {
+      endOperation(KeychainEvent.GET_GENERIC_PASSWORD, alias, storageName, operationTime, outcome);
     }
   }
 
@@ -321,31 +636,132 @@ public class KeychainModule extends ReactContextBaseJavaModule {
     getGenericPassword(service, options, promise);
   }
 
+  /**
+   * Read of the entry that needs no user authentication, without the bridge round trip. Caller
+   * (JS thread) is blocked, so upgrades of the entry are never executed inline.
+   *
+   * @return credentials, null if there is no entry, or map with error code and message.
+   */
+  @Nullable
+  protected WritableMap getGenericPasswordSync(@NonNull final String alias,
+                                               @Nullable final ReadableMap options) {
+    final long operationTime = beginOperation(KeychainEvent.GET_GENERIC_PASSWORD, alias);
+    KeychainEvent.Outcome outcome = KeychainEvent.Outcome.FAILURE;
+    String storageName = null;
+
+    try {
+      final ResultSet resultSet = readEntry(alias);
+
+      if (resultSet == null) {
+        KeychainLog.d(KEYCHAIN_MODULE, "No entry found for service: {s}", alias);
+        outcome = KeychainEvent.Outcome.NOT_FOUND;
+        return null;
+      }
+
+      storageName = resultSet.cipherStorageName;
+
+      final CipherStorage storage = getCipherStorageByName(storageName);
+      if (null == storage) {
+        throw new KeyStoreAccessException("Wrong cipher storage name '" + storageName + "' or cipher not available");
+      }
+
+      if (storage.isBiometrySupported()) {
+        return createError(Errors.E_INTERACTION_REQUIRED,
+          "Entry requires user authentication, use getGenericPassword instead");
+      }
+
+      final String accessControl = getPinnedAccessControl(resultSet, getAccessControlOrDefault(options));
+      final boolean useBiometry = getUseBiometry(accessControl);
+
+      final WritableMap prefetched = useBiometry ? null : takePrefetched(alias, resultSet);
+      if (null != prefetched) {
+        outcome = KeychainEvent.Outcome.SUCCESS;
+        return prefetched;
+      }
+
+      final CipherStorage current = getCurrentStorage(useBiometry);
+      final UpgradePolicy.Decision decision = upgradePolicy.decide(getSecurityRulesOrDefault(options),
+        getIntOrDefault(options, Maps.UPGRADE_BUDGET, DEFAULT_UPGRADE_BUDGET));
+      final UpgradePolicy.Decision upgrade = (UpgradePolicy.Decision.ON_READ == decision)
+        ? UpgradePolicy.Decision.BACKGROUND : decision;
+
+      try (final SecretBytes username = new SecretBytes();
+           final SecretBytes password = new SecretBytes()) {
+        decryptCredentials(alias, current, resultSet, upgrade, getPromptInfo(options), username, password);
+
+        outcome = KeychainEvent.Outcome.SUCCESS;
+        return createCredentials(alias, current, username, password);
+      }
+    } catch (KeyStoreAccessException e) {
+      KeychainLog.e(KEYCHAIN_MODULE, e, "Read failed for service: {s}", alias);
+
+      return createError(Errors.E_KEYSTORE_ACCESS_ERROR, e.getMessage());
+    } catch (CryptoFailedException e) {
+      if (isEntryPurged(alias)) {
+        outcome = KeychainEvent.Outcome.NOT_FOUND;
+        return null;
+      }
+
+      KeychainLog.e(KEYCHAIN_MODULE, e, "Read failed for service: {s}", alias);
+
+      return createError(Errors.E_CRYPTO_FAILED, e.getMessage());
+    } catch (Throwable fail) {
+      KeychainLog.e(KEYCHAIN_MODULE, fail, "Read failed for service: {s}", alias);
+
+      return createError(Errors.E_UNKNOWN_ERROR, fail.getMessage());
+    } finally {
+      endOperation(KeychainEvent.GET_GENERIC_PASSWORD, alias, storageName, operationTime, outcome);
+    }
+  }
+
+  @ReactMethod(isBlockingSynchronousMethod = true)
+  @Nullable
+  public WritableMap getGenericPasswordForOptionsSync(@Nullable final ReadableMap options) {
+    final String service = getServiceOrDefault(options);
+    return getGenericPasswordSync(service, options);
+  }
+
   protected void resetGenericPassword(@NonNull final String alias,
                                       @NonNull final Promise promise) {
+    final long operationTime = beginOperation(KeychainEvent.RESET_GENERIC_PASSWORD, alias);
+    KeychainEvent.Outcome outcome = KeychainEvent.Outcome.FAILURE;
+    String storageName = null;
+
     try {
-      // First we clean up the cipher storage (using the cipher storage that was used to store the entry)
-      final ResultSet resultSet = prefsStorage.getEncryptedEntry(alias);
+      final ResultSet resultSet = readEntry(alias);
+
+      // First we remove the entry in the shared preferences
+      final long startTime = metrics.begin(Metrics.Phase.PREFS_WRITE);
+      try {
+        prefsStorage.removeEntry(alias);
+        prefetchCache.remove(alias);
+      } finally {
+        metrics.end(Metrics.Phase.PREFS_WRITE, startTime);
+      }
 
+      // And then clean up the cipher storage (using the cipher storage that was used to store the entry),
+      // key shared with other entries is kept
       if (resultSet != null) {
+        storageName = resultSet.cipherStorageName;
         final CipherStorage cipherStorage = getCipherStorageByName(resultSet.cipherStorageName);
 
         if (cipherStorage != null) {
-          cipherStorage.removeKey(alias);
+          keyJournal.removeKey(cipherStorage, getKeyAlias(resultSet, alias));
         }
       }
-      // And then we remove the entry in the shared preferences
-      prefsStorage.removeEntry(alias);
 
+      outcome = (null == resultSet) ? KeychainEvent.Outcome.NOT_FOUND : KeychainEvent.Outcome.SUCCESS;
       promise.resolve(true);
     } catch (KeyStoreAccessException e) {
-      Log.e(KEYCHAIN_MODULE, e.getMessage());
+      KeychainLog.e(KEYCHAIN_MODULE, e, "Reset failed for service: {s}", alias);
 
       promise.reject(Errors.E_KEYSTORE_ACCESS_ERROR, e);
     } catch (Throwable fail) {
-      Log.e(KEYCHAIN_MODULE, fail.getMessage(), fail);
+      KeychainLog.e(KEYCHAIN_MODULE, fail, "Reset failed for service: {s}", alias);
 
       promise.reject(Errors.E_UNKNOWN_ERROR, fail);
+    } finally {
+      endOperation(KeychainEvent.RESET_GENERIC_PASSWORD, alias, storageName, operationTime, outcome);
     }
   }
 
@@ -364,7 +780,7 @@ public class KeychainModule extends ReactContextBaseJavaModule {
     final ResultSet resultSet = prefsStorage.getEncryptedEntry(alias);
 
     if (resultSet == null) {
-      Log.e(KEYCHAIN_MODULE, "No entry found for service: " + alias);
+      KeychainLog.d(KEYCHAIN_MODULE, "No entry found for service: {s}", alias);
       promise.resolve(false);
       return;
     }
@@ -405,16 +821,169 @@ public class KeychainModule extends ReactContextBaseJavaModule {
 
       promise.resolve(reply);
     } catch (Exception e) {
-      Log.e(KEYCHAIN_MODULE, e.getMessage(), e);
+      KeychainLog.e(KEYCHAIN_MODULE, e);
 
       promise.reject(Errors.E_SUPPORTED_BIOMETRY_ERROR, e);
     } catch (Throwable fail) {
-      Log.e(KEYCHAIN_MODULE, fail.getMessage(), fail);
+      KeychainLog.e(KEYCHAIN_MODULE, fail);
 
       promise.reject(Errors.E_UNKNOWN_ERROR, fail);
     }
   }
 
+  /**
+   * Start new version of the keys and re-encrypt all entries by new keys in background.
+   * Entries are processed in throttled batches, reads keep working on both versions.
+   */
+  @ReactMethod
+  public void rotateKeys(@Nullable final ReadableMap options,
+                         @NonNull final Promise promise) {
+    final int batchSize = getIntOrDefault(options, Maps.BATCH_SIZE, DEFAULT_ROTATION_BATCH_SIZE);
+    final int batchDelay = getIntOrDefault(options, Maps.BATCH_DELAY, DEFAULT_ROTATION_BATCH_DELAY);
+
+    backgroundExecutor.execute(() -> {
+      try {
+        final KeyRotation rotation = new KeyRotation(this, prefsStorage, batchSize, batchDelay);
+        rotation.run();
+
+        final WritableMap results = Arguments.createMap();
+        results.putInt(Maps.KEY_VERSION, rotation.getKeyVersion());
+        results.putInt(Maps.ROTATED, rotation.getReEncrypted());
+        results.putInt(Maps.SKIPPED, rotation.getSkipped());
+        results.putInt(Maps.FAILED, rotation.getFailed());
+
+        promise.resolve(results);
+      } catch (Throwable fail) {
+        KeychainLog.e(KEYCHAIN_MODULE, fail);
+
+        promise.reject(Errors.E_UNKNOWN_ERROR, fail);
+      }
+    });
+  }
+
+  /**
+   * Move all entries to the best storage available without biometry in background. Entries are
+   * processed in throttled batches, progress is reported by {@link #MIGRATION_PROGRESS_EVENT}
+   * events. Entries of biometric storages are left for the on-read upgrade.
+   */
+  @ReactMethod
+  public void migrateAll(@Nullable final ReadableMap options,
+                         @NonNull final Promise promise) {
+    final int batchSize = getIntOrDefault(options, Maps.BATCH_SIZE, DEFAULT_ROTATION_BATCH_SIZE);
+    final int batchDelay = getIntOrDefault(options, Maps.BATCH_DELAY, DEFAULT_ROTATION_BATCH_DELAY);
+
+    scheduleMigration(batchSize, batchDelay, promise);
+  }
+
+  /**
+   * Decrypt entries of provided services in background and keep them in memory for
+   * {@link #DEFAULT_PREFETCH_TTL} milliseconds, each one for a single read. Entries of biometric
+   * storages are skipped. Resolves with the number of prefetched entries.
+   */
+  @ReactMethod
+  public void prefetch(@NonNull final ReadableArray services,
+                       @NonNull final Promise promise) {
+    final List<String> list = new ArrayList<>(services.size());
+    for (int i = 0; i < services.size(); i++) {
+      list.add(getAliasOrDefault(services.getString(i)));
+    }
+
+    schedulePrefetch(list, promise);
+  }
+
+  /**
+   * Get latency histograms of the operation phases. Durations are in milliseconds, percentiles
+   * are upper bounds. Nothing is collected unless metrics are enabled by
+   * {@link KeychainModuleBuilder#withMetrics()}. Event counters are collected always.
+   */
+  @ReactMethod
+  public void getMetrics(@NonNull final Promise promise) {
+    final WritableMap results = Arguments.createMap();
+
+    for (final Metrics.Phase phase : Metrics.Phase.values()) {
+      results.putMap(phase.jsName, createHistogramResults(metrics.get(phase)));
+    }
+
+    final WritableMap counters = Arguments.createMap();
+    for (final Metrics.Counter counter : Metrics.Counter.values()) {
+      counters.putDouble(counter.jsName, metrics.get(counter));
+    }
+    results.putMap(Maps.COUNTERS, counters);
+
+    promise.resolve(results);
+  }
+
+  /** Drop all collected latency metrics and counters. */
+  @ReactMethod
+  public void resetMetrics(@NonNull final Promise promise) {
+    metrics.reset();
+
+    promise.resolve(true);
+  }
+
+  /**
+   * Encrypt file in background with constant memory usage. Progress is reported by
+   * {@link #FILE_PROGRESS_EVENT} events.
+   */
+  @ReactMethod
+  public void encryptFile(@NonNull final String inPath,
+                          @NonNull final String outPath,
+                          @Nullable final ReadableMap options,
+                          @NonNull final Promise promise) {
+    final String service = getServiceOrDefault(options);
+    final SecurityLevel level = getSecurityLevelOrDefault(options);
+
+    backgroundExecutor.execute(() -> {
+      try {
+        final FileCipher cipher = getFileCipher();
+
+        cipher.encryptFile(cipher.getKeyAlias(service), new File(inPath), new File(outPath),
+          level, createProgressEmitter(inPath));
+
+        promise.resolve(outPath);
+      } catch (CryptoFailedException fail) {
+        KeychainLog.e(KEYCHAIN_MODULE, fail);
+
+        promise.reject(Errors.E_CRYPTO_FAILED, fail);
+      } catch (Throwable fail) {
+        KeychainLog.e(KEYCHAIN_MODULE, fail);
+
+        promise.reject(Errors.E_UNKNOWN_ERROR, fail);
+      }
+    });
+  }
+
+  /**
+   * Decrypt file created by {@link #encryptFile(String, String, ReadableMap, Promise)}. Output
+   * appears only if all chunks are authenticated.
+   */
+  @ReactMethod
+  public void decryptFile(@NonNull final String inPath,
+                          @NonNull final String outPath,
+                          @Nullable final ReadableMap options,
+                          @NonNull final Promise promise) {
+    final String service = getServiceOrDefault(options);
+
+    backgroundExecutor.execute(() -> {
+      try {
+        final FileCipher cipher = getFileCipher();
+
+        cipher.decryptFile(cipher.getKeyAlias(service), new File(inPath), new File(outPath),
+          createProgressEmitter(inPath));
+
+        promise.resolve(outPath);
+      } catch (CryptoFailedException fail) {
+        KeychainLog.e(KEYCHAIN_MODULE, fail);
+
+        promise.reject(Errors.E_CRYPTO_FAILED, fail);
+      } catch (Throwable fail) {
+        KeychainLog.e(KEYCHAIN_MODULE, fail);
+
+        promise.reject(Errors.E_UNKNOWN_ERROR, fail);
+      }
+    });
+  }
+
   @ReactMethod
   public void getSecurityLevel(@Nullable final ReadableMap options,
                                @NonNull final Promise promise) {
@@ -443,7 +1012,7 @@ public class KeychainModule extends ReactContextBaseJavaModule {
   /** Get automatic secret manipulation rules, default: Automatic Upgrade. */
   @Rules
   @NonNull
-  private static String getSecurityRulesOrDefault(@Nullable final ReadableMap options) {
+  /* package */ static String getSecurityRulesOrDefault(@Nullable final ReadableMap options) {
     return getSecurityRulesOrDefault(options, Rules.AUTOMATIC_UPGRADE);
   }
 
@@ -455,7 +1024,7 @@ public class KeychainModule extends ReactContextBaseJavaModule {
     String rules = null;
 
     if (null != options && options.hasKey(Maps.RULES)) {
-      rules = options.getString(Maps.ACCESS_CONTROL);
+      rules = options.getString(Maps.RULES);
     }
 
     if (null == rules) return rule;
@@ -500,6 +1069,279 @@ public class KeychainModule extends ReactContextBaseJavaModule {
   }
 
 
+  /** Get files cipher, keys are wrapped by the AES storage. Requires API23+. */
+  @NonNull
+  private FileCipher getFileCipher() throws CryptoFailedException {
+    if (null == fileCipher) {
+      final CipherStorage storage = getCipherStorageByName(KnownCiphers.AES);
+
+      if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M || null == storage) {
+        throw new CryptoFailedException("Files encryption requires API23+");
+      }
+
+      fileCipher = new FileCipher((CipherStorageKeystoreAesCbc) storage);
+    }
+
+    return fileCipher;
+  }
+
+  /** Emit progress events of the file operation, at most one event per percent. */
+  @NonNull
+  private FileCipher.ProgressListener createProgressEmitter(@NonNull final String path) {
+    final int[] lastPercent = {-1};
+
+    return (processed, total) -> {
+      final int percent = (total > 0) ? (int) (100 * Math.min(processed, total) / total) : 100;
+      if (percent == lastPercent[0]) return;
+
+      lastPercent[0] = percent;
+
+      final WritableMap event = Arguments.createMap();
+      event.putString(Maps.PATH, path);
+      event.putDouble(Maps.PROCESSED, processed);
+      event.putDouble(Maps.TOTAL, total);
+
+      getReactApplicationContext()
+        .getJSModule(RCTDeviceEventEmitter.class)
+        .emit(FILE_PROGRESS_EVENT, event);
+    };
+  }
+
+  /**
+   * Run prefetch on the background executor. Storages and keystore are initialized by the first
+   * decryption there, so reads of the app start wait for neither of them.
+   */
+  private void schedulePrefetch(@NonNull final Collection<String> services, @Nullable final Promise promise) {
+    backgroundExecutor.execute(() -> {
+      try {
+        final int prefetched = prefetchEntries(services);
+
+        // wipe secrets nobody asked for
+        new Handler(Looper.getMainLooper()).postDelayed(prefetchCache::evictExpired, DEFAULT_PREFETCH_TTL);
+
+        if (null != promise) promise.resolve(prefetched);
+      } catch (Throwable fail) {
+        KeychainLog.e(KEYCHAIN_MODULE, fail);
+
+        if (null != promise) promise.reject(Errors.E_UNKNOWN_ERROR, fail);
+      }
+    });
+  }
+
+  /** Decrypt entries of the services into prefetch cache, failures are left for the real read. */
+  private int prefetchEntries(@NonNull final Collection<String> services) {
+    int prefetched = 0;
+
+    for (final String service : services) {
+      final ResultSet resultSet = prefsStorage.getEncryptedEntry(service);
+      if (null == resultSet) continue;
+
+      final CipherStorage storage = getCipherStorageByName(resultSet.cipherStorageName);
+      if (null == storage || storage.isBiometrySupported()) continue;
+
+      final long startTime = metrics.begin(Metrics.Phase.DECRYPT);
+      try (final SecretBytes username = new SecretBytes();
+           final SecretBytes password = new SecretBytes()) {
+        storage.decrypt(getKeyAlias(resultSet, service), resultSet.username, resultSet.password,
+          SecurityLevel.ANY, username, password);
+
+        prefetchCache.put(service, resultSet, username, password);
+        prefetched++;
+      } catch (Throwable fail) {
+        KeychainLog.w(KEYCHAIN_MODULE, fail, "Prefetch failed for service: {s}", service);
+      } finally {
+        metrics.end(Metrics.Phase.DECRYPT, startTime);
+      }
+    }
+
+    KeychainLog.d(KEYCHAIN_MODULE, "Prefetched {} of {} services", prefetched, services.size());
+
+    return prefetched;
+  }
+
+  /** Credentials decrypted ahead by prefetch. NULL - nothing cached or entry changed since. */
+  @Nullable
+  private WritableMap takePrefetched(@NonNull final String alias, @NonNull final ResultSet resultSet) {
+    try (final SecretBytes username = new SecretBytes();
+         final SecretBytes password = new SecretBytes()) {
+      final String storageName = prefetchCache.take(alias, resultSet, username, password);
+      if (null == storageName) return null;
+
+      metrics.count(Metrics.Counter.PREFETCH_HIT, 1);
+
+      return createCredentials(alias, storageName, username, password);
+    }
+  }
+
+  /**
+   * Run bulk migration on the background executor. Second request while migration is pending
+   * resolves with empty results, first one does all the work.
+   */
+  private void scheduleMigration(final int batchSize, final int batchDelay, @Nullable final Promise promise) {
+    if (!isMigrationScheduled.compareAndSet(false, true)) {
+      if (null != promise) promise.resolve(createMigrationResults(0, 0, 0));
+      return;
+    }
+
+    backgroundExecutor.execute(() -> {
+      try {
+        final BackgroundReEncryption migration = new KeyMigration(this, prefsStorage, batchSize, batchDelay)
+          .setProgressListener(this::emitMigrationProgress);
+        migration.run();
+
+        if (null != promise) {
+          promise.resolve(createMigrationResults(migration.getReEncrypted(),
+            migration.getSkipped(), migration.getFailed()));
+        }
+      } catch (CryptoFailedException fail) {
+        KeychainLog.e(KEYCHAIN_MODULE, fail);
+
+        if (null != promise) promise.reject(Errors.E_CRYPTO_FAILED, fail);
+      } catch (Throwable fail) {
+        KeychainLog.e(KEYCHAIN_MODULE, fail);
+
+        if (null != promise) promise.reject(Errors.E_UNKNOWN_ERROR, fail);
+      } finally {
+        isMigrationScheduled.set(false);
+      }
+    });
+  }
+
+  @NonNull
+  private static WritableMap createMigrationResults(final int migrated, final int skipped, final int failed) {
+    final WritableMap results = Arguments.createMap();
+    results.putInt(Maps.MIGRATED, migrated);
+    results.putInt(Maps.SKIPPED, skipped);
+    results.putInt(Maps.FAILED, failed);
+
+    return results;
+  }
+
+  @NonNull
+  private static WritableMap createCredentials(@NonNull final String alias,
+                                               @NonNull final CipherStorage storage,
+                                               @NonNull final SecretBytes username,
+                                               @NonNull final SecretBytes password) {
+    return createCredentials(alias, storage.getCipherStorageName(), username, password);
+  }
+
+  @NonNull
+  private static WritableMap createCredentials(@NonNull final String alias,
+                                               @NonNull final String storageName,
+                                               @NonNull final SecretBytes username,
+                                               @NonNull final SecretBytes password) {
+    final WritableMap credentials = Arguments.createMap();
+    credentials.putString(Maps.SERVICE, alias);
+    credentials.putString(Maps.USERNAME, username.asString());
+    credentials.putString(Maps.PASSWORD, password.asString());
+    credentials.putString(Maps.STORAGE, storageName);
+
+    return credentials;
+  }
+
+  /** Error result of the synchronous method, promises are not available there. */
+  @NonNull
+  private static WritableMap createError(@NonNull final String code, @Nullable final String message) {
+    final WritableMap error = Arguments.createMap();
+    error.putString(Maps.CODE, code);
+    error.putString(Maps.MESSAGE, message);
+
+    return error;
+  }
+
+  @NonNull
+  private static WritableMap createHistogramResults(@NonNull final Metrics.Histogram histogram) {
+    final long count = histogram.getCount();
+    final WritableMap results = Arguments.createMap();
+    results.putDouble(Maps.COUNT, count);
+    results.putDouble(Maps.MEAN, 0 == count ? 0 : toMillis(histogram.getTotal() / count));
+    results.putDouble(Maps.P50, toMillis(histogram.getPercentile(50)));
+    results.putDouble(Maps.P90, toMillis(histogram.getPercentile(90)));
+    results.putDouble(Maps.P99, toMillis(histogram.getPercentile(99)));
+    results.putDouble(Maps.MAX, toMillis(histogram.getMax()));
+
+    return results;
+  }
+
+  private static double toMillis(final long nanos) {
+    return nanos / 1_000_000.0;
+  }
+
+  /** Open trace section of the module operation and notify listener. Result is passed to {@link #endOperation}. */
+  private long beginOperation(@NonNull final String operation, @NonNull final String alias) {
+    Trace.beginSection(Metrics.TRACE_PREFIX + operation);
+
+    return notifyStart(operation, alias, null);
+  }
+
+  /** Notify listener about the module operation end and close its trace section. */
+  private void endOperation(@NonNull final String operation,
+                            @NonNull final String alias,
+                            @Nullable final String storageName,
+                            final long startTime,
+                            @NonNull final KeychainEvent.Outcome outcome) {
+    try {
+      notifyEnd(operation, alias, storageName, startTime, outcome);
+    } finally {
+      Trace.endSection();
+    }
+  }
+
+  /** Notify listener about the operation start. Returns start time, zero if nobody listens. */
+  private long notifyStart(@NonNull final String operation,
+                           @NonNull final String alias,
+                           @Nullable final String storageName) {
+    final KeychainEventListener listener = eventListener;
+    if (null == listener) return 0L;
+
+    try {
+      listener.onStart(new KeychainEvent(operation, alias.hashCode(), storageName, 0L, null));
+    } catch (Throwable fail) {
+      KeychainLog.w(KEYCHAIN_MODULE, fail, "Event listener failed on start of {}", operation);
+    }
+
+    return System.nanoTime();
+  }
+
+  /** Notify listener about the operation end, if it was notified about the start. */
+  private void notifyEnd(@NonNull final String operation,
+                         @NonNull final String alias,
+                         @Nullable final String storageName,
+                         final long startTime,
+                         @NonNull final KeychainEvent.Outcome outcome) {
+    final KeychainEventListener listener = eventListener;
+    if (null == listener || 0L == startTime) return;
+
+    try {
+      listener.onEnd(new KeychainEvent(operation, alias.hashCode(), storageName, System.nanoTime() - startTime, outcome));
+    } catch (Throwable fail) {
+      KeychainLog.w(KEYCHAIN_MODULE, fail, "Event listener failed on end of {}", operation);
+    }
+  }
+
+  /** Emit progress of the bulk migration, JS side may be not ready yet on automatic start. */
+  private void emitMigrationProgress(final int processed, final int total) {
+    final ReactApplicationContext context = getReactApplicationContext();
+    if (!context.hasActiveCatalystInstance()) return;
+
+    final WritableMap event = Arguments.createMap();
+    event.putInt(Maps.PROCESSED, processed);
+    event.putInt(Maps.TOTAL, total);
+
+    context.getJSModule(RCTDeviceEventEmitter.class).emit(MIGRATION_PROGRESS_EVENT, event);
+  }
+
+  /** Get integer value from options or fallback to default. */
+  private static int getIntOrDefault(@Nullable final ReadableMap options,
+                                     @NonNull final String key,
+                                     final int fallback) {
+    if (null != options && options.hasKey(key)) {
+      return options.getInt(key);
+    }
+
+    return fallback;
+  }
+
   /** Get security level from options or fallback {@link SecurityLevel#ANY} value. */
   @NonNull
   private static SecurityLevel getSecurityLevelOrDefault(@Nullable final ReadableMap options) {
@@ -532,8 +1374,24 @@ public class KeychainModule extends ReactContextBaseJavaModule {
       || AccessControl.BIOMETRY_CURRENT_SET_OR_DEVICE_PASSCODE.equals(accessControl);
   }
 
-  private void addCipherStorageToMap(@NonNull final CipherStorage cipherStorage) {
-    cipherStorageMap.put(cipherStorage.getCipherStorageName(), cipherStorage);
+  /**
+   * Access control recorded with the entry. Entries of older lib versions are pinned to biometry
+   * if they live in biometric storage, otherwise read options are used.
+   */
+  @AccessControl
+  @NonNull
+  /* package */ String getPinnedAccessControl(@NonNull final ResultSet resultSet,
+                                              @AccessControl @NonNull final String fallback) {
+    if (null != resultSet.accessControl) return resultSet.accessControl;
+
+    final CipherStorageDescriptor descriptor = cipherStorageMap.get(resultSet.cipherStorageName);
+    if (null != descriptor && descriptor.isBiometrySupported) return AccessControl.BIOMETRY_ANY;
+
+    return fallback;
+  }
+
+  private void addCipherStorageToMap(@NonNull final CipherStorageDescriptor descriptor) {
+    cipherStorageMap.put(descriptor.name, descriptor);
   }
 
   /** Extract user specified prompt info from options. */
@@ -564,21 +1422,32 @@ public class KeychainModule extends ReactContextBaseJavaModule {
   }
 
   /**
-   * Extract credentials from current storage. In case if current storage is not matching
-   * results set then executed migration.
+   * Extract credentials from current storage into provided buffers. In case if current storage
+   * is not matching results set then migration is executed or scheduled, as upgrade decision says.
+   *
+   * @return security level of the storage key used for decryption.
    */
   @NonNull
-  private DecryptionResult decryptCredentials(@NonNull final String alias,
-                                              @NonNull final CipherStorage current,
-                                              @NonNull final ResultSet resultSet,
-                                              @Rules @NonNull final String rules,
-                                              @NonNull final PromptInfo promptInfo)
+  private SecurityLevel decryptCredentials(@NonNull final String alias,
+                                           @NonNull final CipherStorage current,
+                                           @NonNull final ResultSet resultSet,
+                                           @NonNull final UpgradePolicy.Decision upgrade,
+                                           @NonNull final PromptInfo promptInfo,
+                                           @NonNull final SecretBytes username,
+                                           @NonNull final SecretBytes password)
     throws CryptoFailedException, KeyStoreAccessException {
     final String storageName = resultSet.cipherStorageName;
 
     // The encrypted data is encrypted using the current CipherStorage, so we just decrypt and return
     if (storageName.equals(current.getCipherStorageName())) {
-      return decryptToResult(alias, current, resultSet, promptInfo);
+      final SecurityLevel level = decryptToBuffers(alias, current, resultSet, promptInfo, username, password);
+
+      // the key is shared by name with other storages, move the entry to own key
+      if (isKeyAliasOutdated(alias, current, resultSet)) {
+        upgradeEntry(alias, upgrade, current, current, resultSet, username, password, level);
+      }
+
+      return level;
     }
 
     // The encrypted data is encrypted using an older CipherStorage, so we need to decrypt the data first,
@@ -589,18 +1458,139 @@ public class KeychainModule extends ReactContextBaseJavaModule {
     }
 
     // decrypt using the older cipher storage
-    final DecryptionResult decryptionResult = decryptToResult(alias, oldStorage, resultSet, promptInfo);
+    final SecurityLevel level = decryptToBuffers(alias, oldStorage, resultSet, promptInfo, username, password);
+
+    // encrypt using the current cipher storage
+    upgradeEntry(alias, upgrade, current, oldStorage, resultSet, username, password, level);
+
+    return level;
+  }
+
+  /** Move decrypted entry to the new storage or key, right away or in background. */
+  private void upgradeEntry(@NonNull final String alias,
+                            @NonNull final UpgradePolicy.Decision upgrade,
+                            @NonNull final CipherStorage newStorage,
+                            @NonNull final CipherStorage oldStorage,
+                            @NonNull final ResultSet resultSet,
+                            @NonNull final SecretBytes username,
+                            @NonNull final SecretBytes password,
+                            @NonNull final SecurityLevel level)
+    throws KeyStoreAccessException {
+    if (UpgradePolicy.Decision.BACKGROUND == upgrade) {
+      scheduleUpgrade(alias, newStorage, oldStorage, resultSet, username, password, level);
+    } else if (UpgradePolicy.Decision.ON_READ == upgrade) {
+      final String storageName = newStorage.getCipherStorageName();
+      final long eventTime = notifyStart(KeychainEvent.MIGRATE, alias, storageName);
+      final long metricsTime = metrics.begin(Metrics.Phase.MIGRATE);
+      KeychainEvent.Outcome outcome = KeychainEvent.Outcome.FAILURE;
 
-    if (Rules.AUTOMATIC_UPGRADE.equals(rules)) {
       try {
-        // encrypt using the current cipher storage
-        migrateCipherStorage(alias, current, oldStorage, decryptionResult);
+        final long startTime = System.nanoTime();
+        migrateCipherStorage(alias, newStorage, oldStorage, getKeyAlias(resultSet, alias), username, password, level);
+        upgradePolicy.recordCost(System.nanoTime() - startTime);
+        outcome = KeychainEvent.Outcome.SUCCESS;
       } catch (CryptoFailedException e) {
-        Log.w(KEYCHAIN_MODULE, "Migrating to a less safe storage is not allowed. Keeping the old one");
+        KeychainLog.w(KEYCHAIN_MODULE, e, "Migrating to a less safe storage is not allowed. Keeping the old one");
+      } finally {
+        metrics.end(Metrics.Phase.MIGRATE, metricsTime);
+        notifyEnd(KeychainEvent.MIGRATE, alias, storageName, eventTime, outcome);
       }
     }
+  }
 
-    return decryptionResult;
+  /**
+   * Upgrade entry on the background executor. Secrets are copied into own buffers of the task,
+   * entry is replaced only if it was not overwritten in meantime.
+   */
+  private void scheduleUpgrade(@NonNull final String alias,
+                               @NonNull final CipherStorage newStorage,
+                               @NonNull final CipherStorage oldStorage,
+                               @NonNull final ResultSet resultSet,
+                               @NonNull final SecretBytes username,
+                               @NonNull final SecretBytes password,
+                               @NonNull final SecurityLevel level) {
+    if (!pendingUpgrades.add(alias)) return;
+
+    final SecretBytes usernameCopy = new SecretBytes();
+    final SecretBytes passwordCopy = new SecretBytes();
+    usernameCopy.set(username.buffer(), 0, username.length());
+    passwordCopy.set(password.buffer(), 0, password.length());
+
+    backgroundExecutor.execute(() -> {
+      final String storageName = newStorage.getCipherStorageName();
+      final long eventTime = notifyStart(KeychainEvent.MIGRATE, alias, storageName);
+      final long metricsTime = metrics.begin(Metrics.Phase.MIGRATE);
+      KeychainEvent.Outcome outcome = KeychainEvent.Outcome.FAILURE;
+
+      try (final SecretBytes user = usernameCopy;
+           final SecretBytes secret = passwordCopy) {
+        final long startTime = System.nanoTime();
+        final int keyVersion = getKeyVersion(newStorage);
+        final int authValidity = getAuthValidity(null, newStorage, resultSet, alias);
+        final String keyAlias = getKeyAliasWithAuthValidity(newStorage,
+          takeKeyAlias(newStorage, alias, level, keyVersion), authValidity);
+        final EncryptionResult result = newStorage.encrypt(keyAlias, user, secret, level);
+        final String oldKeyAlias = getKeyAlias(resultSet, alias);
+
+        if (prefsStorage.replaceEncryptedEntry(alias, resultSet, result, getRecordedKeyAlias(keyAlias, alias), keyVersion)) {
+          if (!oldKeyAlias.equals(keyAlias)) keyJournal.retire(oldStorage, oldKeyAlias);
+        } else {
+          // entry overwritten concurrently, new key is not used by it
+          keyJournal.retire(newStorage, keyAlias);
+        }
+
+        keyJournal.replay();
+        upgradePolicy.recordCost(System.nanoTime() - startTime);
+        outcome = KeychainEvent.Outcome.SUCCESS;
+      } catch (Throwable fail) {
+        KeychainLog.w(KEYCHAIN_MODULE, fail, "Background upgrade failed for service: {s}", alias);
+      } finally {
+        pendingUpgrades.remove(alias);
+        metrics.end(Metrics.Phase.MIGRATE, metricsTime);
+        notifyEnd(KeychainEvent.MIGRATE, alias, storageName, eventTime, outcome);
+      }
+    });
+  }
+
+  /**
+   * Decrypt with provided storage into buffers. Interactive (biometric) storages are served by
+   * handler, all others decrypt directly without creation of intermediate strings.
+   */
+  @NonNull
+  private SecurityLevel decryptToBuffers(@NonNull final String alias,
+                                         @NonNull final CipherStorage storage,
+                                         @NonNull final ResultSet resultSet,
+                                         @NonNull final PromptInfo promptInfo,
+                                         @NonNull final SecretBytes username,
+                                         @NonNull final SecretBytes password)
+    throws CryptoFailedException {
+    final String storageName = storage.getCipherStorageName();
+    final long eventTime = notifyStart(KeychainEvent.DECRYPT, alias, storageName);
+    final long startTime = metrics.begin(Metrics.Phase.DECRYPT);
+    KeychainEvent.Outcome outcome = KeychainEvent.Outcome.FAILURE;
+
+    try {
+      final SecurityLevel level;
+
+      if (!storage.isBiometrySupported()) {
+        final String keyAlias = getKeyAlias(resultSet, alias);
+
+        level = storage.decrypt(keyAlias, resultSet.username, resultSet.password, SecurityLevel.ANY, username, password);
+      } else {
+        final DecryptionResult result = decryptToResult(alias, storage, resultSet, promptInfo);
+        username.set(result.username);
+        password.set(result.password);
+
+        level = result.getSecurityLevel();
+      }
+
+      outcome = KeychainEvent.Outcome.SUCCESS;
+
+      return level;
+    } finally {
+      metrics.end(Metrics.Phase.DECRYPT, startTime);
+      notifyEnd(KeychainEvent.DECRYPT, alias, storageName, eventTime, outcome);
+    }
   }
 
   /** Try to decrypt with provided storage. */
@@ -611,7 +1601,7 @@ public class KeychainModule extends ReactContextBaseJavaModule {
                                            @NonNull final PromptInfo promptInfo)
     throws CryptoFailedException {
     final DecryptionResultHandler handler = getInteractiveHandler(storage, promptInfo);
-    storage.decrypt(handler, alias, resultSet.username, resultSet.password, SecurityLevel.ANY);
+    storage.decrypt(handler, getKeyAlias(resultSet, alias), resultSet.username, resultSet.password, SecurityLevel.ANY);
 
     CryptoFailedException.reThrowOnError(handler.getError());
 
@@ -636,20 +1626,232 @@ public class KeychainModule extends ReactContextBaseJavaModule {
   /* package */ void migrateCipherStorage(@NonNull final String service,
                                           @NonNull final CipherStorage newCipherStorage,
                                           @NonNull final CipherStorage oldCipherStorage,
-                                          @NonNull final DecryptionResult decryptionResult)
+                                          @NonNull final String oldKeyAlias,
+                                          @NonNull final SecretBytes username,
+                                          @NonNull final SecretBytes password,
+                                          @NonNull final SecurityLevel level)
     throws KeyStoreAccessException, CryptoFailedException {
 
     // don't allow to degrade security level when transferring, the new
     // storage should be as safe as the old one.
-    final EncryptionResult encryptionResult = newCipherStorage.encrypt(
-      service, decryptionResult.username, decryptionResult.password,
-      decryptionResult.getSecurityLevel());
+    final int keyVersion = getKeyVersion(newCipherStorage);
+    final int authValidity = getAuthValidity(newCipherStorage, oldCipherStorage.getCipherStorageName(), oldKeyAlias);
+    final String keyAlias = getKeyAliasWithAuthValidity(newCipherStorage,
+      takeKeyAlias(newCipherStorage, service, level, keyVersion), authValidity);
+    final EncryptionResult encryptionResult = newCipherStorage.encrypt(keyAlias, username, password, level);
 
     // store the encryption result
-    prefsStorage.storeEncryptedEntry(service, encryptionResult);
+    prefsStorage.storeEncryptedEntry(service, encryptionResult, getRecordedKeyAlias(keyAlias, service), keyVersion);
 
-    // clean up the old cipher storage
-    oldCipherStorage.removeKey(service);
+    // clean up the old cipher storage, keystore storages share aliases namespace
+    if (!oldKeyAlias.equals(keyAlias)) {
+      keyJournal.removeKey(oldCipherStorage, oldKeyAlias);
+    }
+  }
+
+  /** Get alias of the key for new entry of the service. */
+  @NonNull
+  /* package */ String getKeyAlias(@NonNull final CipherStorage storage, @NonNull final String service) {
+    return useNamespacedKeys ? storage.getNamespacedKeyAlias(service) : service;
+  }
+
+  /** Get alias of the key with provided version for new entry of the service. */
+  @NonNull
+  /* package */ String getKeyAlias(@NonNull final CipherStorage storage,
+                                   @NonNull final String service,
+                                   final int keyVersion) {
+    if (0 == keyVersion) return getKeyAlias(storage, service);
+
+    return storage.getNamespacedKeyAlias(service) + CipherStorageBase.KEY_ALIAS_SEPARATOR + "v" + keyVersion;
+  }
+
+  /** Get alias of the key for new entry of the service, spare key from the pool is preferred. */
+  @NonNull
+  private String takeKeyAlias(@NonNull final CipherStorage storage,
+                              @NonNull final String service,
+                              @NonNull final SecurityLevel level,
+                              final int keyVersion) {
+    if (null != keyPool && keyPool.isServing(storage)) {
+      final String spare = keyPool.take(level);
+
+      if (null != spare) return spare;
+    }
+
+    return getKeyAlias(storage, service, keyVersion);
+  }
+
+  /** True - existing entry key can be used for encryption of the new value. */
+  private boolean isKeyReusable(@NonNull final String service,
+                                @NonNull final CipherStorage storage,
+                                @Nullable final ResultSet existing,
+                                final int keyVersion,
+                                final int authValidity) {
+    return null != existing
+      && storage.getCipherStorageName().equals(existing.cipherStorageName)
+      && existing.keyVersion == keyVersion
+      && (!storage.isBiometrySupported()
+      || CipherStorageKeystoreRsaEcb.getAuthValidity(getKeyAlias(existing, service)) == authValidity)
+      && !isKeyAliasOutdated(service, storage, existing);
+  }
+
+  /**
+   * Get validity of the user authentication for the entry key in seconds: from options, otherwise
+   * the one of the existing entry. Zero - authentication for every use, or storage that does not
+   * require authentication at all.
+   */
+  private static int getAuthValidity(@Nullable final ReadableMap options,
+                                     @NonNull final CipherStorage storage,
+                                     @Nullable final ResultSet existing,
+                                     @NonNull final String service) {
+    if (!storage.isBiometrySupported()) return 0;
+
+    if (null != options && options.hasKey(Maps.AUTH_VALIDITY)) {
+      return Math.max(0, options.getInt(Maps.AUTH_VALIDITY));
+    }
+
+    if (null != existing) {
+      return getAuthValidity(storage, existing.cipherStorageName, getKeyAlias(existing, service));
+    }
+
+    return CipherStorageKeystoreRsaEcb.DEFAULT_AUTH_VALIDITY;
+  }
+
+  /**
+   * Get validity of the user authentication for the key of the entry moved from the old key:
+   * validity of the old key is kept inside of the same storage, others get the default one.
+   */
+  private static int getAuthValidity(@NonNull final CipherStorage storage,
+                                     @NonNull final String oldStorageName,
+                                     @NonNull final String oldKeyAlias) {
+    if (!storage.isBiometrySupported()) return 0;
+
+    if (storage.getCipherStorageName().equals(oldStorageName)) {
+      return CipherStorageKeystoreRsaEcb.getAuthValidity(oldKeyAlias);
+    }
+
+    return CipherStorageKeystoreRsaEcb.DEFAULT_AUTH_VALIDITY;
+  }
+
+  /** Attach validity of the user authentication to the key alias, if storage requires authentication. */
+  @NonNull
+  private static String getKeyAliasWithAuthValidity(@NonNull final CipherStorage storage,
+                                                    @NonNull final String keyAlias,
+                                                    final int authValidity) {
+    if (!storage.isBiometrySupported()) return keyAlias;
+
+    return CipherStorageKeystoreRsaEcb.getKeyAliasWithAuthValidity(keyAlias, authValidity);
+  }
+
+  /** Current keys version for the storage. Storages that cannot rotate keys stay on zero version. */
+  /* package */ int getKeyVersion(@NonNull final CipherStorage storage) {
+    return isKeyRotationSupported(storage) ? prefsStorage.getKeyVersion() : 0;
+  }
+
+  /**
+   * True - storage keys can be rotated in background. Shared software key cannot be rotated
+   * per entry, biometric keys require user presence for decryption.
+   */
+  /* package */ boolean isKeyRotationSupported(@NonNull final CipherStorage storage) {
+    final CipherStorageDescriptor descriptor = cipherStorageMap.get(storage.getCipherStorageName());
+
+    return null != descriptor && descriptor.isKeystoreBacked && !descriptor.isBiometrySupported;
+  }
+
+  /** Capability level of the storage, same scale that is used for the best storage selection. */
+  /* package */ int getCapabilityLevel(@NonNull final CipherStorage storage) {
+    final CipherStorageDescriptor descriptor = cipherStorageMap.get(storage.getCipherStorageName());
+
+    return null == descriptor ? storage.getCapabilityLevel() : descriptor.getCapabilityLevel();
+  }
+
+  /** Remove key of the overwritten entry, if entry got another key. */
+  private void removeKeyIfUnused(@NonNull final String service,
+                                 @NonNull final ResultSet overwritten,
+                                 @NonNull final String keyAlias) {
+    final String oldKeyAlias = getKeyAlias(overwritten, service);
+    final CipherStorage oldStorage = getCipherStorageByName(overwritten.cipherStorageName);
+
+    // all keystore storages share one keystore, same alias is the same key
+    if (null == oldStorage || oldKeyAlias.equals(keyAlias)) return;
+
+    // removal waits in background until the new entry reaches the disk
+    keyJournal.retire(oldStorage, oldKeyAlias);
+    backgroundExecutor.execute(keyJournal::replay);
+  }
+
+  /**
+   * Remove all entries encrypted by the lost key in one write, so their reads resolve as missing
+   * instead of failing one by one. All keystore storages share one keystore, same alias is the
+   * same key.
+   */
+  /* package */ void purgeEntriesOfLostKey(@NonNull final CipherStorage storage, @NonNull final String safeAlias) {
+    if (!isKeystoreBacked(storage.getCipherStorageName())) return;
+
+    final List<String> affected = new ArrayList<>();
+
+    for (final String service : prefsStorage.getServices()) {
+      final ResultSet resultSet = prefsStorage.getEncryptedEntry(service);
+      if (null == resultSet || !isKeystoreBacked(resultSet.cipherStorageName)) continue;
+
+      final CipherStorage entryStorage = getCipherStorageByName(resultSet.cipherStorageName);
+      if (null == entryStorage) continue;
+
+      // empty service name is served by the storage default alias, e.g. RN_KEYCHAIN_DEFAULT_ALIAS of AES
+      final String keyAlias = CipherStorageBase.getDefaultAliasIfEmpty(getKeyAlias(resultSet, service),
+        entryStorage.getDefaultAliasServiceName());
+
+      if (safeAlias.equals(keyAlias)) {
+        affected.add(service);
+      }
+    }
+
+    prefsStorage.removeEntries(affected);
+    metrics.count(Metrics.Counter.ENTRY_PURGED, affected.size());
+
+    for (final String service : affected) {
+      prefetchCache.remove(service);
+    }
+
+    KeychainLog.w(KEYCHAIN_MODULE, "Entries removed with the lost key: {}", affected.size());
+  }
+
+  /** True - entry was removed during the failed read, e.g. together with its lost key. */
+  private boolean isEntryPurged(@NonNull final String alias) {
+    return null == prefsStorage.getEncryptedEntry(alias);
+  }
+
+  /** Journal of the keys waiting for removal. */
+  @NonNull
+  /* package */ KeyJournal getKeyJournal() {
+    return keyJournal;
+  }
+
+  /** True - storage keeps keys in the shared keystore. */
+  /* package */ boolean isKeystoreBacked(@NonNull final String storageName) {
+    final CipherStorageDescriptor descriptor = cipherStorageMap.get(storageName);
+
+    return null != descriptor && descriptor.isKeystoreBacked;
+  }
+
+  /** Get alias of the key that encrypted the stored entry. */
+  @NonNull
+  /* package */ static String getKeyAlias(@NonNull final ResultSet resultSet, @NonNull final String service) {
+    return null == resultSet.keyAlias ? service : resultSet.keyAlias;
+  }
+
+  /** Service named keys are not recorded, that keeps entries readable by previous versions of the lib. */
+  @Nullable
+  /* package */ static String getRecordedKeyAlias(@NonNull final String keyAlias, @NonNull final String service) {
+    return keyAlias.equals(service) ? null : keyAlias;
+  }
+
+  /** True - entry is encrypted by service named key, while storage should use own keys. */
+  /* package */ boolean isKeyAliasOutdated(@NonNull final String service,
+                                     @NonNull final CipherStorage storage,
+                                     @NonNull final ResultSet resultSet) {
+    return useNamespacedKeys
+      && null == resultSet.keyAlias
+      && !getKeyAlias(storage, service).equals(service);
   }
 
   /**
@@ -670,13 +1872,14 @@ public class KeychainModule extends ReactContextBaseJavaModule {
     throws CryptoFailedException {
     final int currentApiLevel = Build.VERSION.SDK_INT;
     final boolean isBiometry = isFingerprintAuthAvailable() && useBiometry;
-    CipherStorage foundCipher = null;
+    CipherStorageDescriptor foundCipher = null;
 
-    for (CipherStorage variant : cipherStorageMap.values()) {
-      Log.d(KEYCHAIN_MODULE, "Probe cipher storage: " + variant.getClass().getSimpleName());
+    // selection is done by descriptors, only the selected storage is instantiated
+    for (CipherStorageDescriptor variant : cipherStorageMap.values()) {
+      KeychainLog.d(KEYCHAIN_MODULE, "Probe cipher storage: {}", variant.name);
 
       // Is the cipherStorage supported on the current API level?
-      final int minApiLevel = variant.getMinSupportedApiLevel();
+      final int minApiLevel = variant.minSupportedApiLevel;
       final int capabilityLevel = variant.getCapabilityLevel();
       final boolean isSupportedApi = (minApiLevel <= currentApiLevel);
 
@@ -687,7 +1890,7 @@ public class KeychainModule extends ReactContextBaseJavaModule {
       if (foundCipher != null && capabilityLevel < foundCipher.getCapabilityLevel()) continue;
 
       // if biometric supported but not configured properly than skip
-      if (variant.isBiometrySupported() && !isBiometry) continue;
+      if (variant.isBiometrySupported && !isBiometry) continue;
 
       // remember storage with the best capabilities
       foundCipher = variant;
@@ -697,9 +1900,9 @@ public class KeychainModule extends ReactContextBaseJavaModule {
       throw new CryptoFailedException("Unsupported Android SDK " + Build.VERSION.SDK_INT);
     }
 
-    Log.d(KEYCHAIN_MODULE, "Selected storage: " + foundCipher.getClass().getSimpleName());
+    KeychainLog.d(KEYCHAIN_MODULE, "Selected storage: {}", foundCipher.name);
 
-    return foundCipher;
+    return foundCipher.get();
   }
 
   /** Throw exception in case of empty credentials providing. */
@@ -729,7 +1932,16 @@ public class KeychainModule extends ReactContextBaseJavaModule {
   /** Extract cipher by it unique name. {@link CipherStorage#getCipherStorageName()}. */
   @Nullable
   /* package */ CipherStorage getCipherStorageByName(@KnownCiphers @NonNull final String knownName) {
-    return cipherStorageMap.get(knownName);
+    final CipherStorageDescriptor descriptor = cipherStorageMap.get(knownName);
+
+    return null == descriptor ? null : descriptor.get();
+  }
+
+  /** True - storage with provided name is already instantiated. */
+  /* package */ boolean isCipherStorageCreated(@KnownCiphers @NonNull final String knownName) {
+    final CipherStorageDescriptor descriptor = cipherStorageMap.get(knownName);
+
+    return null != descriptor && descriptor.isCreated();
   }
 
   /** True - if fingerprint hardware available and configured, otherwise false. */
@@ -762,7 +1974,7 @@ public class KeychainModule extends ReactContextBaseJavaModule {
 
       return SecurityLevel.SECURE_SOFTWARE;
     } catch (CryptoFailedException e) {
-      Log.w(KEYCHAIN_MODULE, "Security Level Exception: " + e.getMessage(), e);
+      KeychainLog.w(KEYCHAIN_MODULE, e, "Security Level Exception: {}", e.getMessage());
 
       return SecurityLevel.ANY;
     }
@@ -784,6 +1996,8 @@ public class KeychainModule extends ReactContextBaseJavaModule {
     private final Executor executor = Executors.newSingleThreadExecutor();
     private DecryptionContext context;
     private PromptInfo promptInfo;
+    /** Start of the user authentication, zero if metrics are disabled. */
+    private long waitStartTime;
 
     private InteractiveBiometric(@NonNull final CipherStorage storage, @NonNull final PromptInfo promptInfo) {
       this.storage = (CipherStorageBase) storage;
@@ -793,6 +2007,7 @@ public class KeychainModule extends ReactContextBaseJavaModule {
     @Override
     public void askAccessPermissions(@NonNull final DecryptionContext context) {
       this.context = context;
+      this.waitStartTime = metrics.start();
 
       if (!DeviceAvailability.isPermissionsGranted(getReactApplicationContext())) {
         final CryptoFailedException failure = new CryptoFailedException(
@@ -808,6 +2023,7 @@ public class KeychainModule extends ReactContextBaseJavaModule {
     public void onDecrypt(@Nullable final DecryptionResult decryptionResult, @Nullable final Throwable error) {
       this.result = decryptionResult;
       this.error = error;
+      metrics.stop(Metrics.Phase.BIOMETRIC_WAIT, waitStartTime);
 
       synchronized (this) {
         notifyAll();
@@ -840,6 +2056,15 @@ public class KeychainModule extends ReactContextBaseJavaModule {
       try {
         if (null == context) throw new NullPointerException("Decrypt context is not assigned yet.");
 
+        // per-use key: prompt authorized the cipher, decrypt once with it
+        if (null != context.cipher) {
+          final BiometricPrompt.CryptoObject crypto = result.getCryptoObject();
+          final Cipher authorized = (null != crypto && null != crypto.getCipher()) ? crypto.getCipher() : context.cipher;
+
+          onDecrypt(((CipherStorageKeystoreRsaEcb) storage).decrypt(authorized, context), null);
+          return;
+        }
+
         final DecryptionResult decrypted = new DecryptionResult(
           storage.decryptBytes(context.key, context.username),
           storage.decryptBytes(context.key, context.password)
@@ -865,7 +2090,11 @@ public class KeychainModule extends ReactContextBaseJavaModule {
 
       final BiometricPrompt prompt = new BiometricPrompt(activity, executor, this);
 
-      prompt.authenticate(this.promptInfo);
+      if (null != context && null != context.cipher) {
+        prompt.authenticate(this.promptInfo, new BiometricPrompt.CryptoObject(context.cipher));
+      } else {
+        prompt.authenticate(this.promptInfo);
+      }
     }
 
     /** Block current NON-main thread and wait for user authentication results. */
@@ -874,7 +2103,7 @@ public class KeychainModule extends ReactContextBaseJavaModule {
       if (Thread.currentThread() == Looper.getMainLooper().getThread())
         throw new AssertionException("method should not be executed from MAIN thread");
 
-      Log.i(KEYCHAIN_MODULE, "blocking thread. waiting for done UI operation.");
+      KeychainLog.d(KEYCHAIN_MODULE, "blocking thread. waiting for done UI operation.");
 
       try {
         synchronized (this) {
@@ -884,7 +2113,7 @@ public class KeychainModule extends ReactContextBaseJavaModule {
         /* shutdown sequence */
       }
 
-      Log.i(KEYCHAIN_MODULE, "unblocking thread.");
+      KeychainLog.d(KEYCHAIN_MODULE, "unblocking thread.");
     }
   }
   //endregion
@@ -0,0 +1,135 @@
+package com.oblador.keychain;
+
+import android.content.pm.ApplicationInfo;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.ReactApplicationContext;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/** Configuration of the keychain module. Pass it to {@link KeychainPackage#KeychainPackage(KeychainModuleBuilder)}. */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public class KeychainModuleBuilder {
+  //region Members
+  /** Per-storage and per-service key aliases. */
+  private boolean useNamespacedKeys;
+  /** Number of keys generated ahead of time. Zero - disabled. */
+  private int keyPoolCapacity;
+  /** Migrate all entries to the best storage on start. */
+  private boolean useBackgroundMigration;
+  /** Collect latency histograms of the operation phases. */
+  private boolean useMetrics;
+  /** Receiver of the operation events. */
+  @Nullable
+  private KeychainEventListener eventListener;
+  /** Minimal priority of the printed messages. Null - detect by app debuggable flag. */
+  @Nullable
+  private Integer logLevel;
+  /** Services decrypted in background on start. */
+  @NonNull
+  private List<String> prefetchServices = Collections.emptyList();
+  //endregion
+
+  //region Configuration
+
+  /**
+   * Encrypt each service by own key, that is never shared with other storages or services.
+   * Existing entries are moved to own keys on next read.
+   */
+  @NonNull
+  public KeychainModuleBuilder withNamespacedKeys() {
+    useNamespacedKeys = true;
+    return this;
+  }
+
+  /**
+   * Keep spare keys generated in background, so the first write of a new service does not wait
+   * for key generation. Requires API23+, ignored on older devices.
+   */
+  @NonNull
+  public KeychainModuleBuilder withKeyPool(final int capacity) {
+    keyPoolCapacity = capacity;
+    return this;
+  }
+
+  /**
+   * Move all stored entries to the best available storage in background on each start, instead
+   * of one entry per read. Entries of biometric storages are still upgraded on read.
+   */
+  @NonNull
+  public KeychainModuleBuilder withBackgroundMigration() {
+    useBackgroundMigration = true;
+    return this;
+  }
+
+  /**
+   * Collect latency histograms of the operation phases, available in JS by {@code getMetrics()}.
+   * Disabled by default.
+   */
+  @NonNull
+  public KeychainModuleBuilder withMetrics() {
+    useMetrics = true;
+    return this;
+  }
+
+  /**
+   * Receive start and end events of the module and cipher storage operations, e.g. to forward
+   * them to the app own tracing or logging.
+   */
+  @NonNull
+  public KeychainModuleBuilder withEventListener(@NonNull final KeychainEventListener listener) {
+    eventListener = listener;
+    return this;
+  }
+
+  /**
+   * Minimal priority of the printed messages, one of {@link Log} constants or
+   * {@link KeychainLog#NONE}. By default {@link Log#DEBUG} for debuggable apps and
+   * {@link Log#WARN} otherwise. Service names are never printed as is.
+   */
+  @NonNull
+  public KeychainModuleBuilder withLogLevel(final int priority) {
+    logLevel = priority;
+    return this;
+  }
+
+  /**
+   * Decrypt entries of provided services in background on start and keep them in memory for a
+   * short time, so the first read of each one does not wait for keystore initialization. Each
+   * prefetched secret serves a single read. Entries of biometric storages are never prefetched.
+   */
+  @NonNull
+  public KeychainModuleBuilder withPrefetch(@NonNull final String... services) {
+    prefetchServices = Arrays.asList(services);
+    return this;
+  }
+  //endregion
+
+  //region Implementation
+
+  /** Create configured instance of the module. */
+  @NonNull
+  public KeychainModule build(@NonNull final ReactApplicationContext reactContext) {
+    KeychainLog.setLevel(null != logLevel ? logLevel : getDefaultLogLevel(reactContext));
+
+    return KeychainModule.withWarming(reactContext)
+      .setUseNamespacedKeys(useNamespacedKeys)
+      .setKeyPoolCapacity(keyPoolCapacity)
+      .setMetricsEnabled(useMetrics)
+      .setEventListener(eventListener)
+      .setPrefetch(prefetchServices)
+      .setBackgroundMigration(useBackgroundMigration);
+  }
+
+  private static int getDefaultLogLevel(@NonNull final ReactApplicationContext reactContext) {
+    final boolean isDebuggable = 0 != (reactContext.getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE);
+
+    return isDebuggable ? Log.DEBUG : Log.WARN;
+  }
+  //endregion
+}
@@ -1,27 +1,60 @@
 package com.oblador.keychain;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
-import com.facebook.react.ReactPackage;
+import com.facebook.react.TurboReactPackage;
 import com.facebook.react.bridge.JavaScriptModule;
 import com.facebook.react.bridge.NativeModule;
 import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.module.model.ReactModuleInfo;
+import com.facebook.react.module.model.ReactModuleInfoProvider;
 import com.facebook.react.uimanager.ViewManager;
 
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
+/**
+ * Lazy package, the module (with its storages, keystore access and background tasks) is created
+ * on the first access from JS and not on the bridge start.
+ */
 @SuppressWarnings("unused")
-public class KeychainPackage implements ReactPackage {
+public class KeychainPackage extends TurboReactPackage {
+  @NonNull
+  private final KeychainModuleBuilder builder;
 
   public KeychainPackage() {
+    this(new KeychainModuleBuilder());
+  }
 
+  /** Create package with customized module configuration. */
+  public KeychainPackage(@NonNull final KeychainModuleBuilder builder) {
+    this.builder = builder;
+  }
+
+  @Override
+  @Nullable
+  public NativeModule getModule(@NonNull final String name, @NonNull final ReactApplicationContext reactContext) {
+    if (KeychainModule.KEYCHAIN_MODULE.equals(name)) {
+      return builder.build(reactContext);
+    }
+
+    return null;
   }
 
   @Override
   @NonNull
-  public List<NativeModule> createNativeModules(@NonNull final ReactApplicationContext reactContext) {
-    return Collections.singletonList(KeychainModule.withWarming(reactContext));
+  public ReactModuleInfoProvider getReactModuleInfoProvider() {
+    final Map<String, ReactModuleInfo> infos = Collections.singletonMap(KeychainModule.KEYCHAIN_MODULE,
+      new ReactModuleInfo(KeychainModule.KEYCHAIN_MODULE, KeychainModule.class.getName(),
+        false /* canOverrideExistingModule */,
+        false /* needsEagerInit */,
+        true /* hasConstants */,
+        false /* isCxxModule */,
+        false /* isTurboModule */));
+
+    return () -> infos;
   }
 
   @NonNull
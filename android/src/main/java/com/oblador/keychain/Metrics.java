@@ -0,0 +1,243 @@
+package com.oblador.keychain;
+
+import android.os.Trace;
+
+import androidx.annotation.NonNull;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latency histograms of the module operation phases. Disabled by default, in this state each
+ * measurement costs a single volatile read and no clock access.
+ * <p>
+ * Counters of rare events, e.g. key recovery, are collected always.
+ * <p>
+ * Synchronous phases are also wrapped into {@link Trace} sections, visible in systrace and
+ * Perfetto captures regardless of the metrics state.
+ * <p>
+ * Histogram buckets are powers of two of microseconds, so percentiles are upper bounds with
+ * at most 2x error, enough to see in which phase the time is spent.
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public final class Metrics {
+  /** Measured phases of the module operations. */
+  public enum Phase {
+    /** Selection of the cipher storage. */
+    SELECTION("selection"),
+    /** Entry read from shared preferences. */
+    PREFS_READ("prefsRead"),
+    /** Entry write to or removal from shared preferences. */
+    PREFS_WRITE("prefsWrite"),
+    /** Key extraction from keystore or generation of a new one. */
+    KEY_EXTRACT("keyExtract"),
+    /** Encryption, including key extraction. */
+    ENCRYPT("encrypt"),
+    /** Decryption, including key extraction and biometric wait. */
+    DECRYPT("decrypt"),
+    /** Entry upgrade to the new storage or key. */
+    MIGRATE("migrate"),
+    /** Wait for the user biometric authentication. */
+    BIOMETRIC_WAIT("biometricWait");
+
+    /** Name of the phase in JS results. */
+    public final String jsName;
+    /** Name of the trace section. */
+    public final String sectionName;
+
+    Phase(@NonNull final String jsName) {
+      this.jsName = jsName;
+      this.sectionName = TRACE_PREFIX + jsName;
+    }
+  }
+
+  /** Counted events. */
+  public enum Counter {
+    /** Key read repeated after the keystore failed to load the key blob. */
+    KEY_READ_RETRY("keyReadRetries"),
+    /** Key read succeeded after the retry, failure was transient. */
+    KEY_RECOVERED("keysRecovered"),
+    /** Key failed on every retry and was deleted. */
+    KEY_LOST("keysLost"),
+    /** Entry removed because its key was lost. */
+    ENTRY_PURGED("entriesPurged"),
+    /** Read served by the secret decrypted ahead by prefetch. */
+    PREFETCH_HIT("prefetchHits");
+
+    /** Name of the counter in JS results. */
+    public final String jsName;
+
+    Counter(@NonNull final String jsName) {
+      this.jsName = jsName;
+    }
+  }
+
+  /** Prefix of the trace sections. */
+  public static final String TRACE_PREFIX = "RNKeychain:";
+  /** Number of buckets, the last one collects everything longer of ~18 minutes. */
+  /* package */ static final int BUCKETS = 32;
+
+  /** Metrics are collected. */
+  private volatile boolean enabled;
+  /** Histogram per phase, indexed by ordinal. */
+  private final Histogram[] histograms = new Histogram[Phase.values().length];
+  /** Event counters, indexed by ordinal. */
+  private final AtomicLongArray counters = new AtomicLongArray(Counter.values().length);
+
+  public Metrics() {
+    for (int i = 0; i < histograms.length; i++) {
+      histograms[i] = new Histogram();
+    }
+  }
+
+  /** Enable or disable collection, collected values are kept. */
+  public void setEnabled(final boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /** Start time of the phase, zero if metrics are disabled. */
+  public long start() {
+    return enabled ? System.nanoTime() : 0L;
+  }
+
+  /** Record duration of the phase started by {@link #start()}. */
+  public void stop(@NonNull final Phase phase, final long startTime) {
+    if (0L == startTime) return;
+
+    histograms[phase.ordinal()].record(System.nanoTime() - startTime);
+  }
+
+  /**
+   * Open trace section of the phase and start measurement. Section must be closed by
+   * {@link #end(Phase, long)} on the same thread, use try/finally.
+   */
+  public long begin(@NonNull final Phase phase) {
+    Trace.beginSection(phase.sectionName);
+
+    return start();
+  }
+
+  /** Record duration of the phase started by {@link #begin(Phase)} and close its trace section. */
+  public void end(@NonNull final Phase phase, final long startTime) {
+    try {
+      stop(phase, startTime);
+    } finally {
+      Trace.endSection();
+    }
+  }
+
+  /** Get histogram of the phase. */
+  @NonNull
+  public Histogram get(@NonNull final Phase phase) {
+    return histograms[phase.ordinal()];
+  }
+
+  /** Add events to the counter. */
+  public void count(@NonNull final Counter counter, final long events) {
+    counters.addAndGet(counter.ordinal(), events);
+  }
+
+  /** Get number of counted events. */
+  public long get(@NonNull final Counter counter) {
+    return counters.get(counter.ordinal());
+  }
+
+  /** Drop all collected values. */
+  public void reset() {
+    for (final Histogram histogram : histograms) {
+      histogram.reset();
+    }
+
+    for (int i = 0; i < counters.length(); i++) {
+      counters.set(i, 0);
+    }
+  }
+
+  /** Lock-free histogram of durations. */
+  public static final class Histogram {
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /** Add duration in nanoseconds. */
+    public void record(final long nanos) {
+      final long value = Math.max(0L, nanos);
+
+      buckets.incrementAndGet(getBucket(value));
+      count.incrementAndGet();
+      total.addAndGet(value);
+
+      long current = max.get();
+      while (value > current && !max.compareAndSet(current, value)) {
+        current = max.get();
+      }
+    }
+
+    /** Number of recorded durations. */
+    public long getCount() {
+      return count.get();
+    }
+
+    /** Sum of recorded durations in nanoseconds. */
+    public long getTotal() {
+      return total.get();
+    }
+
+    /** Longest recorded duration in nanoseconds. */
+    public long getMax() {
+      return max.get();
+    }
+
+    /** Upper bound of the percentile in nanoseconds, not more than the longest recorded duration. */
+    public long getPercentile(final double percent) {
+      final long[] snapshot = new long[BUCKETS];
+      long recorded = 0;
+
+      for (int i = 0; i < BUCKETS; i++) {
+        recorded += (snapshot[i] = buckets.get(i));
+      }
+
+      if (0 == recorded) return 0L;
+
+      final long rank = Math.max(1L, (long) Math.ceil(percent / 100.0 * recorded));
+      long seen = 0;
+
+      for (int i = 0; i < BUCKETS; i++) {
+        seen += snapshot[i];
+
+        if (seen >= rank) {
+          return Math.min(getUpperBound(i), max.get());
+        }
+      }
+
+      return max.get();
+    }
+
+    /* package */ void reset() {
+      for (int i = 0; i < BUCKETS; i++) {
+        buckets.set(i, 0);
+      }
+
+      count.set(0);
+      total.set(0);
+      max.set(0);
+    }
+
+    /** Bucket index: 0 - below 1us, N - [2^(N-1), 2^N) microseconds. */
+    /* package */ static int getBucket(final long nanos) {
+      final long micros = nanos / 1_000L;
+
+      return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+    }
+
+    /** Exclusive upper bound of the bucket in nanoseconds. */
+    /* package */ static long getUpperBound(final int bucket) {
+      return (1L << bucket) * 1_000L;
+    }
+  }
+}
@@ -0,0 +1,146 @@
+package com.oblador.keychain;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.oblador.keychain.PrefsStorage.ResultSet;
+import com.oblador.keychain.cipherStorage.CipherStorage.SecretBytes;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Short-lived cache of the secrets decrypted ahead of the first read. Each secret is served only
+ * once and only while the stored entry is unchanged, expired secrets are wiped.
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public class PrefetchCache {
+  //region Members
+  /** Lifetime of the cached secret, in nanoseconds. */
+  private final long ttlNanos;
+  /** Cached secrets by service. */
+  private final Map<String, Entry> entries = new HashMap<>();
+  //endregion
+
+  //region Initialization
+  public PrefetchCache(final long ttlMillis) {
+    ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+  }
+  //endregion
+
+  //region API
+
+  /** Keep copy of the decrypted secret, previous secret of the service is wiped. */
+  public synchronized void put(@NonNull final String service,
+                               @NonNull final ResultSet resultSet,
+                               @NonNull final SecretBytes username,
+                               @NonNull final SecretBytes password) {
+    final Entry entry = new Entry(resultSet, System.nanoTime() + ttlNanos);
+    entry.username.set(username.buffer(), 0, username.length());
+    entry.password.set(password.buffer(), 0, password.length());
+
+    wipe(entries.put(service, entry));
+  }
+
+  /**
+   * Move cached secret of the service into provided buffers, cache forgets it.
+   *
+   * @return name of the storage that encrypted the entry, NULL - nothing cached, secret expired
+   * or entry changed since it was cached.
+   */
+  @Nullable
+  public synchronized String take(@NonNull final String service,
+                                  @NonNull final ResultSet current,
+                                  @NonNull final SecretBytes username,
+                                  @NonNull final SecretBytes password) {
+    final Entry entry = entries.remove(service);
+    if (null == entry) return null;
+
+    try {
+      if (entry.isExpired(System.nanoTime()) || !entry.isCachedFrom(current)) return null;
+
+      username.set(entry.username.buffer(), 0, entry.username.length());
+      password.set(entry.password.buffer(), 0, entry.password.length());
+
+      return entry.storageName;
+    } finally {
+      wipe(entry);
+    }
+  }
+
+  /** Wipe cached secret of the service, e.g. when entry is overwritten. */
+  public synchronized void remove(@NonNull final String service) {
+    wipe(entries.remove(service));
+  }
+
+  /** Wipe expired secrets. */
+  public synchronized void evictExpired() {
+    final long now = System.nanoTime();
+    final Iterator<Entry> iterator = entries.values().iterator();
+
+    while (iterator.hasNext()) {
+      final Entry entry = iterator.next();
+
+      if (entry.isExpired(now)) {
+        iterator.remove();
+        wipe(entry);
+      }
+    }
+  }
+
+  /** Wipe all secrets. */
+  public synchronized void clear() {
+    for (final Entry entry : entries.values()) {
+      wipe(entry);
+    }
+
+    entries.clear();
+  }
+
+  /** Number of cached secrets, including expired ones. */
+  public synchronized int size() {
+    return entries.size();
+  }
+  //endregion
+
+  //region Implementation
+
+  private static void wipe(@Nullable final Entry entry) {
+    if (null == entry) return;
+
+    entry.username.wipe();
+    entry.password.wipe();
+  }
+
+  /** Decrypted secret together with the encrypted form it was decrypted from. */
+  private static final class Entry {
+    final String storageName;
+    final byte[] encryptedUsername;
+    final byte[] encryptedPassword;
+    final long expiresAt;
+    final SecretBytes username = new SecretBytes();
+    final SecretBytes password = new SecretBytes();
+
+    Entry(@NonNull final ResultSet resultSet, final long expiresAt) {
+      this.storageName = resultSet.cipherStorageName;
+      this.encryptedUsername = resultSet.username;
+      this.encryptedPassword = resultSet.password;
+      this.expiresAt = expiresAt;
+    }
+
+    boolean isExpired(final long now) {
+      return now - expiresAt >= 0;
+    }
+
+    /** Entry was not overwritten, migrated or re-encrypted since the secret was cached. */
+    boolean isCachedFrom(@NonNull final ResultSet current) {
+      return storageName.equals(current.cipherStorageName)
+        && Arrays.equals(encryptedUsername, current.username)
+        && Arrays.equals(encryptedPassword, current.password);
+    }
+  }
+  //endregion
+}
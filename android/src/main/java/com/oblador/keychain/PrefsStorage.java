@@ -12,18 +12,59 @@ import com.oblador.keychain.KeychainModule.KnownCiphers;
 import com.oblador.keychain.cipherStorage.CipherStorage;
 import com.oblador.keychain.cipherStorage.CipherStorage.EncryptionResult;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 @SuppressWarnings({"unused", "WeakerAccess"})
 public class PrefsStorage {
   public static final String KEYCHAIN_DATA = "RN_KEYCHAIN";
+  /** Current version of the keys, incremented by each keys rotation. Never matches an entry field name. */
+  public static final String KEY_VERSION = KEYCHAIN_DATA + ".keyVersion";
+  /** Last service processed by unfinished bulk migration. Never matches an entry field name. */
+  public static final String MIGRATION_CURSOR = KEYCHAIN_DATA + ".migrationCursor";
 
   static public class ResultSet extends CipherStorage.CipherResult<byte[]> {
     @KnownCiphers
     public final String cipherStorageName;
+    /** Alias of the key used for encryption. NULL - entry is encrypted by key with service name alias. */
+    @Nullable
+    public final String keyAlias;
+    /** Version of the key used for encryption. Zero - key was never rotated. */
+    public final int keyVersion;
+    /** Access control the entry was written with. NULL - written by older version of the lib. */
+    @Nullable
+    public final String accessControl;
 
     public ResultSet(@KnownCiphers final String cipherStorageName, final byte[] usernameBytes, final byte[] passwordBytes) {
+      this(cipherStorageName, usernameBytes, passwordBytes, null, 0);
+    }
+
+    public ResultSet(@KnownCiphers final String cipherStorageName,
+                     final byte[] usernameBytes,
+                     final byte[] passwordBytes,
+                     @Nullable final String keyAlias,
+                     final int keyVersion) {
+      this(cipherStorageName, usernameBytes, passwordBytes, keyAlias, keyVersion, null);
+    }
+
+    public ResultSet(@KnownCiphers final String cipherStorageName,
+                     final byte[] usernameBytes,
+                     final byte[] passwordBytes,
+                     @Nullable final String keyAlias,
+                     final int keyVersion,
+                     @Nullable final String accessControl) {
       super(usernameBytes, passwordBytes);
 
       this.cipherStorageName = cipherStorageName;
+      this.keyAlias = keyAlias;
+      this.keyVersion = keyVersion;
+      this.accessControl = accessControl;
     }
   }
 
@@ -31,14 +72,26 @@ public class PrefsStorage {
   private final SharedPreferences prefs;
 
   public PrefsStorage(@NonNull final ReactApplicationContext reactContext) {
-    this.prefs = reactContext.getSharedPreferences(KEYCHAIN_DATA, Context.MODE_PRIVATE);
+    this(reactContext.getSharedPreferences(KEYCHAIN_DATA, Context.MODE_PRIVATE));
   }
 
+  /** Storage on top of provided preferences, allows to run it outside of React Native. */
+  /* package */ PrefsStorage(@NonNull final SharedPreferences prefs) {
+    this.prefs = prefs;
+  }
+
+  /**
+   * Get entry of the service. Fields of the entry are separate preferences, read holds the same
+   * lock as writers, so ciphertext is never paired with key alias or version of other write.
+   */
   @Nullable
-  public ResultSet getEncryptedEntry(@NonNull final String service) {
+  public synchronized ResultSet getEncryptedEntry(@NonNull final String service) {
     byte[] bytesForUsername = getBytesForUsername(service);
     byte[] bytesForPassword = getBytesForPassword(service);
     String cipherStorageName = getCipherStorageName(service);
+    final String keyAlias = getKeyAlias(service);
+    final int keyVersion = prefs.getInt(getKeyForKeyVersion(service), 0);
+    final String accessControl = prefs.getString(getKeyForAccessControl(service), null);
 
     // in case of wrong password or username
     if (bytesForUsername == null || bytesForPassword == null) {
@@ -51,32 +104,177 @@ public class PrefsStorage {
       cipherStorageName = KnownCiphers.FB;
     }
 
-    return new ResultSet(cipherStorageName, bytesForUsername, bytesForPassword);
+    return new ResultSet(cipherStorageName, bytesForUsername, bytesForPassword, keyAlias, keyVersion, accessControl);
+  }
 
+  public synchronized void removeEntry(@NonNull final String service) {
+    removeEntries(Collections.singletonList(service));
   }
 
-  public void removeEntry(@NonNull final String service) {
-    final String keyForUsername = getKeyForUsername(service);
-    final String keyForPassword = getKeyForPassword(service);
-    final String keyForCipherStorage = getKeyForCipherStorage(service);
+  /** Remove entries of all provided services in one write. */
+  public synchronized void removeEntries(@NonNull final Collection<String> services) {
+    if (services.isEmpty()) return;
+
+    final SharedPreferences.Editor editor = prefs.edit();
+
+    for (final String service : services) {
+      editor
+        .remove(getKeyForUsername(service))
+        .remove(getKeyForPassword(service))
+        .remove(getKeyForCipherStorage(service))
+        .remove(getKeyForKeyAlias(service))
+        .remove(getKeyForKeyVersion(service))
+        .remove(getKeyForAccessControl(service));
+    }
 
-    prefs.edit()
-      .remove(keyForUsername)
-      .remove(keyForPassword)
-      .remove(keyForCipherStorage)
-      .apply();
+    editor.apply();
   }
 
   public void storeEncryptedEntry(@NonNull final String service, @NonNull final EncryptionResult encryptionResult) {
+    storeEncryptedEntry(service, encryptionResult, null, 0);
+  }
+
+  /**
+   * Store entry together with alias and version of the key used for encryption.
+   * NULL alias - key alias is a service name. Recorded access control stays as is.
+   */
+  public void storeEncryptedEntry(@NonNull final String service,
+                                  @NonNull final EncryptionResult encryptionResult,
+                                  @Nullable final String keyAlias,
+                                  final int keyVersion) {
+    storeEncryptedEntry(service, encryptionResult, keyAlias, keyVersion, null);
+  }
+
+  /**
+   * Store entry together with key details and access control it is written with.
+   * NULL access control - keep the recorded one, re-encryption does not change the access policy.
+   */
+  public synchronized void storeEncryptedEntry(@NonNull final String service,
+                                               @NonNull final EncryptionResult encryptionResult,
+                                               @Nullable final String keyAlias,
+                                               final int keyVersion,
+                                               @Nullable final String accessControl) {
     final String keyForUsername = getKeyForUsername(service);
     final String keyForPassword = getKeyForPassword(service);
     final String keyForCipherStorage = getKeyForCipherStorage(service);
+    final String keyForKeyAlias = getKeyForKeyAlias(service);
+    final String keyForKeyVersion = getKeyForKeyVersion(service);
 
-    prefs.edit()
+    final SharedPreferences.Editor editor = prefs.edit()
       .putString(keyForUsername, Base64.encodeToString(encryptionResult.username, Base64.DEFAULT))
       .putString(keyForPassword, Base64.encodeToString(encryptionResult.password, Base64.DEFAULT))
-      .putString(keyForCipherStorage, encryptionResult.cipherName)
-      .apply();
+      .putString(keyForCipherStorage, encryptionResult.cipherName);
+
+    if (null == keyAlias) {
+      editor.remove(keyForKeyAlias);
+    } else {
+      editor.putString(keyForKeyAlias, keyAlias);
+    }
+
+    if (0 == keyVersion) {
+      editor.remove(keyForKeyVersion);
+    } else {
+      editor.putInt(keyForKeyVersion, keyVersion);
+    }
+
+    if (null != accessControl) {
+      editor.putString(getKeyForAccessControl(service), accessControl);
+    }
+
+    editor.apply();
+  }
+
+  /**
+   * Replace entry only if it was not changed since provided snapshot was read.
+   *
+   * @return true - entry replaced, false - entry was modified or removed by someone else.
+   */
+  public synchronized boolean replaceEncryptedEntry(@NonNull final String service,
+                                                    @NonNull final ResultSet expected,
+                                                    @NonNull final EncryptionResult encryptionResult,
+                                                    @Nullable final String keyAlias,
+                                                    final int keyVersion) {
+    final ResultSet current = getEncryptedEntry(service);
+
+    if (null == current
+      || !Arrays.equals(current.username, expected.username)
+      || !Arrays.equals(current.password, expected.password)) {
+      return false;
+    }
+
+    storeEncryptedEntry(service, encryptionResult, keyAlias, keyVersion);
+
+    return true;
+  }
+
+  /**
+   * Wait until all entries written by {@code apply} reach the disk. Commit of the empty editor is
+   * queued after the pending writes and persists the latest in-memory state.
+   */
+  public void flush() {
+    prefs.edit().commit();
+  }
+
+  /** Get names of all services that have stored entries. */
+  @NonNull
+  public List<String> getServices() {
+    final List<String> services = new ArrayList<>();
+    final String suffix = getKeyForPassword("");
+
+    for (String key : prefs.getAll().keySet()) {
+      if (key.endsWith(suffix)) {
+        services.add(key.substring(0, key.length() - suffix.length()));
+      }
+    }
+
+    return services;
+  }
+
+  /** Get current version of the keys. */
+  public int getKeyVersion() {
+    return prefs.getInt(KEY_VERSION, 0);
+  }
+
+  /** Start new version of the keys. */
+  public synchronized int incrementKeyVersion() {
+    final int version = getKeyVersion() + 1;
+
+    prefs.edit().putInt(KEY_VERSION, version).apply();
+
+    return version;
+  }
+
+  /**
+   * Get last service processed by unfinished bulk migration. Empty string - migration started but
+   * no batch completed yet, NULL - no unfinished migration.
+   */
+  @Nullable
+  public String getMigrationCursor() {
+    return prefs.getString(MIGRATION_CURSOR, null);
+  }
+
+  /** Remember bulk migration progress. NULL - migration is finished. */
+  public void setMigrationCursor(@Nullable final String service) {
+    if (null == service) {
+      prefs.edit().remove(MIGRATION_CURSOR).apply();
+    } else {
+      prefs.edit().putString(MIGRATION_CURSOR, service).apply();
+    }
+  }
+
+  /** Get aliases of keys recorded by entries. Service named keys are not recorded. */
+  @NonNull
+  public Set<String> getKeyAliases() {
+    final Set<String> aliases = new HashSet<>();
+    final String suffix = getKeyForKeyAlias("");
+
+    for (Map.Entry<String, ?> entry : prefs.getAll().entrySet()) {
+      if (entry.getKey().endsWith(suffix) && entry.getValue() instanceof String) {
+        aliases.add((String) entry.getValue());
+      }
+    }
+
+    return aliases;
   }
 
   @Nullable
@@ -99,6 +297,13 @@ public class PrefsStorage {
     return this.prefs.getString(key, null);
   }
 
+  @Nullable
+  private String getKeyAlias(@NonNull final String service) {
+    String key = getKeyForKeyAlias(service);
+
+    return this.prefs.getString(key, null);
+  }
+
   @NonNull
   public static String getKeyForUsername(@NonNull final String service) {
     return service + ":" + "u";
@@ -114,6 +319,21 @@ public class PrefsStorage {
     return service + ":" + "c";
   }
 
+  @NonNull
+  public static String getKeyForKeyAlias(@NonNull final String service) {
+    return service + ":" + "k";
+  }
+
+  @NonNull
+  public static String getKeyForKeyVersion(@NonNull final String service) {
+    return service + ":" + "v";
+  }
+
+  @NonNull
+  public static String getKeyForAccessControl(@NonNull final String service) {
+    return service + ":" + "a";
+  }
+
   @Nullable
   private byte[] getBytes(@NonNull final String key) {
     String value = this.prefs.getString(key, null);
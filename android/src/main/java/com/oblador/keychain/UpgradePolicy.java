@@ -0,0 +1,62 @@
+package com.oblador.keychain;
+
+import androidx.annotation.NonNull;
+
+import com.oblador.keychain.KeychainModule.Rules;
+
+/**
+ * Decides when the entry found in a weaker storage (or under outdated key alias) is upgraded.
+ * <p>
+ * Cost of the upgrade is dominated by the key generation and differs a lot between devices, so
+ * the budget rule relies on measured costs of previous upgrades. Until the first measurement
+ * upgrades go to background, that never slows down the read.
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+/* package */ final class UpgradePolicy {
+  /** How the entry upgrade is done. */
+  public enum Decision {
+    /** Entry stays in the old storage. */
+    SKIP,
+    /** Entry upgraded before the read completes. */
+    ON_READ,
+    /** Read completes immediately, entry upgraded on the background executor. */
+    BACKGROUND
+  }
+
+  /** Weight of the new measurement in the estimated cost, 1/N. */
+  private static final int SMOOTHING = 4;
+
+  /** Estimated upgrade cost in nanoseconds. Negative - nothing measured yet. */
+  private volatile long estimatedCost = -1;
+
+  /** Get decision for the rules and time budget of the read in milliseconds. */
+  @NonNull
+  public Decision decide(@Rules @NonNull final String rules, final int budgetMillis) {
+    switch (rules) {
+      case Rules.NONE:
+        return Decision.SKIP;
+      case Rules.BACKGROUND_UPGRADE:
+        return Decision.BACKGROUND;
+      case Rules.UPGRADE_WITHIN_BUDGET: {
+        final long cost = estimatedCost;
+
+        return (cost >= 0 && cost <= budgetMillis * 1_000_000L) ? Decision.ON_READ : Decision.BACKGROUND;
+      }
+      case Rules.AUTOMATIC_UPGRADE:
+      default:
+        return Decision.ON_READ;
+    }
+  }
+
+  /** Take into account duration of the completed upgrade. */
+  public void recordCost(final long nanos) {
+    final long cost = estimatedCost;
+
+    estimatedCost = (cost < 0) ? nanos : cost + (nanos - cost) / SMOOTHING;
+  }
+
+  /** Estimated upgrade cost in nanoseconds, negative if nothing measured yet. */
+  public long getEstimatedCost() {
+    return estimatedCost;
+  }
+}
@@ -0,0 +1,186 @@
+package com.oblador.keychain.cipherStorage;
+
+import androidx.annotation.NonNull;
+
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.util.Arrays;
+
+import javax.crypto.BadPaddingException;
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+
+/**
+ * AES-GCM composed from {@code AES/ECB} and {@code AES/CTR} ciphers, for API16-18 where neither
+ * {@link javax.crypto.spec.GCMParameterSpec} nor {@link Cipher#updateAAD(byte[])} are available.
+ * Output is identical to {@code AES/GCM/NoPadding} with 96 bits IV and 128 bits tag
+ * (NIST SP 800-38D): {@code [encrypted data][tag]}.
+ */
+/* package */ final class AesGcmCompat {
+  //region Constants
+  /** AES block size in bytes, same as tag length. */
+  /* package */ static final int BLOCK_SIZE = 16;
+  /** Supported initialization vector length in bytes. */
+  /* package */ static final int IV_LENGTH = 12;
+  /** Reduction polynomial of GF(2^128) in the GCM bit order. */
+  private static final long R = 0xE100000000000000L;
+  //endregion
+
+  private AesGcmCompat() {
+  }
+
+  //region API
+
+  /**
+   * Encrypt {@code length} bytes of input and append the tag.
+   *
+   * @return number of written bytes, {@code length + BLOCK_SIZE}.
+   */
+  /* package */ static int seal(@NonNull final Key key, @NonNull final byte[] iv, @NonNull final byte[] aad,
+                                @NonNull final byte[] input, final int offset, final int length,
+                                @NonNull final byte[] output, final int outputOffset)
+    throws GeneralSecurityException {
+    final int written = crypt(key, iv, input, offset, length, output, outputOffset);
+    final byte[] tag = tag(key, iv, aad, output, outputOffset, written);
+
+    System.arraycopy(tag, 0, output, outputOffset + written, BLOCK_SIZE);
+
+    return written + BLOCK_SIZE;
+  }
+
+  /**
+   * Verify the tag at the end of input and decrypt data in front of it. Nothing is decrypted if
+   * the tag does not match.
+   *
+   * @return number of decrypted bytes, {@code length - BLOCK_SIZE}.
+   */
+  /* package */ static int open(@NonNull final Key key, @NonNull final byte[] iv, @NonNull final byte[] aad,
+                                @NonNull final byte[] input, final int offset, final int length,
+                                @NonNull final byte[] output, final int outputOffset)
+    throws GeneralSecurityException {
+    final int encrypted = length - BLOCK_SIZE;
+    if (encrypted < 0) throw new BadPaddingException("Input is shorter than the tag.");
+
+    final byte[] expected = tag(key, iv, aad, input, offset, encrypted);
+
+    // compare all bytes, time does not depend on the position of the first mismatch
+    int diff = 0;
+    for (int i = 0; i < BLOCK_SIZE; i++) {
+      diff |= expected[i] ^ input[offset + encrypted + i];
+    }
+
+    if (0 != diff) throw new BadPaddingException("Tag mismatch.");
+
+    return crypt(key, iv, input, offset, encrypted, output, outputOffset);
+  }
+  //endregion
+
+  //region Implementation
+
+  /** CTR keystream starts right after the block reserved for the tag. */
+  private static int crypt(@NonNull final Key key, @NonNull final byte[] iv,
+                           @NonNull final byte[] input, final int offset, final int length,
+                           @NonNull final byte[] output, final int outputOffset)
+    throws GeneralSecurityException {
+    if (0 == length) return 0;
+
+    final Cipher ctr = Cipher.getInstance("AES/CTR/NoPadding");
+    ctr.init(Cipher.ENCRYPT_MODE, key, new IvParameterSpec(counterBlock(iv, 2)));
+
+    return ctr.doFinal(input, offset, length, output, outputOffset);
+  }
+
+  /** Tag is GHASH of additional data and encrypted data, masked by the first counter block. */
+  @NonNull
+  private static byte[] tag(@NonNull final Key key, @NonNull final byte[] iv, @NonNull final byte[] aad,
+                            @NonNull final byte[] encrypted, final int offset, final int length)
+    throws GeneralSecurityException {
+    if (IV_LENGTH != iv.length) throw new GeneralSecurityException("Unsupported IV length: " + iv.length);
+
+    final Cipher ecb = Cipher.getInstance("AES/ECB/NoPadding");
+    ecb.init(Cipher.ENCRYPT_MODE, key);
+
+    final byte[] h = ecb.doFinal(new byte[BLOCK_SIZE]);
+    final byte[] mask = ecb.doFinal(counterBlock(iv, 1));
+    final long hHigh = readLong(h, 0);
+    final long hLow = readLong(h, 8);
+    Arrays.fill(h, (byte) 0);
+
+    final long[] state = new long[2];
+    ghash(state, hHigh, hLow, aad, 0, aad.length);
+    ghash(state, hHigh, hLow, encrypted, offset, length);
+
+    // lengths block: bits of additional data and bits of encrypted data
+    state[0] ^= (long) aad.length * 8;
+    state[1] ^= (long) length * 8;
+    multiply(state, hHigh, hLow);
+
+    for (int i = 0; i < BLOCK_SIZE; i++) {
+      final long word = state[i / 8];
+      mask[i] ^= (byte) (word >>> (56 - 8 * (i % 8)));
+    }
+
+    return mask;
+  }
+
+  /** Absorb data, last incomplete block is padded by zeros. */
+  private static void ghash(@NonNull final long[] state, final long hHigh, final long hLow,
+                            @NonNull final byte[] data, final int offset, final int length) {
+    final byte[] block = new byte[BLOCK_SIZE];
+
+    for (int position = 0; position < length; position += BLOCK_SIZE) {
+      final int count = Math.min(BLOCK_SIZE, length - position);
+      Arrays.fill(block, (byte) 0);
+      System.arraycopy(data, offset + position, block, 0, count);
+
+      state[0] ^= readLong(block, 0);
+      state[1] ^= readLong(block, 8);
+      multiply(state, hHigh, hLow);
+    }
+  }
+
+  /** state = state * H in GF(2^128), branch free. */
+  private static void multiply(@NonNull final long[] state, final long hHigh, final long hLow) {
+    long zHigh = 0;
+    long zLow = 0;
+    long vHigh = hHigh;
+    long vLow = hLow;
+
+    for (int i = 0; i < 128; i++) {
+      final long word = (i < 64) ? state[0] : state[1];
+      final long bit = -((word >>> (63 - (i % 64))) & 1L);
+      zHigh ^= vHigh & bit;
+      zLow ^= vLow & bit;
+
+      final long carry = -(vLow & 1L);
+      vLow = (vLow >>> 1) | (vHigh << 63);
+      vHigh = (vHigh >>> 1) ^ (R & carry);
+    }
+
+    state[0] = zHigh;
+    state[1] = zLow;
+  }
+
+  /** Block of 96 bits IV followed by 32 bits big-endian counter. */
+  @NonNull
+  private static byte[] counterBlock(@NonNull final byte[] iv, final int counter) {
+    final byte[] block = Arrays.copyOf(iv, BLOCK_SIZE);
+    block[12] = (byte) (counter >>> 24);
+    block[13] = (byte) (counter >>> 16);
+    block[14] = (byte) (counter >>> 8);
+    block[15] = (byte) counter;
+
+    return block;
+  }
+
+  private static long readLong(@NonNull final byte[] bytes, final int offset) {
+    long result = 0;
+
+    for (int i = 0; i < 8; i++) {
+      result = (result << 8) | (bytes[offset + i] & 0xFFL);
+    }
+
+    return result;
+  }
+  //endregion
+}
@@ -7,7 +7,13 @@ import com.oblador.keychain.SecurityLevel;
 import com.oblador.keychain.exceptions.CryptoFailedException;
 import com.oblador.keychain.exceptions.KeyStoreAccessException;
 
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
 import java.security.Key;
+import java.util.Arrays;
+
+import javax.crypto.Cipher;
 
 @SuppressWarnings({"unused", "WeakerAccess"})
 public interface CipherStorage {
@@ -59,18 +65,147 @@ public interface CipherStorage {
     }
   }
 
+  /**
+   * Caller owned buffer for plain text secrets in UTF-8. Unlike {@link String} it can be wiped,
+   * so call {@link #wipe()} (or use try-with-resources) as soon as the value is consumed.
+   */
+  final class SecretBytes implements Closeable {
+    private static final byte[] EMPTY = new byte[0];
+
+    private byte[] buffer = EMPTY;
+    private int length;
+
+    public SecretBytes() {
+    }
+
+    /** Helper constructor. Encodes provided value. */
+    public SecretBytes(@NonNull final CharSequence value) {
+      set(value);
+    }
+
+    /** Internal buffer, only first {@link #length()} bytes are meaningful. */
+    @NonNull
+    public byte[] buffer() {
+      return buffer;
+    }
+
+    /** Number of meaningful bytes in buffer. */
+    public int length() {
+      return length;
+    }
+
+    public void setLength(final int length) {
+      if (length < 0 || length > buffer.length)
+        throw new IllegalArgumentException("Length is out of buffer bounds: " + length);
+
+      this.length = length;
+    }
+
+    /** Get buffer with capacity of at least provided size. Old content is wiped on growth. */
+    @NonNull
+    public byte[] ensureCapacity(final int size) {
+      if (buffer.length < size) {
+        wipe();
+        buffer = new byte[Math.max(size, 2 * buffer.length)];
+      }
+
+      return buffer;
+    }
+
+    /** Copy provided bytes into buffer. */
+    public void set(@NonNull final byte[] bytes, final int offset, final int count) {
+      System.arraycopy(bytes, offset, ensureCapacity(count), 0, count);
+      length = count;
+    }
+
+    /** Encode value to UTF-8 without intermediate arrays. */
+    public void set(@NonNull final CharSequence value) {
+      // worst case: 3 bytes per UTF-16 char, surrogate pairs take 4 bytes per 2 chars
+      final int count = value.length();
+      final byte[] out = ensureCapacity(3 * count);
+      int pos = 0;
+
+      for (int i = 0; i < count; i++) {
+        final char c = value.charAt(i);
+
+        if (c < 0x80) {
+          out[pos++] = (byte) c;
+        } else if (c < 0x800) {
+          out[pos++] = (byte) (0xC0 | (c >> 6));
+          out[pos++] = (byte) (0x80 | (c & 0x3F));
+        } else if (Character.isHighSurrogate(c) && i + 1 < count
+          && Character.isLowSurrogate(value.charAt(i + 1))) {
+          final int cp = Character.toCodePoint(c, value.charAt(++i));
+          out[pos++] = (byte) (0xF0 | (cp >> 18));
+          out[pos++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+          out[pos++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+          out[pos++] = (byte) (0x80 | (cp & 0x3F));
+        } else if (Character.isSurrogate(c)) {
+          // malformed input, same replacement as String.getBytes(UTF8) does
+          out[pos++] = (byte) '?';
+        } else {
+          out[pos++] = (byte) (0xE0 | (c >> 12));
+          out[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+          out[pos++] = (byte) (0x80 | (c & 0x3F));
+        }
+      }
+
+      length = pos;
+    }
+
+    /** Decode secret to string. Use only for hand-off to API that requires strings. */
+    @NonNull
+    public String asString() {
+      return new String(buffer, 0, length, CipherStorageBase.UTF8);
+    }
+
+    /** Decode secret to chars array, caller is responsible for wiping it. */
+    @NonNull
+    public char[] toChars() {
+      final CharBuffer decoded = CipherStorageBase.UTF8.decode(ByteBuffer.wrap(buffer, 0, length));
+      final char[] chars = Arrays.copyOfRange(decoded.array(), decoded.position(), decoded.limit());
+
+      Arrays.fill(decoded.array(), '\0');
+
+      return chars;
+    }
+
+    /** Erase secret. Buffer stays allocated for reuse. */
+    public void wipe() {
+      Arrays.fill(buffer, (byte) 0);
+      length = 0;
+    }
+
+    @Override
+    public void close() {
+      wipe();
+    }
+  }
+
   /** Ask access permission for decrypting credentials in provided context. */
   class DecryptionContext extends CipherResult<byte[]> {
     public final Key key;
     public final String keyAlias;
+    /** Cipher initialized by the key, waits for authorization by user. NULL - key is time bound. */
+    @Nullable
+    public final Cipher cipher;
 
     public DecryptionContext(@NonNull final String keyAlias,
                              @NonNull final Key key,
                              @NonNull final byte[] password,
                              @NonNull final byte[] username) {
+      this(keyAlias, key, password, username, null);
+    }
+
+    public DecryptionContext(@NonNull final String keyAlias,
+                             @NonNull final Key key,
+                             @NonNull final byte[] password,
+                             @NonNull final byte[] username,
+                             @Nullable final Cipher cipher) {
       super(username, password);
       this.keyAlias = keyAlias;
       this.key = key;
+      this.cipher = cipher;
     }
   }
 
@@ -122,6 +257,32 @@ public interface CipherStorage {
                            @NonNull final SecurityLevel level)
     throws CryptoFailedException;
 
+  /**
+   * Encrypt credentials provided as UTF-8 bytes. Storage does not keep references on the buffers
+   * and does not wipe them, that is the caller responsibility.
+   */
+  @NonNull
+  EncryptionResult encrypt(@NonNull final String alias,
+                           @NonNull final SecretBytes username,
+                           @NonNull final SecretBytes password,
+                           @NonNull final SecurityLevel level)
+    throws CryptoFailedException;
+
+  /**
+   * Non-interactive decryption of credentials into caller owned buffers, no strings are created.
+   * Storages that require user interaction raise exception in case of locked key.
+   *
+   * @return security level of the key used for decryption.
+   */
+  @NonNull
+  SecurityLevel decrypt(@NonNull final String alias,
+                        @NonNull final byte[] username,
+                        @NonNull final byte[] password,
+                        @NonNull final SecurityLevel level,
+                        @NonNull final SecretBytes outUsername,
+                        @NonNull final SecretBytes outPassword)
+    throws CryptoFailedException;
+
   /** Decrypt the credentials but redirect results of operation to handler. */
   void decrypt(@NonNull final DecryptionResultHandler handler,
                @NonNull final String alias,
@@ -162,5 +323,12 @@ public interface CipherStorage {
 
   /** Get default name for alias/service. */
   String getDefaultAliasServiceName();
+
+  /**
+   * Get key alias that belongs only to the provided service and this storage, so services and
+   * storages never share keys. Storages without per-service keys return service as is.
+   */
+  @NonNull
+  String getNamespacedKeyAlias(@NonNull final String service);
   //endregion
 }
@@ -1,15 +1,19 @@
 package com.oblador.keychain.cipherStorage;
 
+import android.annotation.SuppressLint;
 import android.os.Build;
 import android.security.keystore.KeyGenParameterSpec;
 import android.security.keystore.KeyInfo;
+import android.security.keystore.KeyPermanentlyInvalidatedException;
+import android.security.keystore.UserNotAuthenticatedException;
 import android.text.TextUtils;
-import android.util.Log;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
 
+import com.oblador.keychain.KeychainLog;
+import com.oblador.keychain.Metrics;
 import com.oblador.keychain.SecurityLevel;
 import com.oblador.keychain.exceptions.CryptoFailedException;
 import com.oblador.keychain.exceptions.KeyStoreAccessException;
@@ -22,17 +26,23 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.charset.Charset;
 import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
 import java.security.Key;
 import java.security.KeyStore;
 import java.security.NoSuchAlgorithmException;
 import java.security.ProviderException;
 import java.security.UnrecoverableKeyException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.crypto.Cipher;
-import javax.crypto.CipherInputStream;
-import javax.crypto.CipherOutputStream;
 import javax.crypto.NoSuchPaddingException;
 import javax.crypto.spec.IvParameterSpec;
 
@@ -47,27 +57,45 @@ abstract public class CipherStorageBase implements CipherStorage {
   public static final String KEYSTORE_TYPE = "AndroidKeyStore";
   /** Key used for testing storage capabilities. */
   public static final String TEST_KEY_ALIAS = KEYSTORE_TYPE + "#supportsSecureHardware";
+  /** Separator of storage name and service in namespaced key aliases. */
+  public static final String KEY_ALIAS_SEPARATOR = "#";
+  /** Marker of pre-generated keys, that are not bound to any service by alias. */
+  public static final String SPARE_KEY_MARKER = "spare";
   /** Size of hash calculation buffer. Default: 4Kb. */
   private static final int BUFFER_SIZE = 4 * 1024;
   /** Default size of read/write operation buffer. Default: 16Kb. */
   private static final int BUFFER_READ_WRITE_SIZE = 4 * BUFFER_SIZE;
   /** Default charset encoding. */
   public static final Charset UTF8 = Charset.forName("UTF-8");
+  /** Shared empty array, used for releasing references on reusable buffers. */
+  private static final byte[] EMPTY = new byte[0];
+  /** Reads of the key blob before the key is declared lost. */
+  public static final int KEY_READ_ATTEMPTS = 3;
+  /** Pause before the second read of the key blob, doubled for each next one. */
+  public static final long KEY_READ_BACKOFF_MILLIS = 20;
   //endregion
 
   //region Members
   /** Guard object for {@link #isSupportsSecureHardware} field. */
   protected final Object _sync = new Object();
-  /** Try to resolve it only once and cache result for all future calls. */
-  protected transient AtomicBoolean isSupportsSecureHardware;
+  /** Try to resolve it only once and cache result for all future calls. Published when resolved. */
+  protected transient volatile AtomicBoolean isSupportsSecureHardware;
   /** Guard for {@link #isStrongboxAvailable} field assignment. */
   protected final Object _syncStrongbox = new Object();
   /** Try to resolve support of the strongbox and cache result for future calls. */
-  protected transient AtomicBoolean isStrongboxAvailable;
-  /** Get cached instance of cipher. Get instance operation is slow. */
-  protected transient Cipher cachedCipher;
+  protected transient volatile AtomicBoolean isStrongboxAvailable;
+  /** Get cached instance of cipher. Get instance operation is slow. Shared, use it under own lock. */
+  protected transient volatile Cipher cachedCipher;
   /** Cached instance of the Keystore. */
-  protected transient KeyStore cachedKeyStore;
+  protected transient volatile KeyStore cachedKeyStore;
+  /** Extracted key handles by alias. Each keystore lookup is an IPC call, so we do it only once. */
+  protected final Map<String, KeyHandle> cachedKeys = new ConcurrentHashMap<>();
+  /** Latency metrics of the owner module, own disabled instance by default. */
+  @NonNull
+  protected transient Metrics metrics = new Metrics();
+  /** Receiver of the lost keys. NULL - nobody cleans up entries of the lost keys. */
+  @Nullable
+  protected transient volatile KeyLossListener keyLossListener;
   //endregion
 
   //region Overrides
@@ -84,42 +112,38 @@ abstract public class CipherStorageBase implements CipherStorage {
    */
   @Override
   public final int getCapabilityLevel() {
-    // max: 1000 + 100 + 29 == 1129
-    // min: 0000 + 000 + 19 == 0019
-
-    return
-      (1000 * (isBiometrySupported() ? 1 : 0)) + // 0..1000
-        (100 * (supportsSecureHardware() ? 1 : 0)) + // 0..100
-        (getMinSupportedApiLevel()); // 19..29
+    return getCapabilityLevel(isBiometrySupported(), supportsSecureHardware(), getMinSupportedApiLevel());
   }
 
   /** Try device capabilities by creating temporary key in keystore. */
   @Override
   public boolean supportsSecureHardware() {
-    if (null != isSupportsSecureHardware) return isSupportsSecureHardware.get();
+    AtomicBoolean result = isSupportsSecureHardware;
+    if (null != result) return result.get();
 
     synchronized (_sync) {
       // double check pattern in use
-      if (null != isSupportsSecureHardware) return isSupportsSecureHardware.get();
-
-      isSupportsSecureHardware = new AtomicBoolean(false);
+      result = isSupportsSecureHardware;
+      if (null != result) return result.get();
 
+      boolean newValue = false;
       SelfDestroyKey sdk = null;
 
       // auto-closable supported from api18 only, our minimal is api16
       //noinspection TryFinallyCanBeTryWithResources
       try {
         sdk = new SelfDestroyKey(TEST_KEY_ALIAS);
-        final boolean newValue = validateKeySecurityLevel(SECURE_HARDWARE, sdk.key);
-
-        isSupportsSecureHardware.set(newValue);
+        newValue = validateKeySecurityLevel(SECURE_HARDWARE, sdk.key);
       } catch (Throwable ignored) {
       } finally {
         if (null != sdk) sdk.close();
       }
+
+      // publish only the final value, readers without lock never see the intermediate state
+      isSupportsSecureHardware = result = new AtomicBoolean(newValue);
     }
 
-    return isSupportsSecureHardware.get();
+    return result.get();
   }
 
   /** {@inheritDoc} */
@@ -128,12 +152,58 @@ abstract public class CipherStorageBase implements CipherStorage {
     return getCipherStorageName();
   }
 
+  /** Namespaced alias is composed from storage name and service, e.g. `KeystoreAESCBC#service`. */
+  @NonNull
+  @Override
+  public String getNamespacedKeyAlias(@NonNull final String service) {
+    return getCipherStorageName() + KEY_ALIAS_SEPARATOR +
+      getDefaultAliasIfEmpty(service, getDefaultAliasServiceName());
+  }
+
+  /**
+   * Strings are copied into wipe-able buffers and encrypted by
+   * {@link #encrypt(String, SecretBytes, SecretBytes, SecurityLevel)}, storages implement only it.
+   */
+  @Override
+  @NonNull
+  public EncryptionResult encrypt(@NonNull final String alias,
+                                  @NonNull final String username,
+                                  @NonNull final String password,
+                                  @NonNull final SecurityLevel level)
+    throws CryptoFailedException {
+    try (final SecretBytes user = new SecretBytes(username);
+         final SecretBytes pass = new SecretBytes(password)) {
+      return encrypt(alias, user, pass, level);
+    }
+  }
+
+  /**
+   * Decrypt by {@link #decrypt(String, byte[], byte[], SecurityLevel, SecretBytes, SecretBytes)}
+   * into wipe-able buffers, strings are created only for the result.
+   */
+  @Override
+  @NonNull
+  public DecryptionResult decrypt(@NonNull final String alias,
+                                  @NonNull final byte[] username,
+                                  @NonNull final byte[] password,
+                                  @NonNull final SecurityLevel level)
+    throws CryptoFailedException {
+    try (final SecretBytes user = new SecretBytes();
+         final SecretBytes pass = new SecretBytes()) {
+      final SecurityLevel actual = decrypt(alias, username, password, level, user, pass);
+
+      return new DecryptionResult(user.asString(), pass.asString(), actual);
+    }
+  }
+
   /** Remove key with provided name from security storage. */
   @Override
   public void removeKey(@NonNull final String alias) throws KeyStoreAccessException {
     final String safeAlias = getDefaultAliasIfEmpty(alias, getDefaultAliasServiceName());
     final KeyStore ks = getKeyStoreAndLoad();
 
+    invalidateCachedKey(safeAlias);
+
     try {
       if (ks.containsAlias(safeAlias)) {
         ks.deleteEntry(safeAlias);
@@ -175,15 +245,19 @@ abstract public class CipherStorageBase implements CipherStorage {
   /** Get cipher instance and cache it for any next call. */
   @NonNull
   public Cipher getCachedInstance() throws NoSuchAlgorithmException, NoSuchPaddingException {
-    if (null == cachedCipher) {
+    Cipher cipher = cachedCipher;
+
+    if (null == cipher) {
       synchronized (this) {
-        if (null == cachedCipher) {
-          cachedCipher = Cipher.getInstance(getEncryptionTransformation());
+        cipher = cachedCipher;
+
+        if (null == cipher) {
+          cachedCipher = cipher = Cipher.getInstance(getEncryptionTransformation());
         }
       }
     }
 
-    return cachedCipher;
+    return cipher;
   }
 
   /** Check requirements to the security level. */
@@ -203,6 +277,24 @@ abstract public class CipherStorageBase implements CipherStorage {
                                     @NonNull final SecurityLevel level,
                                     @NonNull final AtomicInteger retries)
     throws GeneralSecurityException {
+    final long startTime = metrics.begin(Metrics.Phase.KEY_EXTRACT);
+
+    try {
+      return extractOrGenerateKey(safeAlias, level, retries);
+    } finally {
+      metrics.end(Metrics.Phase.KEY_EXTRACT, startTime);
+    }
+  }
+
+  /** Cached key handle, existing key or a new one. */
+  @NonNull
+  private Key extractOrGenerateKey(@NonNull final String safeAlias,
+                                   @NonNull final SecurityLevel level,
+                                   @NonNull final AtomicInteger retries)
+    throws GeneralSecurityException {
+    final KeyHandle cached = cachedKeys.get(safeAlias);
+    if (null != cached) return cached.key;
+
     Key key;
 
     do {
@@ -217,10 +309,137 @@ abstract public class CipherStorageBase implements CipherStorage {
       key = extractKey(keyStore, safeAlias, retries);
     } while (null == key);
 
+    cachedKeys.put(safeAlias, new KeyHandle(key));
+
     return key;
   }
 
-  /** Try to extract key by alias from keystore, in case of 'known android bug' reduce retry counter. */
+  /**
+   * Generate a key ahead of time, without binding it to any service.
+   *
+   * @return alias of the generated key.
+   */
+  @NonNull
+  public String generateSpareKey() throws GeneralSecurityException {
+    final String alias = getSpareKeyAliasPrefix() + UUID.randomUUID().toString();
+
+    generateKeyAndStoreUnderAlias(alias, SecurityLevel.ANY);
+
+    return alias;
+  }
+
+  /** Get aliases of all spare keys of this storage available in keystore, assigned to services or not. */
+  @NonNull
+  public List<String> getSpareKeyAliases() throws GeneralSecurityException {
+    final String prefix = getSpareKeyAliasPrefix();
+    final List<String> result = new ArrayList<>();
+    final Enumeration<String> aliases = getKeyStoreAndLoad().aliases();
+
+    while (aliases.hasMoreElements()) {
+      final String alias = aliases.nextElement();
+
+      if (alias.startsWith(prefix)) {
+        result.add(alias);
+      }
+    }
+
+    return result;
+  }
+
+  /** True - key exists and satisfies the level. Extracted key handle stays cached for the following operations. */
+  public boolean isKeySatisfyingLevel(@NonNull final String alias, @NonNull final SecurityLevel level)
+    throws GeneralSecurityException {
+    final KeyStore keyStore = getKeyStoreAndLoad();
+
+    if (!keyStore.containsAlias(alias)) return false;
+
+    // no retries, broken spare key is simply dropped
+    final Key key = extractKey(keyStore, alias, new AtomicInteger(0));
+    cachedKeys.put(alias, new KeyHandle(key));
+
+    return getSecurityLevel(alias, key).satisfiesSafetyThreshold(level);
+  }
+
+  /** Common prefix of spare key aliases, e.g. `KeystoreAESCBC#spare#`. */
+  @NonNull
+  protected String getSpareKeyAliasPrefix() {
+    return getCipherStorageName() + KEY_ALIAS_SEPARATOR + SPARE_KEY_MARKER + KEY_ALIAS_SEPARATOR;
+  }
+
+  /** Get security level of the key extracted by {@link #extractGeneratedKey}, resolved only once per key. */
+  @NonNull
+  protected SecurityLevel getSecurityLevel(@NonNull final String safeAlias, @NonNull final Key key)
+    throws GeneralSecurityException {
+    final KeyHandle cached = cachedKeys.get(safeAlias);
+
+    if (null == cached || cached.key != key) {
+      return getSecurityLevel(key);
+    }
+
+    if (null == cached.level) {
+      cached.level = getSecurityLevel(key);
+    }
+
+    return cached.level;
+  }
+
+  /**
+   * Read key blob from keystore. Keystore daemon fails reads under load or right after the device
+   * unlock, so failed read is repeated with exponential backoff a few times.
+   *
+   * @throws UnrecoverableKeyException key failed all reads, it is lost.
+   */
+  @Nullable
+  private Key readKey(@NonNull final KeyStore keyStore, @NonNull final String safeAlias)
+    throws GeneralSecurityException {
+    long backoff = KEY_READ_BACKOFF_MILLIS;
+
+    for (int attempt = 1; ; attempt++) {
+      try {
+        final Key key = keyStore.getKey(safeAlias, null);
+
+        if (attempt > 1) {
+          metrics.count(Metrics.Counter.KEY_RECOVERED, 1);
+        }
+
+        return key;
+      } catch (final UnrecoverableKeyException ex) {
+        if (attempt >= KEY_READ_ATTEMPTS) throw ex;
+
+        KeychainLog.d(LOG_TAG, "Key read failed, attempt {} of {}", attempt, KEY_READ_ATTEMPTS);
+        metrics.count(Metrics.Counter.KEY_READ_RETRY, 1);
+
+        try {
+          Thread.sleep(backoff);
+        } catch (InterruptedException interrupted) {
+          Thread.currentThread().interrupt();
+
+          // not a proof of the key loss, key must be kept
+          throw new KeyStoreAccessException("Interrupted while waiting for keystore", ex);
+        }
+
+        backoff *= 2;
+      }
+    }
+  }
+
+  /** Forget cached key handle, next operation will extract it from keystore again. */
+  protected void invalidateCachedKey(@NonNull final String safeAlias) {
+    cachedKeys.remove(safeAlias);
+  }
+
+  /** Drop cached key handle if failure indicates that key is not usable anymore. */
+  protected void invalidateKeyOnFailure(@NonNull final String safeAlias, @NonNull final Throwable fail) {
+    if (isKeyInvalidated(fail)) {
+      invalidateCachedKey(safeAlias);
+    }
+  }
+
+  /**
+   * Try to extract key by alias from keystore, in case of 'known android bug' reduce retry counter.
+   * Key that fails all reads is lost: it is deleted (if retry counter allows) and reported to
+   * {@link KeyLossListener}, so entries encrypted by it are removed at once.
+   */
   @Nullable
   protected Key extractKey(@NonNull final KeyStore keyStore,
                            @NonNull final String safeAlias,
@@ -231,11 +450,20 @@ abstract public class CipherStorageBase implements CipherStorage {
     // Fix for android.security.KeyStoreException: Invalid key blob
     // more info: https://stackoverflow.com/questions/36488219/android-security-keystoreexception-invalid-key-blob/36846085#36846085
     try {
-      key = keyStore.getKey(safeAlias, null);
+      key = readKey(keyStore, safeAlias);
     } catch (final UnrecoverableKeyException ex) {
-      // try one more time
+      invalidateCachedKey(safeAlias);
+
+      // try one more time with a new key
       if (retry.getAndDecrement() > 0) {
+        KeychainLog.w(LOG_TAG, ex, "Key is lost and will be regenerated: {s}", safeAlias);
         keyStore.deleteEntry(safeAlias);
+        metrics.count(Metrics.Counter.KEY_LOST, 1);
+
+        final KeyLossListener listener = keyLossListener;
+        if (null != listener) {
+          listener.onKeyLost(this, safeAlias);
+        }
 
         return null;
       }
@@ -280,12 +508,16 @@ abstract public class CipherStorageBase implements CipherStorage {
   /** Load key store. */
   @NonNull
   public KeyStore getKeyStoreAndLoad() throws KeyStoreAccessException {
-    if (null == cachedKeyStore) {
+    KeyStore keyStore = cachedKeyStore;
+
+    if (null == keyStore) {
       synchronized (this) {
-        if (null == cachedKeyStore) {
-          // initialize instance
+        keyStore = cachedKeyStore;
+
+        if (null == keyStore) {
+          // initialize instance, publish it only when loaded
           try {
-            final KeyStore keyStore = KeyStore.getInstance(KEYSTORE_TYPE);
+            keyStore = KeyStore.getInstance(KEYSTORE_TYPE);
             keyStore.load(null);
 
             cachedKeyStore = keyStore;
@@ -296,7 +528,7 @@ abstract public class CipherStorageBase implements CipherStorage {
       }
     }
 
-    return cachedKeyStore;
+    return keyStore;
   }
 
   /** Default encryption with cipher without initialization vector. */
@@ -315,32 +547,35 @@ abstract public class CipherStorageBase implements CipherStorage {
     return decryptBytes(key, bytes, Defaults.decrypt);
   }
 
-  /** Encrypt provided string value. */
+  /** Default encryption of secret bytes with cipher without initialization vector. */
   @NonNull
-  protected byte[] encryptString(@NonNull final Key key, @NonNull final String value,
-                                 @Nullable final EncryptStringHandler handler)
+  public byte[] encryptBytes(@NonNull final Key key, @NonNull final SecretBytes value)
     throws IOException, GeneralSecurityException {
 
-    final Cipher cipher = getCachedInstance();
+    return encryptBytes(key, value, Defaults.encrypt);
+  }
 
-    // encrypt the value using a CipherOutputStream
-    try (final ByteArrayOutputStream output = new ByteArrayOutputStream()) {
+  /** Default decryption into secret bytes with cipher without initialization vector. */
+  public void decryptBytes(@NonNull final Key key, @NonNull final byte[] bytes,
+                           @NonNull final SecretBytes output)
+    throws IOException, GeneralSecurityException {
 
-      // write initialization vector to the beginning of the stream
-      if (null != handler) {
-        handler.initialize(cipher, key, output);
-        output.flush();
-      }
+    decryptBytes(key, bytes, Defaults.decrypt, output);
+  }
 
-      try (final CipherOutputStream encrypt = new CipherOutputStream(output, cipher)) {
-        encrypt.write(value.getBytes(UTF8));
-      }
+  /** Encrypt provided string value. */
+  @NonNull
+  protected byte[] encryptString(@NonNull final Key key, @NonNull final String value,
+                                 @Nullable final EncryptStringHandler handler)
+    throws IOException, GeneralSecurityException {
+    final SecretBytes plain = Buffers.get().plain;
 
-      return output.toByteArray();
-    } catch (Throwable fail) {
-      Log.e(LOG_TAG, fail.getMessage(), fail);
+    try {
+      plain.set(value);
 
-      throw fail;
+      return encryptBytes(key, plain, handler);
+    } finally {
+      plain.wipe();
     }
   }
 
@@ -349,26 +584,80 @@ abstract public class CipherStorageBase implements CipherStorage {
   protected String decryptBytes(@NonNull final Key key, @NonNull final byte[] bytes,
                                 @Nullable final DecryptBytesHandler handler)
     throws GeneralSecurityException, IOException {
+    final SecretBytes plain = Buffers.get().plain;
+
+    try {
+      decryptBytes(key, bytes, handler, plain);
+
+      return plain.asString();
+    } finally {
+      plain.wipe();
+    }
+  }
+
+  /** Encrypt provided secret bytes. */
+  @NonNull
+  protected byte[] encryptBytes(@NonNull final Key key, @NonNull final SecretBytes value,
+                                @Nullable final EncryptStringHandler handler)
+    throws IOException, GeneralSecurityException {
+
     final Cipher cipher = getCachedInstance();
+    final Buffers.Output prefix = Buffers.get().prefix;
 
-    // decrypt the bytes using a CipherInputStream
-    try (ByteArrayInputStream in = new ByteArrayInputStream(bytes);
-         ByteArrayOutputStream output = new ByteArrayOutputStream()) {
+    // cipher instance is shared by all threads, init and doFinal must not interleave
+    synchronized (cipher) {
+      try {
+        // write initialization vector to the beginning of the output
+        prefix.reset();
+        if (null != handler) {
+          handler.initialize(cipher, key, prefix);
+        }
 
-      // read the initialization vector from the beginning of the stream
-      if (null != handler) {
-        handler.initialize(cipher, key, in);
-      }
+        final int length = value.length();
+        final int offset = prefix.size();
+        final byte[] output = new byte[offset + cipher.getOutputSize(length)];
+
+        System.arraycopy(prefix.buffer(), 0, output, 0, offset);
+        final int written = cipher.doFinal(value.buffer(), 0, length, output, offset);
 
-      try (CipherInputStream decrypt = new CipherInputStream(in, cipher)) {
-        copy(decrypt, output);
+        // getOutputSize() is allowed to over-estimate, trim the result in that case
+        return (offset + written == output.length) ? output : Arrays.copyOf(output, offset + written);
+      } catch (Throwable fail) {
+        KeychainLog.d(LOG_TAG, fail, "Encryption failed.");
+
+        throw fail;
       }
+    }
+  }
+
+  /** Decrypt provided bytes into secret bytes. */
+  protected void decryptBytes(@NonNull final Key key, @NonNull final byte[] bytes,
+                              @Nullable final DecryptBytesHandler handler,
+                              @NonNull final SecretBytes output)
+    throws GeneralSecurityException, IOException {
+    final Cipher cipher = getCachedInstance();
+    final Buffers.Input input = Buffers.get().input.reset(bytes);
+
+    // cipher instance is shared by all threads, init and doFinal must not interleave
+    synchronized (cipher) {
+      try {
+        // read the initialization vector from the beginning of the input
+        if (null != handler) {
+          handler.initialize(cipher, key, input);
+        }
+
+        final int offset = input.position();
+        final int length = bytes.length - offset;
+        final byte[] buffer = output.ensureCapacity(cipher.getOutputSize(length));
 
-      return new String(output.toByteArray(), UTF8);
-    } catch (Throwable fail) {
-      Log.w(LOG_TAG, fail.getMessage(), fail);
+        output.setLength(cipher.doFinal(bytes, offset, length, buffer, 0));
+      } catch (Throwable fail) {
+        KeychainLog.d(LOG_TAG, fail, "Decryption failed.");
 
-      throw fail;
+        throw fail;
+      } finally {
+        input.reset(EMPTY);
+      }
     }
   }
 
@@ -380,6 +669,9 @@ abstract public class CipherStorageBase implements CipherStorage {
     // Firstly, try to generate the key as safe as possible (strongbox).
     // see https://developer.android.com/training/articles/keystore#HardwareSecurityModule
 
+    // new key replaces the old one, cached handle is not valid anymore
+    invalidateCachedKey(alias);
+
     Key secretKey = null;
 
     // multi-threaded usage is possible
@@ -392,7 +684,7 @@ abstract public class CipherStorageBase implements CipherStorage {
 
           isStrongboxAvailable.set(true);
         } catch (GeneralSecurityException | ProviderException ex) {
-          Log.w(LOG_TAG, "StrongBox security storage is not available.", ex);
+          KeychainLog.w(LOG_TAG, ex, "StrongBox security storage is not available.");
         }
       }
     }
@@ -403,7 +695,7 @@ abstract public class CipherStorageBase implements CipherStorage {
       try {
         secretKey = tryGenerateRegularSecurityKey(alias);
       } catch (GeneralSecurityException fail) {
-        Log.e(LOG_TAG, "Regular security storage is not available.", fail);
+        KeychainLog.e(LOG_TAG, fail, "Regular security storage is not available.");
         throw fail;
       }
     }
@@ -444,6 +736,20 @@ abstract public class CipherStorageBase implements CipherStorage {
     return generateKey(specification);
   }
 
+
+  /** Report key extraction latency to provided metrics. */
+  @NonNull
+  public CipherStorageBase setMetrics(@NonNull final Metrics metrics) {
+    this.metrics = metrics;
+    return this;
+  }
+
+  /** Report keys that were lost and regenerated to provided listener. */
+  @NonNull
+  public CipherStorageBase setKeyLossListener(@Nullable final KeyLossListener listener) {
+    this.keyLossListener = listener;
+    return this;
+  }
   //endregion
 
   //region Testing
@@ -459,12 +765,26 @@ abstract public class CipherStorageBase implements CipherStorage {
   @VisibleForTesting
   public CipherStorageBase setKeyStore(final KeyStore keystore) {
     cachedKeyStore = keystore;
+    cachedKeys.clear();
     return this;
   }
   //endregion
 
   //region Static methods
 
+  /** Capability level formula: `1000 * isBiometrySupported + 100 * isSecureHardware + minSupportedApiLevel`. */
+  public static int getCapabilityLevel(final boolean isBiometrySupported,
+                                       final boolean isSecureHardware,
+                                       final int minSupportedApiLevel) {
+    // max: 1000 + 100 + 29 == 1129
+    // min: 0000 + 000 + 16 == 0016
+
+    return
+      (1000 * (isBiometrySupported ? 1 : 0)) + // 0..1000
+        (100 * (isSecureHardware ? 1 : 0)) + // 0..100
+        (minSupportedApiLevel); // 16..29
+  }
+
   /** Convert provided service name to safe not-null/not-empty value. */
   @NonNull
   public static String getDefaultAliasIfEmpty(@Nullable final String service, @NonNull final String fallback) {
@@ -472,6 +792,21 @@ abstract public class CipherStorageBase implements CipherStorage {
     return TextUtils.isEmpty(service) ? fallback : service;
   }
 
+  /** True - failure means that key is lost or invalidated and cannot be used anymore. */
+  @SuppressLint("NewApi")
+  public static boolean isKeyInvalidated(@Nullable final Throwable fail) {
+    if (fail instanceof UnrecoverableKeyException) return true;
+
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+      // key is fine, it just waits for user authentication
+      if (fail instanceof UserNotAuthenticatedException) return false;
+      if (fail instanceof KeyPermanentlyInvalidatedException) return true;
+    }
+
+    // key deleted or replaced outside of this storage instance
+    return fail instanceof InvalidKeyException;
+  }
+
   /**
    * Copy input stream to output.
    *
@@ -547,6 +882,12 @@ abstract public class CipherStorageBase implements CipherStorage {
     }
   }
 
+  /** Receiver of the keys that keystore cannot read anymore. */
+  public interface KeyLossListener {
+    /** Key was deleted, all data encrypted by it is lost. Called on the thread of the failed operation. */
+    void onKeyLost(@NonNull final CipherStorage storage, @NonNull final String safeAlias);
+  }
+
   /** Handler for storing cipher configuration in output stream. */
   public interface EncryptStringHandler {
     void initialize(@NonNull final Cipher cipher, @NonNull final Key key, @NonNull final OutputStream output)
@@ -559,6 +900,75 @@ abstract public class CipherStorageBase implements CipherStorage {
       throws GeneralSecurityException, IOException;
   }
 
+  /**
+   * Thread confined buffers for encrypt/decrypt operations. Credentials are small, so keeping
+   * per-thread arrays removes stream and copy buffer allocations from every call.
+   */
+  /* package */ static final class Buffers {
+    private static final ThreadLocal<Buffers> local = new ThreadLocal<Buffers>() {
+      @Override
+      protected Buffers initialValue() {
+        return new Buffers();
+      }
+    };
+
+    /** Plain text bytes for string based API, wiped after each operation. */
+    /* package */ final SecretBytes plain = new SecretBytes();
+    /** Prefix of the encryption output, usually initialization vector. */
+    /* package */ final Output prefix = new Output();
+    /** Reusable wrapper of the encrypted bytes. */
+    /* package */ final Input input = new Input();
+
+    /** Get instance bound to the current thread. */
+    @NonNull
+    /* package */ static Buffers get() {
+      return local.get();
+    }
+
+    /** Output stream with access to internal buffer. */
+    /* package */ static final class Output extends ByteArrayOutputStream {
+      /* package */ Output() {
+        super(IV.IV_LENGTH);
+      }
+
+      @NonNull
+      /* package */ byte[] buffer() {
+        return buf;
+      }
+    }
+
+    /** Input stream that can be re-pointed to another array without allocation. */
+    /* package */ static final class Input extends ByteArrayInputStream {
+      /* package */ Input() {
+        super(EMPTY);
+      }
+
+      @NonNull
+      /* package */ Input reset(@NonNull final byte[] bytes) {
+        buf = bytes;
+        pos = 0;
+        mark = 0;
+        count = bytes.length;
+        return this;
+      }
+
+      /* package */ int position() {
+        return pos;
+      }
+    }
+  }
+
+  /** Cached key handle with lazily resolved security level. */
+  protected static final class KeyHandle {
+    public final Key key;
+    /** Resolved on first demand, getting key info is an IPC call too. */
+    public volatile SecurityLevel level;
+
+    public KeyHandle(@NonNull final Key key) {
+      this.key = key;
+    }
+  }
+
   /** Auto remove keystore key. */
   public class SelfDestroyKey implements Closeable {
     public final String name;
@@ -578,7 +988,7 @@ abstract public class CipherStorageBase implements CipherStorage {
       try {
         removeKey(name);
       } catch (KeyStoreAccessException ex) {
-        Log.w(LOG_TAG, "AutoClose remove key failed. Error: " + ex.getMessage(), ex);
+        KeychainLog.w(LOG_TAG, ex, "AutoClose remove key failed.");
       }
     }
   }
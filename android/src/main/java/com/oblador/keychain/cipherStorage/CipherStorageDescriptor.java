@@ -0,0 +1,76 @@
+package com.oblador.keychain.cipherStorage;
+
+import androidx.annotation.NonNull;
+
+import com.oblador.keychain.KeychainModule.KnownCiphers;
+
+/**
+ * Lightweight description of the cipher storage. Allows to select the best storage without its
+ * instantiation, real storage is created only on first {@link #get()} call.
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public final class CipherStorageDescriptor {
+  /** Creates instance of the described storage. */
+  public interface Factory {
+    @NonNull
+    CipherStorage create();
+  }
+
+  //region Members
+  /** Storage name, {@link CipherStorage#getCipherStorageName()}. */
+  @KnownCiphers
+  @NonNull
+  public final String name;
+  /** {@link CipherStorage#getMinSupportedApiLevel()}. */
+  public final int minSupportedApiLevel;
+  /** {@link CipherStorage#isBiometrySupported()}. */
+  public final boolean isBiometrySupported;
+  /** True - storage keeps keys in keystore, that is potentially backed by secure hardware. */
+  public final boolean isKeystoreBacked;
+  /** Factory of the storage instance. */
+  @NonNull
+  private final Factory factory;
+  /** Storage instance, created on first use. */
+  private volatile CipherStorage instance;
+  //endregion
+
+  public CipherStorageDescriptor(@KnownCiphers @NonNull final String name,
+                                 final int minSupportedApiLevel,
+                                 final boolean isBiometrySupported,
+                                 final boolean isKeystoreBacked,
+                                 @NonNull final Factory factory) {
+    this.name = name;
+    this.minSupportedApiLevel = minSupportedApiLevel;
+    this.isBiometrySupported = isBiometrySupported;
+    this.isKeystoreBacked = isKeystoreBacked;
+    this.factory = factory;
+  }
+
+  /**
+   * Capability level in the same scale as {@link CipherStorage#getCapabilityLevel()}. Secure
+   * hardware is assumed for keystore backed storages, that keeps storages order the same without
+   * probing the keystore.
+   */
+  public int getCapabilityLevel() {
+    return CipherStorageBase.getCapabilityLevel(isBiometrySupported, isKeystoreBacked, minSupportedApiLevel);
+  }
+
+  /** Get storage instance, create it on first call. */
+  @NonNull
+  public CipherStorage get() {
+    if (null == instance) {
+      synchronized (this) {
+        if (null == instance) {
+          instance = factory.create();
+        }
+      }
+    }
+
+    return instance;
+  }
+
+  /** True - storage instance is already created. */
+  public boolean isCreated() {
+    return null != instance;
+  }
+}
@@ -96,8 +96,8 @@ public class CipherStorageKeystoreAesCbc extends CipherStorageBase {
   @Override
   @NonNull
   public EncryptionResult encrypt(@NonNull final String alias,
-                                  @NonNull final String username,
-                                  @NonNull final String password,
+                                  @NonNull final SecretBytes username,
+                                  @NonNull final SecretBytes password,
                                   @NonNull final SecurityLevel level)
     throws CryptoFailedException {
 
@@ -110,23 +110,25 @@ public class CipherStorageKeystoreAesCbc extends CipherStorageBase {
       final Key key = extractGeneratedKey(safeAlias, level, retries);
 
       return new EncryptionResult(
-        encryptString(key, username),
-        encryptString(key, password),
+        encryptBytes(key, username),
+        encryptBytes(key, password),
         this);
     } catch (GeneralSecurityException e) {
-      throw new CryptoFailedException("Could not encrypt data with alias: " + alias, e);
+      invalidateKeyOnFailure(safeAlias, e);
+      throw new CryptoFailedException("Could not encrypt data", e);
     } catch (Throwable fail) {
-      throw new CryptoFailedException("Unknown error with alias: " + alias +
-        ", error: " + fail.getMessage(), fail);
+      throw new CryptoFailedException("Unknown error: " + fail.getMessage(), fail);
     }
   }
 
   @Override
   @NonNull
-  public DecryptionResult decrypt(@NonNull final String alias,
-                                  @NonNull final byte[] username,
-                                  @NonNull final byte[] password,
-                                  @NonNull final SecurityLevel level)
+  public SecurityLevel decrypt(@NonNull final String alias,
+                               @NonNull final byte[] username,
+                               @NonNull final byte[] password,
+                               @NonNull final SecurityLevel level,
+                               @NonNull final SecretBytes outUsername,
+                               @NonNull final SecretBytes outPassword)
     throws CryptoFailedException {
 
     throwIfInsufficientLevel(level);
@@ -137,15 +139,15 @@ public class CipherStorageKeystoreAesCbc extends CipherStorageBase {
     try {
       final Key key = extractGeneratedKey(safeAlias, level, retries);
 
-      return new DecryptionResult(
-        decryptBytes(key, username),
-        decryptBytes(key, password),
-        getSecurityLevel(key));
+      decryptBytes(key, username, outUsername);
+      decryptBytes(key, password, outPassword);
+
+      return getSecurityLevel(safeAlias, key);
     } catch (GeneralSecurityException e) {
-      throw new CryptoFailedException("Could not decrypt data with alias: " + alias, e);
+      invalidateKeyOnFailure(safeAlias, e);
+      throw new CryptoFailedException("Could not decrypt data", e);
     } catch (Throwable fail) {
-      throw new CryptoFailedException("Unknown error with alias: " + alias +
-        ", error: " + fail.getMessage(), fail);
+      throw new CryptoFailedException("Unknown error: " + fail.getMessage(), fail);
     }
   }
 
@@ -232,5 +234,20 @@ public class CipherStorageKeystoreAesCbc extends CipherStorageBase {
     throws GeneralSecurityException, IOException {
     return decryptBytes(key, bytes, IV.decrypt);
   }
+
+  @NonNull
+  @Override
+  public byte[] encryptBytes(@NonNull final Key key, @NonNull final SecretBytes value)
+    throws GeneralSecurityException, IOException {
+
+    return encryptBytes(key, value, IV.encrypt);
+  }
+
+  @Override
+  public void decryptBytes(@NonNull final Key key, @NonNull final byte[] bytes,
+                           @NonNull final SecretBytes output)
+    throws GeneralSecurityException, IOException {
+    decryptBytes(key, bytes, IV.decrypt, output);
+  }
   //endregion
 }
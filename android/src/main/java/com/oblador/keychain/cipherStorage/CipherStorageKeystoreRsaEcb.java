@@ -6,12 +6,12 @@ import android.security.keystore.KeyGenParameterSpec;
 import android.security.keystore.KeyInfo;
 import android.security.keystore.KeyProperties;
 import android.security.keystore.UserNotAuthenticatedException;
-import android.util.Log;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.annotation.RequiresApi;
 
+import com.oblador.keychain.KeychainLog;
 import com.oblador.keychain.KeychainModule;
 import com.oblador.keychain.SecurityLevel;
 import com.oblador.keychain.exceptions.CryptoFailedException;
@@ -27,12 +27,19 @@ import java.security.KeyStore;
 import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
 import java.security.PublicKey;
+import java.security.SecureRandom;
 import java.security.cert.Certificate;
 import java.security.spec.InvalidKeySpecException;
 import java.security.spec.X509EncodedKeySpec;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import javax.crypto.Cipher;
 import javax.crypto.NoSuchPaddingException;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
 
 /** Fingerprint biometry protected storage. */
 @RequiresApi(api = Build.VERSION_CODES.M)
@@ -50,14 +57,29 @@ public class CipherStorageKeystoreRsaEcb extends CipherStorageBase {
     ALGORITHM_RSA + "/" + BLOCK_MODE_ECB + "/" + PADDING_PKCS1;
   /** Selected encryption key size. */
   public static final int ENCRYPTION_KEY_SIZE = 3072;
+  /** Validity of the user authentication for new keys: zero - authentication for every use. */
+  public static final int DEFAULT_AUTH_VALIDITY = 0;
+  /** Validity of the user authentication for keys created without validity marker, in seconds. */
+  public static final int LEGACY_AUTH_VALIDITY = 1;
+  /** Key alias marker of the authentication validity, e.g. {@code KeystoreRSAECB#service#auth30}. */
+  public static final String AUTH_VALIDITY_MARKER = "auth";
+  /** Validity marker is trusted only inside own namespace, legacy keys are named by services. */
+  private static final String MARKED_ALIAS_PREFIX = KeychainModule.KnownCiphers.RSA + KEY_ALIAS_SEPARATOR;
+  //endregion
+
+  //region Members
+  /** Public keys by alias, extraction requires certificate lookup in keystore. */
+  private final Map<String, PublicKey> cachedPublicKeys = new ConcurrentHashMap<>();
+  /** Source of data keys and initialization vectors for per-use keys. */
+  private final SecureRandom random = new SecureRandom();
   //endregion
 
   //region Overrides
   @Override
   @NonNull
   public EncryptionResult encrypt(@NonNull final String alias,
-                                  @NonNull final String username,
-                                  @NonNull final String password,
+                                  @NonNull final SecretBytes username,
+                                  @NonNull final SecretBytes password,
                                   @NonNull final SecurityLevel level)
     throws CryptoFailedException {
 
@@ -66,14 +88,21 @@ public class CipherStorageKeystoreRsaEcb extends CipherStorageBase {
     final String safeAlias = getDefaultAliasIfEmpty(alias, getDefaultAliasServiceName());
 
     try {
-      return innerEncryptedCredentials(safeAlias, password, username, level);
+      final PublicKey key = extractPublicKey(safeAlias, level);
+
+      if (isPerUseKey(safeAlias)) {
+        return encryptSealed(key, username, password);
+      }
 
-      // KeyStoreException | KeyStoreAccessException  | NoSuchAlgorithmException | InvalidKeySpecException |
-      //    IOException | NoSuchPaddingException | InvalidKeyException e
+      return new EncryptionResult(
+        encryptBytes(key, username),
+        encryptBytes(key, password),
+        this);
     } catch (NoSuchAlgorithmException | InvalidKeySpecException | NoSuchPaddingException | InvalidKeyException e) {
-      throw new CryptoFailedException("Could not encrypt data for service " + alias, e);
+      invalidateKeyOnFailure(safeAlias, e);
+      throw new CryptoFailedException("Could not encrypt data", e);
     } catch (KeyStoreException | KeyStoreAccessException e) {
-      throw new CryptoFailedException("Could not access Keystore for service " + alias, e);
+      throw new CryptoFailedException("Could not access Keystore", e);
     } catch (IOException io) {
       throw new CryptoFailedException("I/O error: " + io.getMessage(), io);
     } catch (final Throwable ex) {
@@ -81,6 +110,44 @@ public class CipherStorageKeystoreRsaEcb extends CipherStorageBase {
     }
   }
 
+  /** Decryption into buffers is possible only for already unlocked key, no user interaction. */
+  @NonNull
+  @Override
+  @SuppressLint("NewApi")
+  public SecurityLevel decrypt(@NonNull final String alias,
+                               @NonNull final byte[] username,
+                               @NonNull final byte[] password,
+                               @NonNull final SecurityLevel level,
+                               @NonNull final SecretBytes outUsername,
+                               @NonNull final SecretBytes outPassword)
+    throws CryptoFailedException {
+
+    throwIfInsufficientLevel(level);
+
+    final String safeAlias = getDefaultAliasIfEmpty(alias, getDefaultAliasServiceName());
+    final AtomicInteger retries = new AtomicInteger(1);
+
+    if (isPerUseKey(safeAlias)) {
+      throw new CryptoFailedException("Non interactive decryption mode.");
+    }
+
+    try {
+      final Key key = extractGeneratedKey(safeAlias, level, retries);
+
+      decryptBytes(key, username, outUsername);
+      decryptBytes(key, password, outPassword);
+
+      return SecurityLevel.ANY;
+    } catch (final UserNotAuthenticatedException ex) {
+      throw new CryptoFailedException("Non interactive decryption mode.", ex);
+    } catch (GeneralSecurityException e) {
+      invalidateKeyOnFailure(safeAlias, e);
+      throw new CryptoFailedException("Could not decrypt data", e);
+    } catch (final Throwable fail) {
+      throw new CryptoFailedException("Unknown error: " + fail.getMessage(), fail);
+    }
+  }
+
   @NonNull
   @Override
   public DecryptionResult decrypt(@NonNull String alias,
@@ -118,18 +185,37 @@ public class CipherStorageKeystoreRsaEcb extends CipherStorageBase {
 
     Key key = null;
 
+    if (isPerUseKey(safeAlias)) {
+      try {
+        key = extractGeneratedKey(safeAlias, level, retries);
+
+        // dedicated instance, it is handed over to the biometric prompt and authorized there
+        final Cipher cipher = Cipher.getInstance(getEncryptionTransformation());
+        cipher.init(Cipher.DECRYPT_MODE, key);
+
+        handler.askAccessPermissions(new DecryptionContext(safeAlias, key, password, username, cipher));
+      } catch (final Throwable fail) {
+        invalidateKeyOnFailure(safeAlias, fail);
+
+        handler.onDecrypt(null, fail);
+      }
+
+      return;
+    }
+
     try {
       // key is always NOT NULL otherwise GeneralSecurityException raised
       key = extractGeneratedKey(safeAlias, level, retries);
 
-      final DecryptionResult results = new DecryptionResult(
-        decryptBytes(key, username),
-        decryptBytes(key, password)
-      );
+      try (final SecretBytes user = new SecretBytes();
+           final SecretBytes pass = new SecretBytes()) {
+        decryptBytes(key, username, user);
+        decryptBytes(key, password, pass);
 
-      handler.onDecrypt(results, null);
+        handler.onDecrypt(new DecryptionResult(user.asString(), pass.asString()), null);
+      }
     } catch (final UserNotAuthenticatedException ex) {
-      Log.d(LOG_TAG, "Unlock of keystore is needed. Error: " + ex.getMessage(), ex);
+      KeychainLog.d(LOG_TAG, ex, "Unlock of keystore is needed.");
 
       // expected that KEY instance is extracted and we caught exception on decryptBytes operation
       @SuppressWarnings("ConstantConditions") final DecryptionContext context =
@@ -137,11 +223,58 @@ public class CipherStorageKeystoreRsaEcb extends CipherStorageBase {
 
       handler.askAccessPermissions(context);
     } catch (final Throwable fail) {
+      invalidateKeyOnFailure(safeAlias, fail);
+
       // any other exception treated as a failure
       handler.onDecrypt(null, fail);
     }
   }
 
+  /**
+   * Decrypt entry of the per-use key by cipher authorized by user, see
+   * {@link DecryptionContext#cipher}. Only one RSA operation is done: unwrap of the data key.
+   */
+  @NonNull
+  public DecryptionResult decrypt(@NonNull final Cipher authorized,
+                                  @NonNull final DecryptionContext context)
+    throws CryptoFailedException {
+    final byte[] wrapped = context.username;
+    final byte[] sealed = context.password;
+
+    try (final SecretBytes dataKey = new SecretBytes();
+         final SecretBytes plain = new SecretBytes()) {
+      final byte[] keyBuffer = dataKey.ensureCapacity(authorized.getOutputSize(wrapped.length));
+      dataKey.setLength(authorized.doFinal(wrapped, 0, wrapped.length, keyBuffer, 0));
+
+      if (CipherStorageSoftwareAesGcm.KEY_LENGTH != dataKey.length()) {
+        throw new CryptoFailedException("Unexpected data key length: " + dataKey.length());
+      }
+
+      final int ivLength = CipherStorageSoftwareAesGcm.IV_LENGTH;
+      final Cipher cipher = Cipher.getInstance(CipherStorageSoftwareAesGcm.ENCRYPTION_TRANSFORMATION);
+      cipher.init(Cipher.DECRYPT_MODE,
+        new SecretKeySpec(keyBuffer, 0, dataKey.length(), CipherStorageSoftwareAesGcm.ALGORITHM_AES),
+        new GCMParameterSpec(CipherStorageSoftwareAesGcm.TAG_LENGTH * 8, sealed, 0, ivLength));
+
+      final byte[] buffer = plain.ensureCapacity(cipher.getOutputSize(sealed.length - ivLength));
+      plain.setLength(cipher.doFinal(sealed, ivLength, sealed.length - ivLength, buffer, 0));
+
+      // [username length: 2 bytes][username][password]
+      final int usernameLength = ((buffer[0] & 0xFF) << 8) | (buffer[1] & 0xFF);
+      if (2 + usernameLength > plain.length()) {
+        throw new CryptoFailedException("Malformed credentials.");
+      }
+
+      return new DecryptionResult(
+        new String(buffer, 2, usernameLength, UTF8),
+        new String(buffer, 2 + usernameLength, plain.length() - 2 - usernameLength, UTF8));
+    } catch (CryptoFailedException fail) {
+      throw fail;
+    } catch (Throwable fail) {
+      throw new CryptoFailedException("Could not decrypt data", fail);
+    }
+  }
+
   //endregion
 
   //region Configuration
@@ -181,13 +314,13 @@ public class CipherStorageKeystoreRsaEcb extends CipherStorageBase {
 
   //region Implementation
 
-  /** Clean code without try/catch's that encrypt username and password with a key specified by alias. */
+  /** Get public key of the key pair specified by alias, generate key pair on first access. */
   @NonNull
-  private EncryptionResult innerEncryptedCredentials(@NonNull final String alias,
-                                                     @NonNull final String password,
-                                                     @NonNull final String username,
-                                                     @NonNull final SecurityLevel level)
-    throws GeneralSecurityException, IOException {
+  private PublicKey extractPublicKey(@NonNull final String alias,
+                                     @NonNull final SecurityLevel level)
+    throws GeneralSecurityException {
+    final PublicKey cached = cachedPublicKeys.get(alias);
+    if (null != cached) return cached;
 
     final KeyStore store = getKeyStoreAndLoad();
 
@@ -202,10 +335,65 @@ public class CipherStorageKeystoreRsaEcb extends CipherStorageBase {
     final X509EncodedKeySpec keySpec = new X509EncodedKeySpec(publicKey.getEncoded());
     final PublicKey key = kf.generatePublic(keySpec);
 
-    return new EncryptionResult(
-      encryptString(key, username),
-      encryptString(key, password),
-      this);
+    cachedPublicKeys.put(alias, key);
+
+    return key;
+  }
+
+  /**
+   * Seal credentials for per-use key: both values are encrypted by one-time AES-GCM key and only
+   * that key is encrypted by RSA. Each read requires exactly one authorized RSA operation.
+   * Username field keeps the wrapped key, password field keeps {@code [iv][sealed data][tag]}.
+   */
+  @NonNull
+  private EncryptionResult encryptSealed(@NonNull final PublicKey key,
+                                         @NonNull final SecretBytes username,
+                                         @NonNull final SecretBytes password)
+    throws GeneralSecurityException, IOException {
+    final int usernameLength = username.length();
+    final int passwordLength = password.length();
+
+    if (usernameLength > 0xFFFF) {
+      throw new CryptoFailedException("Username is too long: " + usernameLength);
+    }
+
+    try (final SecretBytes dataKey = new SecretBytes();
+         final SecretBytes plain = new SecretBytes()) {
+      random.nextBytes(dataKey.ensureCapacity(CipherStorageSoftwareAesGcm.KEY_LENGTH));
+      dataKey.setLength(CipherStorageSoftwareAesGcm.KEY_LENGTH);
+
+      final byte[] buffer = plain.ensureCapacity(2 + usernameLength + passwordLength);
+      buffer[0] = (byte) (usernameLength >>> 8);
+      buffer[1] = (byte) usernameLength;
+      System.arraycopy(username.buffer(), 0, buffer, 2, usernameLength);
+      System.arraycopy(password.buffer(), 0, buffer, 2 + usernameLength, passwordLength);
+      plain.setLength(2 + usernameLength + passwordLength);
+
+      final int ivLength = CipherStorageSoftwareAesGcm.IV_LENGTH;
+      final byte[] iv = new byte[ivLength];
+      random.nextBytes(iv);
+
+      final Cipher cipher = Cipher.getInstance(CipherStorageSoftwareAesGcm.ENCRYPTION_TRANSFORMATION);
+      cipher.init(Cipher.ENCRYPT_MODE,
+        new SecretKeySpec(dataKey.buffer(), 0, dataKey.length(), CipherStorageSoftwareAesGcm.ALGORITHM_AES),
+        new GCMParameterSpec(CipherStorageSoftwareAesGcm.TAG_LENGTH * 8, iv));
+
+      final byte[] sealed = new byte[ivLength + cipher.getOutputSize(plain.length())];
+      System.arraycopy(iv, 0, sealed, 0, ivLength);
+      final int written = cipher.doFinal(buffer, 0, plain.length(), sealed, ivLength);
+
+      return new EncryptionResult(
+        encryptBytes(key, dataKey),
+        (ivLength + written == sealed.length) ? sealed : Arrays.copyOf(sealed, ivLength + written),
+        this);
+    }
+  }
+
+  /** Public key is derived from the key pair, forget it together with private key handle. */
+  @Override
+  protected void invalidateCachedKey(@NonNull final String safeAlias) {
+    super.invalidateCachedKey(safeAlias);
+    cachedPublicKeys.remove(safeAlias);
   }
 
   /** Get builder for encryption and decryption operations with required user Authentication. */
@@ -225,7 +413,7 @@ public class CipherStorageKeystoreRsaEcb extends CipherStorageBase {
       .setEncryptionPaddings(PADDING_PKCS1)
       .setRandomizedEncryptionRequired(true)
       .setUserAuthenticationRequired(true)
-      .setUserAuthenticationValidityDurationSeconds(1)
+      .setUserAuthenticationValidityDurationSeconds(isPerUseKey(alias) ? -1 : getAuthValidity(alias))
       .setKeySize(ENCRYPTION_KEY_SIZE);
   }
 
@@ -258,6 +446,50 @@ public class CipherStorageKeystoreRsaEcb extends CipherStorageBase {
 
   //endregion
 
+  //region Static methods
+
+  /**
+   * Get alias of the key that stays unlocked for provided number of seconds after user
+   * authentication. Validity is a property of the key, so it is kept in alias and the key
+   * re-generated after invalidation gets the same validity. Marked alias is always namespaced,
+   * so service name that looks like a marker never changes the validity.
+   */
+  @NonNull
+  public static String getKeyAliasWithAuthValidity(@NonNull final String alias, final int seconds) {
+    if (LEGACY_AUTH_VALIDITY == seconds && LEGACY_AUTH_VALIDITY == getAuthValidity(alias)) return alias;
+
+    final String namespaced = alias.startsWith(MARKED_ALIAS_PREFIX)
+      ? alias : MARKED_ALIAS_PREFIX + getDefaultAliasIfEmpty(alias, KeychainModule.KnownCiphers.RSA);
+
+    return namespaced + KEY_ALIAS_SEPARATOR + AUTH_VALIDITY_MARKER + seconds;
+  }
+
+  /** Get validity of the user authentication in seconds for the key with provided alias. */
+  public static int getAuthValidity(@NonNull final String alias) {
+    if (!alias.startsWith(MARKED_ALIAS_PREFIX)) return LEGACY_AUTH_VALIDITY;
+
+    final int index = alias.lastIndexOf(KEY_ALIAS_SEPARATOR + AUTH_VALIDITY_MARKER);
+    if (index < MARKED_ALIAS_PREFIX.length()) return LEGACY_AUTH_VALIDITY;
+
+    try {
+      final int seconds = Integer.parseInt(
+        alias.substring(index + KEY_ALIAS_SEPARATOR.length() + AUTH_VALIDITY_MARKER.length()));
+
+      return (seconds >= 0) ? seconds : LEGACY_AUTH_VALIDITY;
+    } catch (NumberFormatException ignored) {
+      return LEGACY_AUTH_VALIDITY;
+    }
+  }
+
+  /**
+   * True - key requires user authentication for every use. Such keys are unlocked only through
+   * the biometric prompt bound to the cipher, entries use sealed format.
+   */
+  public static boolean isPerUseKey(@NonNull final String alias) {
+    return 0 == getAuthValidity(alias);
+  }
+  //endregion
+
   //region Nested classes
 
   /** Non interactive handler for decrypting the credentials. */
@@ -0,0 +1,400 @@
+package com.oblador.keychain.cipherStorage;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.security.keystore.KeyGenParameterSpec;
+import android.security.keystore.KeyInfo;
+import android.util.Base64;
+
+import androidx.annotation.NonNull;
+
+import com.oblador.keychain.KeychainLog;
+import com.oblador.keychain.KeychainModule.KnownCiphers;
+import com.oblador.keychain.Metrics;
+import com.oblador.keychain.SecurityLevel;
+import com.oblador.keychain.exceptions.CryptoFailedException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Software AES-GCM storage on top of the platform JCA, replacement of the Facebook Conceal.
+ * <p>
+ * Storage produces and consumes exactly the same data as Conceal with {@code CryptoConfig.KEY_256}:
+ * the same key in {@code SharedPrefsBackedKeyChain} preferences, the same entities and cipher
+ * text layout {@code [version][cipher id][iv][encrypted data][tag]}. That is why storage keeps
+ * the {@link KnownCiphers#FB} name, existing entries are readable without migration and
+ * no native libraries are loaded. API16-18 have no GCM in JCA, there GCM is composed from the
+ * available AES modes by {@link AesGcmCompat}.
+ *
+ * @see <a href="https://github.com/facebook/conceal">Conceal Project</a>
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public class CipherStorageSoftwareAesGcm extends CipherStorageBase {
+  //region Constants
+  /** Entities prefix, same as in Conceal storage. */
+  public static final String KEYCHAIN_DATA = "RN_KEYCHAIN";
+  /** Shared preferences of the {@code SharedPrefsBackedKeyChain} for {@code CryptoConfig.KEY_256}. */
+  public static final String KEY_CHAIN_PREFS = "crypto.KEY_256";
+  /** Preferences key of the cipher key. */
+  public static final String CIPHER_KEY_PREF = "cipher_key";
+  /** Cipher text serialization version. */
+  public static final byte VERSION = 1;
+  /** Conceal ID of the AES-256 GCM cipher. */
+  public static final byte CIPHER_ID = 2;
+  /** Key length in bytes, 256 bits. */
+  public static final int KEY_LENGTH = 32;
+  /** GCM initialization vector length in bytes. */
+  public static final int IV_LENGTH = 12;
+  /** GCM authentication tag length in bytes. */
+  public static final int TAG_LENGTH = 16;
+  /** AES. */
+  public static final String ALGORITHM_AES = "AES";
+  /** AES/GCM/NoPadding */
+  public static final String ENCRYPTION_TRANSFORMATION = "AES/GCM/NoPadding";
+  /** Cipher text header, part of additional authenticated data. */
+  private static final byte[] HEADER = {VERSION, CIPHER_ID};
+  //endregion
+
+  //region Members
+  /** Application context, used for lazy key loading. */
+  @NonNull
+  private final Context context;
+  /** Source of initialization vectors and new keys. */
+  private final SecureRandom random = new SecureRandom();
+  /** Cipher key, loaded on first use. */
+  private volatile Key cachedCipherKey;
+  //endregion
+
+  /** Nothing is loaded or initialized till the first encrypt/decrypt call. */
+  public CipherStorageSoftwareAesGcm(@NonNull final Context context) {
+    this.context = context.getApplicationContext();
+  }
+
+  //region Configuration
+  @Override
+  public String getCipherStorageName() {
+    return KnownCiphers.FB;
+  }
+
+  /** API16, older platforms without {@link GCMParameterSpec} use {@link AesGcmCompat}. */
+  @Override
+  public int getMinSupportedApiLevel() {
+    return Build.VERSION_CODES.JELLY_BEAN;
+  }
+
+  @Override
+  public SecurityLevel securityLevel() {
+    return SecurityLevel.ANY;
+  }
+
+  @Override
+  public boolean supportsSecureHardware() {
+    return false;
+  }
+
+  @Override
+  public boolean isBiometrySupported() {
+    return false;
+  }
+
+  /** One key is used for all services, service is used only as entity name. */
+  @NonNull
+  @Override
+  public String getNamespacedKeyAlias(@NonNull final String service) {
+    return service;
+  }
+
+  /** AES. */
+  @NonNull
+  @Override
+  protected String getEncryptionAlgorithm() {
+    return ALGORITHM_AES;
+  }
+
+  /** AES/GCM/NoPadding */
+  @NonNull
+  @Override
+  protected String getEncryptionTransformation() {
+    return ENCRYPTION_TRANSFORMATION;
+  }
+  //endregion
+
+  //region Overrides
+  @Override
+  @NonNull
+  public EncryptionResult encrypt(@NonNull final String alias,
+                                  @NonNull final SecretBytes username,
+                                  @NonNull final SecretBytes password,
+                                  @NonNull final SecurityLevel level)
+    throws CryptoFailedException {
+
+    throwIfInsufficientLevel(level);
+
+    try {
+      final Key key = getCipherKey();
+
+      return new EncryptionResult(
+        encryptEntity(key, username, createUsernameEntity(alias)),
+        encryptEntity(key, password, createPasswordEntity(alias)),
+        this);
+    } catch (Throwable fail) {
+      throw new CryptoFailedException("Encryption failed", fail);
+    }
+  }
+
+  @NonNull
+  @Override
+  public SecurityLevel decrypt(@NonNull final String alias,
+                               @NonNull final byte[] username,
+                               @NonNull final byte[] password,
+                               @NonNull final SecurityLevel level,
+                               @NonNull final SecretBytes outUsername,
+                               @NonNull final SecretBytes outPassword)
+    throws CryptoFailedException {
+
+    throwIfInsufficientLevel(level);
+
+    try {
+      final Key key = getCipherKey();
+
+      decryptEntity(key, username, createUsernameEntity(alias), outUsername);
+      decryptEntity(key, password, createPasswordEntity(alias), outPassword);
+
+      return SecurityLevel.ANY;
+    } catch (Throwable fail) {
+      throw new CryptoFailedException("Decryption failed", fail);
+    }
+  }
+
+  /** redirect call to default {@link #decrypt(String, byte[], byte[], SecurityLevel)} method. */
+  @Override
+  public void decrypt(@NonNull DecryptionResultHandler handler,
+                      @NonNull String service,
+                      @NonNull byte[] username,
+                      @NonNull byte[] password,
+                      @NonNull final SecurityLevel level) {
+
+    try {
+      final DecryptionResult results = decrypt(service, username, password, level);
+
+      handler.onDecrypt(results, null);
+    } catch (Throwable fail) {
+      handler.onDecrypt(null, fail);
+    }
+  }
+
+  @Override
+  public void removeKey(@NonNull final String alias) {
+    // one key is shared by all services, so we cannot delete the key
+    // (otherwise decryption will fail for encrypted data of other services).
+    KeychainLog.d(LOG_TAG, "CipherStorageSoftwareAesGcm removeKey called. alias: {s}", alias);
+  }
+
+  @NonNull
+  @Override
+  protected KeyGenParameterSpec.Builder getKeyGenSpecBuilder(@NonNull final String alias)
+    throws GeneralSecurityException {
+    throw new CryptoFailedException("Not designed for a call");
+  }
+
+  @NonNull
+  @Override
+  protected KeyInfo getKeyInfo(@NonNull final Key key) throws GeneralSecurityException {
+    throw new CryptoFailedException("Not designed for a call");
+  }
+
+  @NonNull
+  @Override
+  protected Key generateKey(@NonNull final KeyGenParameterSpec spec) throws GeneralSecurityException {
+    throw new CryptoFailedException("Not designed for a call");
+  }
+  //endregion
+
+  //region Implementation
+
+  /** Get cipher key, load or generate it on first call. */
+  @NonNull
+  /* package */ Key getCipherKey() throws CryptoFailedException {
+    final long startTime = metrics.begin(Metrics.Phase.KEY_EXTRACT);
+
+    try {
+      if (null == cachedCipherKey) {
+        synchronized (this) {
+          if (null == cachedCipherKey) {
+            cachedCipherKey = loadOrGenerateKey();
+          }
+        }
+      }
+
+      return cachedCipherKey;
+    } finally {
+      metrics.end(Metrics.Phase.KEY_EXTRACT, startTime);
+    }
+  }
+
+  /** Read the key in {@code SharedPrefsBackedKeyChain} compatible way, generate it if missing. */
+  @NonNull
+  private Key loadOrGenerateKey() throws CryptoFailedException {
+    final SharedPreferences prefs = context.getSharedPreferences(KEY_CHAIN_PREFS, Context.MODE_PRIVATE);
+    final String encoded = prefs.getString(CIPHER_KEY_PREF, null);
+    final byte[] raw;
+
+    if (null != encoded) {
+      raw = Base64.decode(encoded, Base64.DEFAULT);
+    } else {
+      raw = new byte[KEY_LENGTH];
+      random.nextBytes(raw);
+
+      final boolean saved = prefs.edit()
+        .putString(CIPHER_KEY_PREF, Base64.encodeToString(raw, Base64.DEFAULT))
+        .commit();
+
+      if (!saved) {
+        Arrays.fill(raw, (byte) 0);
+        throw new CryptoFailedException("Cannot save cipher key.");
+      }
+    }
+
+    try {
+      if (KEY_LENGTH != raw.length) {
+        throw new CryptoFailedException("Unexpected cipher key length: " + raw.length);
+      }
+
+      // key spec keeps own copy of the key material
+      return new SecretKeySpec(raw, ALGORITHM_AES);
+    } finally {
+      Arrays.fill(raw, (byte) 0);
+    }
+  }
+
+  /** Encrypt value of the entity into {@code [header][iv][encrypted data][tag]}. */
+  @NonNull
+  private byte[] encryptEntity(@NonNull final Key key, @NonNull final SecretBytes value,
+                               @NonNull final byte[] entity)
+    throws IOException, GeneralSecurityException {
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+      return encryptBytes(key, value, encrypt(entity));
+    }
+
+    final byte[] iv = new byte[IV_LENGTH];
+    random.nextBytes(iv);
+
+    final int offset = HEADER.length + IV_LENGTH;
+    final byte[] output = new byte[offset + value.length() + TAG_LENGTH];
+    System.arraycopy(HEADER, 0, output, 0, HEADER.length);
+    System.arraycopy(iv, 0, output, HEADER.length, IV_LENGTH);
+
+    AesGcmCompat.seal(key, iv, createAad(entity), value.buffer(), 0, value.length(), output, offset);
+
+    return output;
+  }
+
+  /** Decrypt value of the entity from {@code [header][iv][encrypted data][tag]}. */
+  private void decryptEntity(@NonNull final Key key, @NonNull final byte[] bytes,
+                             @NonNull final byte[] entity, @NonNull final SecretBytes output)
+    throws IOException, GeneralSecurityException {
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+      decryptBytes(key, bytes, decrypt(entity), output);
+      return;
+    }
+
+    final int offset = HEADER.length + IV_LENGTH;
+    if (bytes.length < offset + TAG_LENGTH) {
+      throw new IOException("Input stream has insufficient data.");
+    }
+
+    if (VERSION != bytes[0] || CIPHER_ID != bytes[1]) {
+      throw new IOException("Unexpected crypto version " + bytes[0] + " or cipher ID " + bytes[1]);
+    }
+
+    final byte[] iv = Arrays.copyOfRange(bytes, HEADER.length, offset);
+    final byte[] buffer = output.ensureCapacity(bytes.length - offset - TAG_LENGTH);
+
+    output.setLength(AesGcmCompat.open(key, iv, createAad(entity), bytes, offset, bytes.length - offset, buffer, 0));
+  }
+
+  /** Write header and initialization vector, authenticate header and entity. */
+  @NonNull
+  @TargetApi(Build.VERSION_CODES.KITKAT)
+  private EncryptStringHandler encrypt(@NonNull final byte[] entity) {
+    return (cipher, key, output) -> {
+      final byte[] iv = new byte[IV_LENGTH];
+      random.nextBytes(iv);
+
+      cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH * 8, iv));
+      cipher.updateAAD(HEADER);
+      cipher.updateAAD(entity);
+
+      output.write(HEADER);
+      output.write(iv);
+    };
+  }
+
+  /** Verify header, read initialization vector, authenticate header and entity. */
+  @NonNull
+  @TargetApi(Build.VERSION_CODES.KITKAT)
+  private DecryptBytesHandler decrypt(@NonNull final byte[] entity) {
+    return (cipher, key, input) -> {
+      final int version = input.read();
+      final int cipherId = input.read();
+
+      if (VERSION != version || CIPHER_ID != cipherId) {
+        throw new IOException("Unexpected crypto version " + version + " or cipher ID " + cipherId);
+      }
+
+      cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH * 8, readIv(input)));
+      cipher.updateAAD(HEADER);
+      cipher.updateAAD(entity);
+    };
+  }
+
+  /** Extract initialization vector from provided input stream. */
+  @NonNull
+  private static byte[] readIv(@NonNull final InputStream input) throws IOException {
+    final byte[] iv = new byte[IV_LENGTH];
+
+    if (IV_LENGTH != input.read(iv, 0, IV_LENGTH)) {
+      throw new IOException("Input stream has insufficient data.");
+    }
+
+    return iv;
+  }
+  //endregion
+
+  //region Helper methods
+  @NonNull
+  private static byte[] createUsernameEntity(@NonNull final String alias) {
+    return (getEntityPrefix(alias) + "user").getBytes(UTF8);
+  }
+
+  @NonNull
+  private static byte[] createPasswordEntity(@NonNull final String alias) {
+    return (getEntityPrefix(alias) + "pass").getBytes(UTF8);
+  }
+
+  /** Additional authenticated data: header followed by entity. */
+  @NonNull
+  private static byte[] createAad(@NonNull final byte[] entity) {
+    final byte[] aad = Arrays.copyOf(HEADER, HEADER.length + entity.length);
+    System.arraycopy(entity, 0, aad, HEADER.length, entity.length);
+
+    return aad;
+  }
+
+  @NonNull
+  private static String getEntityPrefix(@NonNull final String alias) {
+    return KEYCHAIN_DATA + ":" + alias;
+  }
+  //endregion
+}
@@ -0,0 +1,358 @@
+package com.oblador.keychain.cipherStorage;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.oblador.keychain.KeychainLog;
+import com.oblador.keychain.SecurityLevel;
+import com.oblador.keychain.cipherStorage.CipherStorage.SecretBytes;
+import com.oblador.keychain.exceptions.CryptoFailedException;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Streaming encryption of files with constant memory usage.
+ * <p>
+ * Every file is encrypted by own random AES-256 key, that key is wrapped by the keystore key of
+ * {@link CipherStorageKeystoreAesCbc}, so bulk data never passes through the keystore IPC.
+ * Data is split into chunks, each chunk is sealed by AES-GCM with its index and "last chunk" flag
+ * as additional authenticated data. Reordered, truncated or extended files are rejected.
+ * <p>
+ * Layout: {@code [magic][version][wrapped key length][wrapped key]} followed by chunks
+ * {@code [flags][plain length][iv][encrypted data][tag]}.
+ */
+@TargetApi(Build.VERSION_CODES.M)
+@SuppressWarnings({"unused", "WeakerAccess"})
+public class FileCipher {
+  //region Constants
+  private static final String LOG_TAG = FileCipher.class.getSimpleName();
+  /** File signature. */
+  public static final int MAGIC = 0x524E4B46; // RNKF
+  /** Format version. */
+  public static final byte VERSION = 1;
+  /** Plain text bytes per chunk. */
+  public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+  /** Marker of the file key aliases, keeps them apart of the entries keys and keys rotation. */
+  public static final String FILE_KEY_MARKER = "files";
+  /** AES/GCM/NoPadding */
+  public static final String ENCRYPTION_TRANSFORMATION = "AES/GCM/NoPadding";
+  /** Data key length in bytes, 256 bits. */
+  public static final int KEY_LENGTH = 32;
+  /** GCM initialization vector length in bytes. */
+  public static final int IV_LENGTH = 12;
+  /** GCM authentication tag length in bytes. */
+  public static final int TAG_LENGTH = 16;
+  /** Chunk flag: no more chunks after this one. */
+  private static final byte FLAG_LAST = 1;
+  /** Suffix of the file that collects output till the operation succeeds. */
+  private static final String TEMP_SUFFIX = ".tmp";
+  //endregion
+
+  /** Progress of the file operation. */
+  public interface ProgressListener {
+    /**
+     * @param processed number of processed input bytes.
+     * @param total     input size in bytes.
+     */
+    void onProgress(long processed, long total);
+  }
+
+  //region Members
+  /** Owner of the wrapping keys. */
+  @NonNull
+  private final CipherStorageKeystoreAesCbc storage;
+  /** Plain text bytes per chunk. */
+  private final int chunkSize;
+  /** Source of data keys and initialization vectors. */
+  private final SecureRandom random = new SecureRandom();
+  //endregion
+
+  public FileCipher(@NonNull final CipherStorageKeystoreAesCbc storage) {
+    this(storage, DEFAULT_CHUNK_SIZE);
+  }
+
+  public FileCipher(@NonNull final CipherStorageKeystoreAesCbc storage, final int chunkSize) {
+    if (chunkSize <= 0) throw new IllegalArgumentException("Chunk size should be positive: " + chunkSize);
+
+    this.storage = storage;
+    this.chunkSize = chunkSize;
+  }
+
+  //region Configuration
+
+  /** Alias of the wrapping key for files of the service. */
+  @NonNull
+  public String getKeyAlias(@Nullable final String service) {
+    return storage.getCipherStorageName() + CipherStorageBase.KEY_ALIAS_SEPARATOR
+      + FILE_KEY_MARKER + CipherStorageBase.KEY_ALIAS_SEPARATOR
+      + CipherStorageBase.getDefaultAliasIfEmpty(service, storage.getDefaultAliasServiceName());
+  }
+  //endregion
+
+  //region Files
+
+  /** Encrypt file. Output appears only if the whole input is encrypted. */
+  public void encryptFile(@NonNull final String alias,
+                          @NonNull final File input,
+                          @NonNull final File output,
+                          @NonNull final SecurityLevel level,
+                          @Nullable final ProgressListener listener)
+    throws CryptoFailedException {
+    final File temp = new File(output.getPath() + TEMP_SUFFIX);
+
+    try (final InputStream in = new FileInputStream(input);
+         final OutputStream out = new FileOutputStream(temp)) {
+      encrypt(alias, in, out, input.length(), level, listener);
+    } catch (IOException fail) {
+      deleteQuietly(temp);
+      throw new CryptoFailedException("Cannot encrypt file: " + input, fail);
+    } catch (CryptoFailedException fail) {
+      deleteQuietly(temp);
+      throw fail;
+    }
+
+    moveOrThrow(temp, output);
+  }
+
+  /** Decrypt file. Output appears only if the whole input is authenticated. */
+  public void decryptFile(@NonNull final String alias,
+                          @NonNull final File input,
+                          @NonNull final File output,
+                          @Nullable final ProgressListener listener)
+    throws CryptoFailedException {
+    final File temp = new File(output.getPath() + TEMP_SUFFIX);
+
+    try (final InputStream in = new FileInputStream(input);
+         final OutputStream out = new FileOutputStream(temp)) {
+      decrypt(alias, in, out, input.length(), listener);
+    } catch (IOException fail) {
+      deleteQuietly(temp);
+      throw new CryptoFailedException("Cannot decrypt file: " + input, fail);
+    } catch (CryptoFailedException fail) {
+      deleteQuietly(temp);
+      throw fail;
+    }
+
+    moveOrThrow(temp, output);
+  }
+  //endregion
+
+  //region Streams
+
+  /** Encrypt input stream to output stream chunk by chunk. */
+  public void encrypt(@NonNull final String alias,
+                      @NonNull final InputStream input,
+                      @NonNull final OutputStream output,
+                      final long total,
+                      @NonNull final SecurityLevel level,
+                      @Nullable final ProgressListener listener)
+    throws CryptoFailedException, IOException {
+
+    try (final SecretBytes dataKey = new SecretBytes()) {
+      random.nextBytes(dataKey.ensureCapacity(KEY_LENGTH));
+      dataKey.setLength(KEY_LENGTH);
+
+      final Key wrappingKey = storage.extractGeneratedKey(alias, level, new AtomicInteger(1));
+      final byte[] wrapped = storage.encryptBytes(wrappingKey, dataKey, CipherStorageBase.IV.encrypt);
+      final Key key = new SecretKeySpec(dataKey.buffer(), 0, KEY_LENGTH, "AES");
+      final Cipher cipher = Cipher.getInstance(ENCRYPTION_TRANSFORMATION);
+      final DataOutputStream out = new DataOutputStream(output);
+
+      out.writeInt(MAGIC);
+      out.writeByte(VERSION);
+      out.writeShort(wrapped.length);
+      out.write(wrapped);
+
+      // read one chunk ahead, otherwise the last chunk cannot be flagged
+      byte[] current = new byte[chunkSize];
+      byte[] next = new byte[chunkSize];
+      final byte[] iv = new byte[IV_LENGTH];
+      final byte[] sealed = new byte[chunkSize + TAG_LENGTH];
+      int length = readFully(input, current);
+      long index = 0;
+      long processed = 0;
+
+      try {
+        while (true) {
+          final int nextLength = (length < chunkSize) ? 0 : readFully(input, next);
+          final byte flags = (0 == nextLength) ? FLAG_LAST : 0;
+
+          random.nextBytes(iv);
+          cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH * 8, iv));
+          cipher.updateAAD(getChunkAad(index, flags));
+          final int written = cipher.doFinal(current, 0, length, sealed, 0);
+
+          out.writeByte(flags);
+          out.writeInt(length);
+          out.write(iv);
+          out.write(sealed, 0, written);
+
+          processed += length;
+          if (null != listener) listener.onProgress(processed, total);
+
+          if (FLAG_LAST == flags) break;
+
+          final byte[] swap = current;
+          current = next;
+          next = swap;
+          length = nextLength;
+          index++;
+        }
+      } finally {
+        Arrays.fill(current, (byte) 0);
+        Arrays.fill(next, (byte) 0);
+      }
+
+      out.flush();
+    } catch (CryptoFailedException fail) {
+      throw fail;
+    } catch (GeneralSecurityException fail) {
+      throw new CryptoFailedException("Could not encrypt data", fail);
+    }
+  }
+
+  /** Decrypt input stream to output stream chunk by chunk, every chunk is verified before write. */
+  public void decrypt(@NonNull final String alias,
+                      @NonNull final InputStream input,
+                      @NonNull final OutputStream output,
+                      final long total,
+                      @Nullable final ProgressListener listener)
+    throws CryptoFailedException, IOException {
+    final DataInputStream in = new DataInputStream(input);
+
+    if (MAGIC != in.readInt() || VERSION != in.readByte()) {
+      throw new CryptoFailedException("Unknown file format");
+    }
+
+    final byte[] wrapped = new byte[in.readUnsignedShort()];
+    in.readFully(wrapped);
+    long processed = 4 + 1 + 2 + wrapped.length;
+
+    try (final SecretBytes dataKey = new SecretBytes()) {
+      final Key wrappingKey = storage.extractGeneratedKey(alias, SecurityLevel.ANY, new AtomicInteger(1));
+      storage.decryptBytes(wrappingKey, wrapped, CipherStorageBase.IV.decrypt, dataKey);
+
+      if (KEY_LENGTH != dataKey.length()) {
+        throw new CryptoFailedException("Unexpected data key length: " + dataKey.length());
+      }
+
+      final Key key = new SecretKeySpec(dataKey.buffer(), 0, KEY_LENGTH, "AES");
+      final Cipher cipher = Cipher.getInstance(ENCRYPTION_TRANSFORMATION);
+      final byte[] iv = new byte[IV_LENGTH];
+      final byte[] sealed = new byte[chunkSize + TAG_LENGTH];
+      final byte[] plain = new byte[chunkSize];
+      long index = 0;
+
+      try {
+        while (true) {
+          final byte flags;
+
+          try {
+            flags = in.readByte();
+          } catch (EOFException fail) {
+            throw new CryptoFailedException("File is truncated", fail);
+          }
+
+          final int length = in.readInt();
+          if (length < 0 || length > chunkSize) {
+            throw new CryptoFailedException("Unexpected chunk length: " + length);
+          }
+
+          in.readFully(iv);
+          in.readFully(sealed, 0, length + TAG_LENGTH);
+
+          cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH * 8, iv));
+          cipher.updateAAD(getChunkAad(index, flags));
+          final int written = cipher.doFinal(sealed, 0, length + TAG_LENGTH, plain, 0);
+
+          output.write(plain, 0, written);
+
+          processed += 1 + 4 + IV_LENGTH + length + TAG_LENGTH;
+          if (null != listener) listener.onProgress(processed, total);
+
+          if (FLAG_LAST == flags) break;
+
+          index++;
+        }
+      } finally {
+        Arrays.fill(plain, (byte) 0);
+      }
+
+      if (in.read() >= 0) {
+        throw new CryptoFailedException("Unexpected data after the last chunk");
+      }
+
+      output.flush();
+    } catch (CryptoFailedException fail) {
+      throw fail;
+    } catch (GeneralSecurityException fail) {
+      throw new CryptoFailedException("Could not decrypt data", fail);
+    }
+  }
+  //endregion
+
+  //region Helper methods
+
+  /** Chunk position and flags, authenticated together with the chunk. */
+  @NonNull
+  private static byte[] getChunkAad(final long index, final byte flags) {
+    final byte[] aad = new byte[9];
+
+    for (int i = 0; i < 8; i++) {
+      aad[i] = (byte) (index >>> (56 - 8 * i));
+    }
+    aad[8] = flags;
+
+    return aad;
+  }
+
+  /** Read till buffer is full or end of stream reached. */
+  private static int readFully(@NonNull final InputStream input, @NonNull final byte[] buffer)
+    throws IOException {
+    int total = 0;
+
+    while (total < buffer.length) {
+      final int read = input.read(buffer, total, buffer.length - total);
+      if (read < 0) break;
+
+      total += read;
+    }
+
+    return total;
+  }
+
+  private static void moveOrThrow(@NonNull final File from, @NonNull final File to)
+    throws CryptoFailedException {
+    if (to.exists() && !to.delete() || !from.renameTo(to)) {
+      deleteQuietly(from);
+      throw new CryptoFailedException("Cannot write output file: " + to);
+    }
+  }
+
+  private static void deleteQuietly(@NonNull final File file) {
+    if (file.exists() && !file.delete()) {
+      KeychainLog.w(LOG_TAG, "Cannot delete temporary file: {}", file);
+    }
+  }
+  //endregion
+}
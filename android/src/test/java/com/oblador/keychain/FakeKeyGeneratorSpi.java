@@ -1,5 +1,9 @@
 package com.oblador.keychain;
 
+import java.security.InvalidAlgorithmParameterException;
+import java.security.SecureRandom;
+import java.security.spec.AlgorithmParameterSpec;
+
 import javax.crypto.KeyGeneratorSpi;
 import javax.crypto.SecretKey;
 
@@ -10,4 +14,9 @@ public abstract class FakeKeyGeneratorSpi extends KeyGeneratorSpi {
   }
 
   public abstract SecretKey doEngineGenerateKey();
+
+  /** Visible for stubbing, key generation specification is passed here. */
+  @Override
+  protected void engineInit(AlgorithmParameterSpec params, SecureRandom random) throws InvalidAlgorithmParameterException {
+  }
 }
@@ -7,6 +7,8 @@ public final class FakeProvider extends Provider {
   public static final String NAME = "AndroidKeyStore";
   public final HashMap<String, HashMap<String, MocksForProvider>> mocks = new HashMap<>();
   public final HashMap<String, Object> configuration = new HashMap<>();
+  /** Latency and failures of the keystore operations, none by default. */
+  public final FaultInjection faults = new FaultInjection();
 
   public FakeProvider() {
     super(NAME, 1.0, "Fake");
@@ -27,7 +29,7 @@ public final class FakeProvider extends Provider {
       inner.put(algorithm, (mock = new MocksForProvider()));
     }
 
-    mock.configure(type, this, configuration);
+    mock.configure(type, this, configuration, faults);
 
     return mock.service;
   }
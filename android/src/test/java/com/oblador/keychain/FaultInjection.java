@@ -0,0 +1,187 @@
+package com.oblador.keychain;
+
+import androidx.annotation.NonNull;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Latency and failures of the {@link FakeProvider} operations. Rules are applied at the moment
+ * of the call, so they can be changed at any time of the test. Thread safe.
+ * <pre>
+ * provider.faults
+ *   .latency(FaultInjection.KEY_STORE_GET_KEY, FaultInjection.uniform(1, 5))
+ *   .failTimes(FaultInjection.KEY_STORE_GET_KEY, 1, () -&gt; new UnrecoverableKeyException("Invalid key blob"));
+ * </pre>
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public final class FaultInjection {
+  //region Operations
+  public static final String KEY_STORE_LOAD = "KeyStore.load";
+  public static final String KEY_STORE_CONTAINS_ALIAS = "KeyStore.containsAlias";
+  public static final String KEY_STORE_GET_KEY = "KeyStore.getKey";
+  public static final String KEY_STORE_DELETE_ENTRY = "KeyStore.deleteEntry";
+  /** Generation of the secret key or key pair. */
+  public static final String KEY_GENERATE = "KeyGenerator.generate";
+  /** Initialization of the generator with StrongBox backed specification. */
+  public static final String KEY_GENERATE_STRONGBOX = "KeyGenerator.strongBox";
+  //endregion
+
+  /** Fixed seed, every run gets the same latencies and failures. */
+  private static final long SEED = 42;
+
+  /** Latency of the operation. */
+  public interface Latency {
+    long nextNanos(@NonNull Random random);
+  }
+
+  /** Factory of the injected exception. */
+  public interface Failure {
+    @NonNull
+    Exception create();
+  }
+
+  private final Map<String, Rule> rules = new ConcurrentHashMap<>();
+  private final Map<String, AtomicInteger> calls = new ConcurrentHashMap<>();
+  private final Random random = new Random(SEED);
+
+  //region Latency distributions
+
+  /** Constant latency. */
+  @NonNull
+  public static Latency fixed(final long millis) {
+    final long nanos = TimeUnit.MILLISECONDS.toNanos(millis);
+
+    return random -> nanos;
+  }
+
+  /** Latency evenly distributed in [min, max) milliseconds. */
+  @NonNull
+  public static Latency uniform(final long minMillis, final long maxMillis) {
+    final long min = TimeUnit.MILLISECONDS.toNanos(minMillis);
+    final long range = TimeUnit.MILLISECONDS.toNanos(maxMillis) - min;
+
+    return random -> min + (long) (random.nextDouble() * range);
+  }
+
+  /** Long tail latency with provided mean, typical for the keystore binder calls under load. */
+  @NonNull
+  public static Latency exponential(final double meanMillis) {
+    final double mean = TimeUnit.MILLISECONDS.toNanos(1) * meanMillis;
+
+    return random -> (long) (-mean * Math.log(1.0 - random.nextDouble()));
+  }
+  //endregion
+
+  //region Configuration
+
+  /** Delay each call of the operation. */
+  @NonNull
+  public FaultInjection latency(@NonNull final String operation, @NonNull final Latency latency) {
+    getRule(operation).latency = latency;
+    return this;
+  }
+
+  /** Fail each call of the operation. */
+  @NonNull
+  public FaultInjection fail(@NonNull final String operation, @NonNull final Failure failure) {
+    return failWithProbability(operation, 1.0, failure);
+  }
+
+  /** Fail the next {@code times} calls of the operation, following calls succeed. */
+  @NonNull
+  public FaultInjection failTimes(@NonNull final String operation, final int times, @NonNull final Failure failure) {
+    final Rule rule = getRule(operation);
+    rule.failure = failure;
+    rule.probability = 1.0;
+    rule.remaining.set(times);
+    return this;
+  }
+
+  /** Fail random calls of the operation. */
+  @NonNull
+  public FaultInjection failWithProbability(@NonNull final String operation,
+                                            final double probability,
+                                            @NonNull final Failure failure) {
+    final Rule rule = getRule(operation);
+    rule.failure = failure;
+    rule.probability = probability;
+    rule.remaining.set(Integer.MAX_VALUE);
+    return this;
+  }
+
+  /** Drop all rules and counters. */
+  public void clear() {
+    rules.clear();
+    calls.clear();
+  }
+
+  /** Number of the operation calls, including failed ones. */
+  public int getCalls(@NonNull final String operation) {
+    final AtomicInteger counter = calls.get(operation);
+
+    return null == counter ? 0 : counter.get();
+  }
+  //endregion
+
+  //region Implementation
+
+  /** Count the call, wait for the latency and throw the failure if rules say so. */
+  public void apply(@NonNull final String operation) throws Exception {
+    getCounter(operation).incrementAndGet();
+
+    final Rule rule = rules.get(operation);
+    if (null == rule) return;
+
+    final Latency latency = rule.latency;
+    if (null != latency) {
+      final long nanos = latency.nextNanos(random);
+
+      if (nanos > 0) {
+        TimeUnit.NANOSECONDS.sleep(nanos);
+      }
+    }
+
+    final Failure failure = rule.failure;
+    if (null != failure && random.nextDouble() < rule.probability
+      && rule.remaining.getAndDecrement() > 0) {
+      throw failure.create();
+    }
+  }
+
+  @NonNull
+  private Rule getRule(@NonNull final String operation) {
+    Rule rule = rules.get(operation);
+
+    if (null == rule) {
+      rules.putIfAbsent(operation, new Rule());
+      rule = rules.get(operation);
+    }
+
+    return rule;
+  }
+
+  @NonNull
+  private AtomicInteger getCounter(@NonNull final String operation) {
+    AtomicInteger counter = calls.get(operation);
+
+    if (null == counter) {
+      calls.putIfAbsent(operation, new AtomicInteger());
+      counter = calls.get(operation);
+    }
+
+    return counter;
+  }
+
+  /** Injection rule of the single operation. */
+  private static final class Rule {
+    volatile Latency latency;
+    volatile Failure failure;
+    volatile double probability;
+    final AtomicInteger remaining = new AtomicInteger();
+  }
+  //endregion
+}
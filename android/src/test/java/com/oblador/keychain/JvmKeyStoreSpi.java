@@ -0,0 +1,160 @@
+package com.oblador.keychain;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.Key;
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.security.KeyStoreSpi;
+import java.security.UnrecoverableKeyException;
+import java.security.cert.Certificate;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Enumeration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.crypto.KeyGenerator;
+
+/**
+ * In-memory keystore for the tests that need real encryption, provider mocks do not encrypt
+ * anything. AES keys are generated by JRE on the first access like AndroidKeyStore does on
+ * demand. Latency and failures of the operations are injected by {@link FaultInjection}.
+ * <pre>
+ * storage.setCipher(Cipher.getInstance("AES/CBC/PKCS5Padding", "SunJCE"))
+ *   .setKeyStore(JvmKeyStoreSpi.create(provider));
+ * </pre>
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public final class JvmKeyStoreSpi extends KeyStoreSpi {
+  private final Map<String, Key> keys = new ConcurrentHashMap<>();
+  @NonNull
+  private final FaultInjection faults;
+
+  public JvmKeyStoreSpi(@NonNull final FaultInjection faults) {
+    this.faults = faults;
+  }
+
+  /** Loaded keystore registered under the fake provider, faults are shared with the provider. */
+  @NonNull
+  public static KeyStore create(@NonNull final FakeProvider provider) throws Exception {
+    final KeyStore keyStore = new KeyStore(new JvmKeyStoreSpi(provider.faults), provider, FakeProvider.NAME) {
+    };
+    keyStore.load(null);
+
+    return keyStore;
+  }
+
+  /** Apply injected latency and failure, failure of not declared type is thrown unchecked. */
+  private <E extends Exception> void simulate(@NonNull final String operation,
+                                              @NonNull final Class<E> declared) throws E {
+    try {
+      faults.apply(operation);
+    } catch (final RuntimeException fail) {
+      throw fail;
+    } catch (final Exception fail) {
+      if (declared.isInstance(fail)) throw declared.cast(fail);
+
+      throw new IllegalStateException(fail);
+    }
+  }
+
+  @Override
+  public Key engineGetKey(final String alias, final char[] password) throws UnrecoverableKeyException {
+    simulate(FaultInjection.KEY_STORE_GET_KEY, UnrecoverableKeyException.class);
+
+    return keys.computeIfAbsent(alias, a -> {
+      try {
+        final KeyGenerator generator = KeyGenerator.getInstance("AES", "SunJCE");
+        generator.init(256);
+
+        return generator.generateKey();
+      } catch (final Exception fail) {
+        throw new IllegalStateException(fail);
+      }
+    });
+  }
+
+  @Override
+  public Certificate[] engineGetCertificateChain(final String alias) {
+    return null;
+  }
+
+  @Override
+  public Certificate engineGetCertificate(final String alias) {
+    return null;
+  }
+
+  @Override
+  public Date engineGetCreationDate(final String alias) {
+    return null;
+  }
+
+  @Override
+  public void engineSetKeyEntry(final String alias, final Key key, final char[] password, final Certificate[] chain) {
+    keys.put(alias, key);
+  }
+
+  @Override
+  public void engineSetKeyEntry(final String alias, final byte[] key, final Certificate[] chain) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void engineSetCertificateEntry(final String alias, final Certificate cert) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void engineDeleteEntry(final String alias) throws KeyStoreException {
+    simulate(FaultInjection.KEY_STORE_DELETE_ENTRY, KeyStoreException.class);
+
+    keys.remove(alias);
+  }
+
+  /** Aliases of the generated keys. */
+  @Override
+  public Enumeration<String> engineAliases() {
+    return Collections.enumeration(keys.keySet());
+  }
+
+  /** Every alias is available, key generation through the mocked provider is skipped. */
+  @Override
+  public boolean engineContainsAlias(final String alias) {
+    simulate(FaultInjection.KEY_STORE_CONTAINS_ALIAS, RuntimeException.class);
+
+    return true;
+  }
+
+  @Override
+  public int engineSize() {
+    return keys.size();
+  }
+
+  @Override
+  public boolean engineIsKeyEntry(final String alias) {
+    return true;
+  }
+
+  @Override
+  public boolean engineIsCertificateEntry(final String alias) {
+    return false;
+  }
+
+  @Override
+  public String engineGetCertificateAlias(final Certificate cert) {
+    return null;
+  }
+
+  @Override
+  public void engineStore(final OutputStream stream, final char[] password) {
+  }
+
+  @Override
+  public void engineLoad(final InputStream stream, final char[] password) throws IOException {
+    simulate(FaultInjection.KEY_STORE_LOAD, IOException.class);
+  }
+}
@@ -0,0 +1,114 @@
+package com.oblador.keychain;
+
+import android.os.Build;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.oblador.keychain.cipherStorage.CipherStorage;
+import com.oblador.keychain.cipherStorage.CipherStorageBase;
+
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestName;
+import org.junit.rules.Timeout;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.security.UnrecoverableKeyException;
+import java.util.Arrays;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(RobolectricTestRunner.class)
+public class KeyPoolTests {
+  /** Cancel test after 5 seconds. */
+  @ClassRule
+  public static Timeout timeout = Timeout.seconds(5);
+  /** Get test method name. */
+  @Rule
+  public TestName methodName = new TestName();
+
+  private ReactApplicationContext getRNContext() {
+    return new ReactApplicationContext(ApplicationProvider.getApplicationContext());
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.P)
+  public void testRefillSkipsAssignedKeys_api28() throws Exception {
+    // GIVEN: two spare keys left by previous session, one of them assigned to service
+    final PrefsStorage prefs = new PrefsStorage(getRNContext());
+    final CipherStorageBase storage = mock(CipherStorageBase.class);
+    final CipherStorage.EncryptionResult result = new CipherStorage.EncryptionResult(new byte[1], new byte[1], storage);
+    prefs.storeEncryptedEntry("dummy", result, "KeystoreAESCBC#spare#1", 0);
+
+    when(storage.getSpareKeyAliases()).thenReturn(Arrays.asList("KeystoreAESCBC#spare#1", "KeystoreAESCBC#spare#2"));
+    when(storage.generateSpareKey()).thenReturn("KeystoreAESCBC#spare#3");
+    when(storage.isKeySatisfyingLevel(any(), any())).thenReturn(true);
+
+    final KeyPool pool = new KeyPool(storage, prefs, 2, Runnable::run);
+
+    // WHEN:
+    pool.refillNow();
+
+    // THEN: free key reused, only missing one generated
+    assertThat(pool.size(), is(2));
+    verify(storage, times(1)).generateSpareKey();
+    assertThat(pool.take(SecurityLevel.ANY), is("KeystoreAESCBC#spare#2"));
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.P)
+  public void testTakeRespectsSecurityLevel_api28() throws Exception {
+    // GIVEN: spare keys are software backed only
+    final PrefsStorage prefs = new PrefsStorage(getRNContext());
+    final CipherStorageBase storage = mock(CipherStorageBase.class);
+
+    when(storage.getSpareKeyAliases()).thenReturn(Arrays.asList("KeystoreAESCBC#spare#1"));
+    when(storage.isKeySatisfyingLevel(eq("KeystoreAESCBC#spare#1"), eq(SecurityLevel.SECURE_HARDWARE))).thenReturn(false);
+    when(storage.isKeySatisfyingLevel(eq("KeystoreAESCBC#spare#1"), eq(SecurityLevel.SECURE_SOFTWARE))).thenReturn(true);
+
+    final KeyPool pool = new KeyPool(storage, prefs, 1, Runnable::run);
+    pool.refillNow();
+
+    // WHEN/THEN: hardware key requested, spare stays in pool
+    assertThat(pool.take(SecurityLevel.SECURE_HARDWARE), nullValue());
+    assertThat(pool.size(), is(1));
+
+    // WHEN/THEN: software key is good enough
+    assertThat(pool.take(SecurityLevel.SECURE_SOFTWARE), is("KeystoreAESCBC#spare#1"));
+    assertThat(pool.isServing(storage), is(true));
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.P)
+  public void testBrokenSpareKeyRemoved_api28() throws Exception {
+    // GIVEN: spare key that cannot be loaded anymore
+    final PrefsStorage prefs = new PrefsStorage(getRNContext());
+    final CipherStorageBase storage = mock(CipherStorageBase.class);
+
+    when(storage.getSpareKeyAliases()).thenReturn(Arrays.asList("KeystoreAESCBC#spare#1"));
+    when(storage.generateSpareKey()).thenReturn("KeystoreAESCBC#spare#2");
+    when(storage.isKeySatisfyingLevel(any(), any())).thenThrow(new UnrecoverableKeyException("lost"));
+
+    final KeyPool pool = new KeyPool(storage, prefs, 1, Runnable::run);
+    pool.refillNow();
+
+    // WHEN:
+    final String alias = pool.take(SecurityLevel.ANY);
+
+    // THEN: nothing served and broken key removed from keystore
+    assertThat(alias, nullValue());
+    verify(storage).removeKey("KeystoreAESCBC#spare#1");
+  }
+}
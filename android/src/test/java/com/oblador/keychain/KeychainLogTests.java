@@ -0,0 +1,41 @@
+package com.oblador.keychain;
+
+import android.os.Build;
+
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestName;
+import org.junit.rules.Timeout;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+@RunWith(RobolectricTestRunner.class)
+public class KeychainLogTests {
+  /** Cancel test after 5 seconds. */
+  @ClassRule
+  public static Timeout timeout = Timeout.seconds(5);
+  /** Get test method name. */
+  @Rule
+  public TestName methodName = new TestName();
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.P)
+  public void testLogFormatRedactsServices_api28() throws Exception {
+    // GIVEN: template with plain and redacted placeholders
+    final String service = "my.secret.service";
+
+    // WHEN: message formatted
+    final String message = KeychainLog.format("Probe {} for service {s}", "AES", service);
+
+    // THEN: plain argument printed, service replaced by its hash
+    assertThat(message, is("Probe AES for service " + KeychainLog.redact(service)));
+    assertThat(message.contains(service), is(false));
+    assertThat(KeychainLog.format("no placeholders", "AES", null), is("no placeholders"));
+    assertThat(KeychainLog.format("{s} {s} {}", null, 1), is("null #1 {}"));
+  }
+}
@@ -0,0 +1,228 @@
+package com.oblador.keychain;
+
+import android.content.Context;
+import android.os.Build;
+
+import androidx.annotation.NonNull;
+import androidx.test.core.app.ApplicationProvider;
+
+import com.facebook.react.bridge.JavaOnlyMap;
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.oblador.keychain.KeychainModule.KnownCiphers;
+import com.oblador.keychain.KeychainModule.Maps;
+import com.oblador.keychain.KeychainModule.Rules;
+import com.oblador.keychain.cipherStorage.CipherStorageBase;
+import com.oblador.keychain.cipherStorage.CipherStorageSoftwareAesGcm;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.PrintWriter;
+import java.security.Security;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+import javax.crypto.Cipher;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * Macro-benchmark of the module operations with growing number of stored services.
+ * <p>
+ * Opt-in, skipped by regular test runs:
+ * <pre>
+ * ./gradlew :library:testReleaseUnitTest -Pbenchmark --tests '*KeychainModuleBenchmark'
+ * </pre>
+ * Latency percentiles are printed and stored in {@code build/reports/benchmark}.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class KeychainModuleBenchmark {
+  /** Numbers of stored services. */
+  private static final int[] SERVICES = {10, 100, 1_000, 10_000};
+  /** Measured operations per services number. */
+  private static final int SAMPLES = 200;
+  /** Not measured operations, let JIT compile the hot paths. */
+  private static final int WARMUP = 100;
+  /** Fixed seed, every run accesses the same services in the same order. */
+  private static final long SEED = 42;
+  private static final String PASSWORD = "benchmark-password-0123456789-abcdefghijklmnopqrstuvwxyz";
+  private static final String[] OPERATIONS = {"set", "get", "reset"};
+
+  /** Security fake provider. */
+  private FakeProvider provider = new FakeProvider();
+
+  @Before
+  public void setUp() throws Exception {
+    Assume.assumeTrue("benchmark is not requested", Boolean.getBoolean("keychain.benchmark"));
+
+    provider.configuration.clear();
+    provider.faults.clear();
+
+    Security.insertProviderAt(provider, 0);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    Security.removeProvider(FakeProvider.NAME);
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.P)
+  public void testKeystoreAesCbc_api28() throws Exception {
+    benchmark(KnownCiphers.AES, "AES/CBC/PKCS5Padding", KnownCiphers.AES);
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.P)
+  public void testKeystoreAesCbcSlowKeystore_api28() throws Exception {
+    // keystore daemon lookups are binder calls, milliseconds with long tail on real devices
+    provider.faults
+      .latency(FaultInjection.KEY_STORE_CONTAINS_ALIAS, FaultInjection.exponential(1.0))
+      .latency(FaultInjection.KEY_STORE_GET_KEY, FaultInjection.exponential(2.0));
+
+    benchmark(KnownCiphers.AES, "AES/CBC/PKCS5Padding", KnownCiphers.AES + "-slowKeystore");
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.P)
+  public void testSoftwareAesGcm_api28() throws Exception {
+    benchmark(KnownCiphers.FB, CipherStorageSoftwareAesGcm.ENCRYPTION_TRANSFORMATION, KnownCiphers.FB);
+  }
+
+  /** Measure set, get and reset of the services with storage selected by name. */
+  private void benchmark(@NonNull final String storageName,
+                         @NonNull final String transformation,
+                         @NonNull final String reportName) throws Exception {
+    final File report = new File("build/reports/benchmark/KeychainModule-" + reportName + ".txt");
+    report.getParentFile().mkdirs();
+
+    try (final PrintWriter out = new PrintWriter(new FileWriter(report))) {
+      print(out, String.format(Locale.US, "%-8s %-6s %10s %10s %10s %10s",
+        "services", "op", "p50,us", "p90,us", "p99,us", "max,us"));
+
+      for (final int services : SERVICES) {
+        final long[][] latencies = measure(storageName, transformation, services);
+
+        for (int i = 0; i < OPERATIONS.length; i++) {
+          final long[] sorted = latencies[i];
+          Arrays.sort(sorted);
+
+          print(out, String.format(Locale.US, "%-8d %-6s %10.1f %10.1f %10.1f %10.1f", services, OPERATIONS[i],
+            percentile(sorted, 50), percentile(sorted, 90), percentile(sorted, 99), percentile(sorted, 100)));
+        }
+      }
+    }
+  }
+
+  /** Populate services and measure random subset of them, latencies in nanos per operation. */
+  @NonNull
+  private long[][] measure(@NonNull final String storageName,
+                           @NonNull final String transformation,
+                           final int services) throws Exception {
+    final ReactApplicationContext context = getRNContext();
+    clearPreferences(context);
+
+    final KeychainModule module = new KeychainModule(context);
+    final CipherStorageBase storage = (CipherStorageBase) module.getCipherStorageByName(storageName);
+    // JRE cipher and in-memory keystore, provider mocks do not encrypt anything
+    storage.setCipher(Cipher.getInstance(transformation, "SunJCE")).setKeyStore(JvmKeyStoreSpi.create(provider));
+
+    final Promise promise = expectResolved();
+
+    for (int i = 0; i < services; i++) {
+      module.setGenericPasswordForOptions(options(storageName, i), "user-" + i, PASSWORD, promise);
+    }
+
+    final Random random = new Random(SEED + services);
+    for (int i = 0; i < WARMUP; i++) {
+      final JavaOnlyMap options = options(storageName, random.nextInt(services));
+
+      module.setGenericPasswordForOptions(options, "warmup", PASSWORD, promise);
+      module.getGenericPasswordForOptions(options, promise);
+    }
+
+    final long[][] latencies = new long[OPERATIONS.length][SAMPLES];
+    final JavaOnlyMap[] samples = new JavaOnlyMap[SAMPLES];
+    for (int i = 0; i < SAMPLES; i++) {
+      samples[i] = options(storageName, random.nextInt(services));
+    }
+
+    for (int i = 0; i < SAMPLES; i++) {
+      long start = System.nanoTime();
+      module.setGenericPasswordForOptions(samples[i], "user-" + i, PASSWORD, promise);
+      latencies[0][i] = System.nanoTime() - start;
+
+      start = System.nanoTime();
+      module.getGenericPasswordForOptions(samples[i], promise);
+      latencies[1][i] = System.nanoTime() - start;
+    }
+
+    // services count shrinks by reset, at most by the samples number
+    for (int i = 0; i < SAMPLES; i++) {
+      final long start = System.nanoTime();
+      module.resetGenericPasswordForOptions(samples[i], promise);
+      latencies[2][i] = System.nanoTime() - start;
+    }
+
+    return latencies;
+  }
+
+  //region Helpers
+  @NonNull
+  private ReactApplicationContext getRNContext() {
+    return new ReactApplicationContext(ApplicationProvider.getApplicationContext());
+  }
+
+  @NonNull
+  private static JavaOnlyMap options(@NonNull final String storageName, final int service) {
+    final JavaOnlyMap options = new JavaOnlyMap();
+    options.putString(Maps.SERVICE, "service-" + service);
+    options.putString(Maps.STORAGE, storageName);
+    // entries stay in the measured storage
+    options.putString(Maps.RULES, Rules.NONE);
+
+    return options;
+  }
+
+  /** Promise that fails the benchmark on rejection, keeps no invocations history. */
+  @NonNull
+  private static Promise expectResolved() {
+    return mock(Promise.class, withSettings().stubOnly().defaultAnswer(invocation -> {
+      if (invocation.getMethod().getName().startsWith("reject")) {
+        throw new AssertionError("Rejected: " + Arrays.toString(invocation.getArguments()));
+      }
+
+      return null;
+    }));
+  }
+
+  private static void clearPreferences(@NonNull final Context context) {
+    for (final String name : new String[]{PrefsStorage.KEYCHAIN_DATA, KeyJournal.KEYCHAIN_JOURNAL,
+      CipherStorageSoftwareAesGcm.KEY_CHAIN_PREFS}) {
+      context.getSharedPreferences(name, Context.MODE_PRIVATE).edit().clear().commit();
+    }
+  }
+
+  /** Nearest-rank percentile of sorted nanos, in microseconds. */
+  private static double percentile(@NonNull final long[] sorted, final int percent) {
+    final int rank = (int) Math.ceil(percent / 100.0 * sorted.length);
+
+    return sorted[Math.max(0, rank - 1)] / 1_000.0;
+  }
+
+  private static void print(@NonNull final PrintWriter out, @NonNull final String line) {
+    System.out.println(line);
+    out.println(line);
+  }
+  //endregion
+}
@@ -7,21 +7,26 @@ import android.hardware.fingerprint.FingerprintManager;
 import android.os.Build;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.biometric.BiometricManager;
 import androidx.test.core.app.ApplicationProvider;
 
 import com.facebook.react.bridge.JavaOnlyMap;
 import com.facebook.react.bridge.Promise;
 import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.WritableMap;
+import com.facebook.react.module.model.ReactModuleInfo;
 import com.oblador.keychain.KeychainModule.AccessControl;
 import com.oblador.keychain.KeychainModule.Errors;
 import com.oblador.keychain.KeychainModule.KnownCiphers;
 import com.oblador.keychain.KeychainModule.Maps;
+import com.oblador.keychain.KeychainModule.Rules;
 import com.oblador.keychain.cipherStorage.CipherStorage;
 import com.oblador.keychain.cipherStorage.CipherStorageBase;
-import com.oblador.keychain.cipherStorage.CipherStorageFacebookConceal;
 import com.oblador.keychain.cipherStorage.CipherStorageKeystoreAesCbc;
 import com.oblador.keychain.cipherStorage.CipherStorageKeystoreRsaEcb;
+import com.oblador.keychain.cipherStorage.CipherStorageSoftwareAesGcm;
 import com.oblador.keychain.exceptions.CryptoFailedException;
 import com.oblador.keychain.exceptions.KeyStoreAccessException;
 
@@ -40,9 +45,22 @@ import org.mockito.junit.MockitoRule;
 import org.mockito.junit.VerificationCollector;
 import org.robolectric.RobolectricTestRunner;
 import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLog;
 
 import java.security.KeyStore;
 import java.security.Security;
+import java.security.UnrecoverableKeyException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import javax.crypto.Cipher;
 
@@ -50,15 +68,18 @@ import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.instanceOf;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.robolectric.Shadows.shadowOf;
 
 @RunWith(RobolectricTestRunner.class)
+@Config(shadows = ShadowArguments.class, instrumentedPackages = "com.facebook.react.bridge")
 public class KeychainModuleTests {
   public static final byte[] BYTES_USERNAME = "username".getBytes();
   public static final byte[] BYTES_PASSWORD = "password".getBytes();
@@ -101,6 +122,136 @@ public class KeychainModuleTests {
     return new ReactApplicationContext(ApplicationProvider.getApplicationContext());
   }
 
+  /** Executor that keeps background operations of the module until the test drains it. */
+  private static final class QueuedExecutorService extends AbstractExecutorService {
+    private final Queue<Runnable> tasks = new ArrayDeque<>();
+    private volatile boolean isShutdown;
+
+    /** Run queued tasks, including tasks queued by them. */
+    public void drain() {
+      for (Runnable task = tasks.poll(); null != task; task = tasks.poll()) {
+        task.run();
+      }
+    }
+
+    public int size() {
+      return tasks.size();
+    }
+
+    @Override
+    public void execute(@NonNull final Runnable command) {
+      if (isShutdown) throw new RejectedExecutionException();
+
+      tasks.add(command);
+    }
+
+    @Override
+    public void shutdown() {
+      isShutdown = true;
+    }
+
+    @NonNull
+    @Override
+    public List<Runnable> shutdownNow() {
+      isShutdown = true;
+
+      final List<Runnable> pending = new ArrayList<>(tasks);
+      tasks.clear();
+
+      return pending;
+    }
+
+    @Override
+    public boolean isShutdown() {
+      return isShutdown;
+    }
+
+    @Override
+    public boolean isTerminated() {
+      return isShutdown;
+    }
+
+    @Override
+    public boolean awaitTermination(final long timeout, @NonNull final TimeUnit unit) {
+      return isShutdown;
+    }
+  }
+
+  /**
+   * Encrypt AES and software entries for real: JRE ciphers and in-memory keystore, provider mocks
+   * do not encrypt anything.
+   */
+  @NonNull
+  private KeyStore useJvmCrypto(@NonNull final KeychainModule module) throws Exception {
+    final KeyStore keyStore = JvmKeyStoreSpi.create(provider);
+    final CipherStorageBase aes = (CipherStorageBase) module.getCipherStorageByName(KnownCiphers.AES);
+    aes.setCipher(Cipher.getInstance("AES/CBC/PKCS5Padding", "SunJCE")).setKeyStore(keyStore);
+
+    // software storage keeps its key in preferences, generated on first use
+    final CipherStorageBase fb = (CipherStorageBase) module.getCipherStorageByName(KnownCiphers.FB);
+    fb.setCipher(Cipher.getInstance(CipherStorageSoftwareAesGcm.ENCRYPTION_TRANSFORMATION, "SunJCE"));
+
+    return keyStore;
+  }
+
+  @NonNull
+  private static JavaOnlyMap optionsOf(@NonNull final String service, @NonNull final String rules) {
+    final JavaOnlyMap options = new JavaOnlyMap();
+    options.putString(Maps.SERVICE, service);
+    options.putString(Maps.RULES, rules);
+
+    return options;
+  }
+
+  /** Store password of the service by provided storage, fails test on rejection. */
+  private static void writePassword(@NonNull final KeychainModule module,
+                                    @NonNull final String service,
+                                    @NonNull final String storageName,
+                                    @NonNull final String password) {
+    final JavaOnlyMap options = optionsOf(service, Rules.NONE);
+    options.putString(Maps.STORAGE, storageName);
+    final Promise promise = mock(Promise.class);
+
+    module.setGenericPasswordForOptions(options, "user", password, promise);
+
+    verify(promise).resolve(any());
+  }
+
+  /** Read password of the service, fails test on rejection. NULL - entry not found. */
+  @Nullable
+  private static String readPassword(@NonNull final KeychainModule module,
+                                     @NonNull final String service,
+                                     @NonNull final String rules) {
+    final Promise promise = mock(Promise.class);
+    final ArgumentCaptor<Object> result = ArgumentCaptor.forClass(Object.class);
+
+    module.getGenericPasswordForOptions(optionsOf(service, rules), promise);
+
+    verify(promise).resolve(result.capture());
+    return (result.getValue() instanceof ReadableMap) ? ((ReadableMap) result.getValue()).getString(Maps.PASSWORD) : null;
+  }
+
+  /** Number of reads served from the prefetch cache. */
+  private static long getPrefetchHits(@NonNull final KeychainModule module) {
+    final Promise promise = mock(Promise.class);
+    final ArgumentCaptor<ReadableMap> result = ArgumentCaptor.forClass(ReadableMap.class);
+
+    module.getMetrics(promise);
+
+    verify(promise).resolve(result.capture());
+    return (long) result.getValue().getMap(Maps.COUNTERS).getDouble(Metrics.Counter.PREFETCH_HIT.jsName);
+  }
+
+  /** Store copy of the encrypted entry, e.g. to bring back the removed one byte by byte. */
+  private static void restoreEntry(@NonNull final KeychainModule module,
+                                   @NonNull final PrefsStorage prefs,
+                                   @NonNull final String service,
+                                   @NonNull final PrefsStorage.ResultSet entry) {
+    final CipherStorage storage = module.getCipherStorageByName(entry.cipherStorageName);
+    prefs.storeEncryptedEntry(service, new CipherStorage.EncryptionResult(entry.username, entry.password, storage),
+      entry.keyAlias, entry.keyVersion);
+  }
+
   @Test
   @Config(sdk = Build.VERSION_CODES.LOLLIPOP)
   public void testFingerprintNoHardware_api21() throws Exception {
@@ -202,12 +353,13 @@ public class KeychainModuleTests {
     final KeychainModule module = new KeychainModule(context);
     final CipherStorage storage = module.getCipherStorageForCurrentAPILevel();
 
-    // THEN: expected Facebook cipher storage, its the only one that supports API19
+    // THEN: expected Facebook compatible cipher storage, its the only one that supports API19
     assertThat(storage, notNullValue());
-    assertThat(storage, instanceOf(CipherStorageFacebookConceal.class));
+    assertThat(storage, instanceOf(CipherStorageSoftwareAesGcm.class));
+    assertThat(storage.getCipherStorageName(), is(KnownCiphers.FB));
     assertThat(storage.isBiometrySupported(), is(false));
     assertThat(storage.securityLevel(), is(SecurityLevel.ANY));
-    assertThat(storage.getMinSupportedApiLevel(), is(Build.VERSION_CODES.JELLY_BEAN));
+    assertThat(storage.getMinSupportedApiLevel(), is(Build.VERSION_CODES.KITKAT));
     assertThat(storage.supportsSecureHardware(), is(false));
   }
 
@@ -302,26 +454,27 @@ public class KeychainModuleTests {
     final CipherStorage rsa = Mockito.mock(CipherStorage.class);
     when(rsa.getCipherStorageName()).thenReturn("dummy");
 
-    final CipherStorage.DecryptionResult decrypted = new CipherStorage.DecryptionResult("user", "password");
+    final CipherStorage.SecretBytes user = new CipherStorage.SecretBytes("user");
+    final CipherStorage.SecretBytes secret = new CipherStorage.SecretBytes("password");
     final CipherStorage.EncryptionResult encrypted = new CipherStorage.EncryptionResult("user".getBytes(), "password".getBytes(), rsa);
     final KeychainModule module = new KeychainModule(context);
     final SharedPreferences prefs = context.getSharedPreferences(PrefsStorage.KEYCHAIN_DATA, Context.MODE_PRIVATE);
 
     when(
-      rsa.encrypt(eq("dummy"), eq("user"), eq("password"), any())
+      rsa.encrypt(eq("dummy"), eq(user), eq(secret), any())
     ).thenReturn(encrypted);
 
-    // WHEN:
-    module.migrateCipherStorage("dummy", rsa, aes, decrypted);
+    // WHEN: entry encrypted by the recorded key of the old storage moved
+    module.migrateCipherStorage("dummy", rsa, aes, "KeystoreAESCBC#dummy", user, secret, SecurityLevel.ANY);
     final String username = prefs.getString(PrefsStorage.getKeyForUsername("dummy"), "");
     final String password = prefs.getString(PrefsStorage.getKeyForPassword("dummy"), "");
     final String cipherName = prefs.getString(PrefsStorage.getKeyForCipherStorage("dummy"), "");
 
     // THEN:
-    //   delete of key from old storage
+    //   delete of the recorded key from old storage
     //   re-store of encrypted data in shared preferences
-    verify(rsa).encrypt("dummy", "user", "password", SecurityLevel.ANY);
-    verify(aes).removeKey("dummy");
+    verify(rsa).encrypt("dummy", user, secret, SecurityLevel.ANY);
+    verify(aes).removeKey("KeystoreAESCBC#dummy");
 
     // Base64.DEFAULT force '\n' char in the end of string
     assertThat(username, is("dXNlcg==\n"));
@@ -329,6 +482,34 @@ public class KeychainModuleTests {
     assertThat(cipherName, is("dummy"));
   }
 
+  @Test
+  @Config(sdk = Build.VERSION_CODES.P)
+  public void testMigrateToBiometricUsesPerUseKey_api28() throws Exception {
+    // GIVEN: entry of the AES storage
+    final ReactApplicationContext context = getRNContext();
+    final KeychainModule module = new KeychainModule(context);
+    final PrefsStorage prefs = new PrefsStorage(context);
+    final CipherStorage aes = Mockito.mock(CipherStorage.class);
+    final CipherStorage rsa = Mockito.mock(CipherStorage.class);
+    when(aes.getCipherStorageName()).thenReturn(KnownCiphers.AES);
+    when(rsa.getCipherStorageName()).thenReturn(KnownCiphers.RSA);
+    when(rsa.isBiometrySupported()).thenReturn(true);
+    when(rsa.encrypt(any(String.class), any(CipherStorage.SecretBytes.class), any(CipherStorage.SecretBytes.class), any()))
+      .thenReturn(new CipherStorage.EncryptionResult(BYTES_USERNAME, BYTES_PASSWORD, rsa));
+    final CipherStorage.SecretBytes user = new CipherStorage.SecretBytes("user");
+    final CipherStorage.SecretBytes secret = new CipherStorage.SecretBytes("password");
+
+    // WHEN: entry upgraded to the biometric storage
+    module.migrateCipherStorage("dummy", rsa, aes, "dummy", user, secret, SecurityLevel.ANY);
+
+    // THEN: new key requires authentication for every use, its alias recorded by entry
+    final ArgumentCaptor<String> alias = ArgumentCaptor.forClass(String.class);
+    verify(rsa).encrypt(alias.capture(), eq(user), eq(secret), eq(SecurityLevel.ANY));
+    assertThat(CipherStorageKeystoreRsaEcb.isPerUseKey(alias.getValue()), is(true));
+    assertThat(prefs.getEncryptedEntry("dummy").keyAlias, is(alias.getValue()));
+    assertThat(prefs.getEncryptedEntry("dummy").cipherStorageName, is(KnownCiphers.RSA));
+  }
+
   @Test
   @Config(sdk = Build.VERSION_CODES.P)
   public void testGetSecurityLevel_Unspecified_api28() throws Exception {
@@ -425,14 +606,49 @@ public class KeychainModuleTests {
     module.getSecurityLevel(options, mockPromise);
 
     // THEN:
-    // expected AesCbc usage
+    // expected AesCbc usage, biometric storage is not even instantiated
     assertThat(provider.mocks.get("KeyGenerator"), notNullValue());
     assertThat(provider.mocks.get("KeyGenerator").get("AES"), notNullValue());
-    assertThat(provider.mocks.get("KeyPairGenerator"), notNullValue());
-    assertThat(provider.mocks.get("KeyPairGenerator").get("RSA"), notNullValue());
+    assertThat(module.isCipherStorageCreated(KnownCiphers.RSA), is(false));
     verify(mockPromise).resolve(SecurityLevel.SECURE_SOFTWARE.name());
   }
 
+  @Test
+  @Config(sdk = Build.VERSION_CODES.P)
+  public void testLazyCipherStorages_api28() throws Exception {
+    // GIVEN:
+    final ReactApplicationContext context = getRNContext();
+
+    // WHEN:
+    final KeychainModule module = new KeychainModule(context);
+
+    // THEN: nothing instantiated by constructor
+    assertThat(module.isCipherStorageCreated(KnownCiphers.FB), is(false));
+    assertThat(module.isCipherStorageCreated(KnownCiphers.AES), is(false));
+    assertThat(module.isCipherStorageCreated(KnownCiphers.RSA), is(false));
+
+    // WHEN: select storage without biometry
+    final CipherStorage storage = module.getCipherStorageForCurrentAPILevel(false);
+
+    // THEN: only selected storage instantiated
+    assertThat(storage, instanceOf(CipherStorageKeystoreAesCbc.class));
+    assertThat(module.isCipherStorageCreated(KnownCiphers.AES), is(true));
+    assertThat(module.isCipherStorageCreated(KnownCiphers.FB), is(false));
+    assertThat(module.isCipherStorageCreated(KnownCiphers.RSA), is(false));
+
+    // THEN: descriptors describe the real storages
+    for (String name : new String[]{KnownCiphers.FB, KnownCiphers.AES, KnownCiphers.RSA}) {
+      final CipherStorage instance = module.getCipherStorageByName(name);
+
+      assertThat(instance.getCipherStorageName(), is(name));
+    }
+    assertThat(module.getCipherStorageByName(KnownCiphers.FB).getMinSupportedApiLevel(), is(Build.VERSION_CODES.KITKAT));
+    assertThat(module.getCipherStorageByName(KnownCiphers.AES).getMinSupportedApiLevel(), is(Build.VERSION_CODES.M));
+    assertThat(module.getCipherStorageByName(KnownCiphers.RSA).getMinSupportedApiLevel(), is(Build.VERSION_CODES.M));
+    assertThat(module.getCipherStorageByName(KnownCiphers.RSA).isBiometrySupported(), is(true));
+    assertThat(module.getCipherStorageByName(KnownCiphers.AES).isBiometrySupported(), is(false));
+  }
+
   @Test
   @Config(sdk = Build.VERSION_CODES.P)
   public void testDowngradeBiometricToAes_api28() throws Exception {
@@ -465,4 +681,551 @@ public class KeychainModuleTests {
     assertThat(exception.getValue().getCause(), instanceOf(KeyStoreAccessException.class));
     assertThat(exception.getValue().getMessage(), is("Wrapped error: Empty key extracted!"));
   }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.P)
+  public void testNamespacedKeyAliases_api28() throws Exception {
+    // GIVEN:
+    final ReactApplicationContext context = getRNContext();
+    final KeychainModule module = new KeychainModule(context).setUseNamespacedKeys(true);
+    final PrefsStorage prefs = new PrefsStorage(context);
+    final CipherStorage aes = module.getCipherStorageByName(KnownCiphers.AES);
+    final CipherStorage rsa = module.getCipherStorageByName(KnownCiphers.RSA);
+    final CipherStorage fb = module.getCipherStorageByName(KnownCiphers.FB);
+    final CipherStorage.EncryptionResult result = new CipherStorage.EncryptionResult(BYTES_USERNAME, BYTES_PASSWORD, aes);
+
+    // THEN: storages never share keys of the same service
+    assertThat(module.getKeyAlias(aes, "dummy"), is("KeystoreAESCBC#dummy"));
+    assertThat(module.getKeyAlias(rsa, "dummy"), is("KeystoreRSAECB#dummy"));
+    assertThat(module.getKeyAlias(aes, ""), is("KeystoreAESCBC#RN_KEYCHAIN_DEFAULT_ALIAS"));
+    // Conceal has only one key, service name is kept for compatibility
+    assertThat(module.getKeyAlias(fb, "dummy"), is("dummy"));
+
+    // WHEN: legacy entry stored
+    prefs.storeEncryptedEntry("dummy", result);
+
+    // THEN: no key alias recorded
+    assertThat(prefs.getEncryptedEntry("dummy").keyAlias, is((String) null));
+
+    // WHEN: entry stored with namespaced key
+    prefs.storeEncryptedEntry("dummy", result, module.getKeyAlias(aes, "dummy"), 0);
+
+    // THEN: key alias recorded and cleaned up together with entry
+    assertThat(prefs.getEncryptedEntry("dummy").keyAlias, is("KeystoreAESCBC#dummy"));
+    prefs.removeEntry("dummy");
+    assertThat(context.getSharedPreferences(PrefsStorage.KEYCHAIN_DATA, Context.MODE_PRIVATE)
+      .contains(PrefsStorage.getKeyForKeyAlias("dummy")), is(false));
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.P)
+  public void testRotateKeysSkipsNotRotatableEntries_api28() throws Exception {
+    // GIVEN: entries of the shared key storage and of the biometric storage
+    final ReactApplicationContext context = getRNContext();
+    final KeychainModule module = new KeychainModule(context);
+    final PrefsStorage prefs = new PrefsStorage(context);
+    final CipherStorage aes = module.getCipherStorageByName(KnownCiphers.AES);
+    final CipherStorage rsa = module.getCipherStorageByName(KnownCiphers.RSA);
+    final CipherStorage fb = module.getCipherStorageByName(KnownCiphers.FB);
+    prefs.storeEncryptedEntry("conceal", new CipherStorage.EncryptionResult(BYTES_USERNAME, BYTES_PASSWORD, fb));
+    prefs.storeEncryptedEntry("biometric", new CipherStorage.EncryptionResult(BYTES_USERNAME, BYTES_PASSWORD, rsa));
+
+    // WHEN:
+    final KeyRotation rotation = new KeyRotation(module, prefs, 1, 0);
+    rotation.run();
+
+    // THEN: version increased, entries left untouched
+    assertThat(rotation.getKeyVersion(), is(1));
+    assertThat(rotation.getSkipped(), is(2));
+    assertThat(rotation.getReEncrypted(), is(0));
+    assertThat(prefs.getEncryptedEntry("biometric").keyVersion, is(0));
+    assertThat(module.getKeyVersion(aes), is(1));
+    assertThat(module.getKeyVersion(rsa), is(0));
+    assertThat(module.getKeyAlias(aes, "dummy", 1), is("KeystoreAESCBC#dummy#v1"));
+    assertThat(module.getKeyAlias(aes, "dummy", 0), is("dummy"));
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.P)
+  public void testRotateKeysKeepsEntriesReadable_api28() throws Exception {
+    // GIVEN: two entries encrypted by real AES keys
+    final ReactApplicationContext context = getRNContext();
+    final KeychainModule module = new KeychainModule(context);
+    final PrefsStorage prefs = new PrefsStorage(context);
+    final KeyStore keyStore = useJvmCrypto(module);
+    writePassword(module, "first", KnownCiphers.AES, "secret-1");
+    writePassword(module, "second", KnownCiphers.AES, "secret-2");
+    assertThat(readPassword(module, "first", Rules.NONE), is("secret-1"));
+
+    // WHEN: keys rotated one entry per batch, entries read between batches
+    final List<String> betweenBatches = new ArrayList<>();
+    final KeyRotation rotation = new KeyRotation(module, prefs, 1, 0);
+    rotation.setProgressListener((processed, total) -> {
+      if (processed != 1) return;
+
+      for (String service : new String[]{"first", "second"}) {
+        betweenBatches.add(prefs.getEncryptedEntry(service).keyVersion + ":" + readPassword(module, service, Rules.NONE));
+      }
+    });
+    rotation.run();
+
+    // THEN: one entry already on the new key, other one still on the old key, both readable
+    assertThat(betweenBatches.size(), is(2));
+    assertThat(betweenBatches.contains("1:secret-1") || betweenBatches.contains("1:secret-2"), is(true));
+    assertThat(betweenBatches.contains("0:secret-1") || betweenBatches.contains("0:secret-2"), is(true));
+
+    // THEN: both entries rotated and readable, old keys removed
+    assertThat(rotation.getReEncrypted(), is(2));
+    assertThat(prefs.getEncryptedEntry("first").keyAlias, is("KeystoreAESCBC#first#v1"));
+    assertThat(prefs.getEncryptedEntry("second").keyAlias, is("KeystoreAESCBC#second#v1"));
+    assertThat(readPassword(module, "first", Rules.NONE), is("secret-1"));
+    assertThat(readPassword(module, "second", Rules.NONE), is("secret-2"));
+    assertThat(Collections.list(keyStore.aliases()).contains("first"), is(false));
+    assertThat(Collections.list(keyStore.aliases()).contains("second"), is(false));
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.P)
+  public void testDestroyStopsBackgroundThreads_api28() throws Exception {
+    // GIVEN:
+    final ExecutorService executor = Executors.newSingleThreadExecutor();
+    final KeychainModule module = new KeychainModule(getRNContext(), executor).setKeyPoolCapacity(1);
+
+    // WHEN:
+    module.onCatalystInstanceDestroy();
+
+    // THEN: running work interrupted, new work rejected
+    assertThat(executor.isShutdown(), is(true));
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.P)
+  public void testBackgroundUpgradeMovesEntry_api28() throws Exception {
+    // GIVEN: entry of the software storage
+    final ReactApplicationContext context = getRNContext();
+    final QueuedExecutorService executor = new QueuedExecutorService();
+    final KeychainModule module = new KeychainModule(context, executor);
+    final PrefsStorage prefs = new PrefsStorage(context);
+    useJvmCrypto(module);
+    writePassword(module, "dummy", KnownCiphers.FB, "secret");
+
+    // WHEN: entry read twice with background upgrade
+    assertThat(readPassword(module, "dummy", Rules.BACKGROUND_UPGRADE), is("secret"));
+    assertThat(readPassword(module, "dummy", Rules.BACKGROUND_UPGRADE), is("secret"));
+
+    // THEN: one upgrade scheduled, entry is not moved by the read itself
+    assertThat(executor.size(), is(1));
+    assertThat(prefs.getEncryptedEntry("dummy").cipherStorageName, is(KnownCiphers.FB));
+
+    // WHEN:
+    executor.drain();
+
+    // THEN: entry moved to the best storage and stays readable
+    assertThat(prefs.getEncryptedEntry("dummy").cipherStorageName, is(KnownCiphers.AES));
+    assertThat(readPassword(module, "dummy", Rules.BACKGROUND_UPGRADE), is("secret"));
+    assertThat(executor.size(), is(0));
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.P)
+  public void testBackgroundUpgradeLosesToConcurrentWrite_api28() throws Exception {
+    // GIVEN: upgrade of the software entry scheduled by read
+    final ReactApplicationContext context = getRNContext();
+    final QueuedExecutorService executor = new QueuedExecutorService();
+    final KeychainModule module = new KeychainModule(context, executor).setUseNamespacedKeys(true);
+    final PrefsStorage prefs = new PrefsStorage(context);
+    final KeyStore keyStore = useJvmCrypto(module);
+    writePassword(module, "dummy", KnownCiphers.FB, "secret-1");
+    assertThat(readPassword(module, "dummy", Rules.BACKGROUND_UPGRADE), is("secret-1"));
+
+    // WHEN: entry overwritten before the upgrade runs
+    writePassword(module, "dummy", KnownCiphers.FB, "secret-2");
+    executor.drain();
+
+    // THEN: concurrent write wins, key generated by the upgrade removed
+    assertThat(prefs.getEncryptedEntry("dummy").cipherStorageName, is(KnownCiphers.FB));
+    assertThat(readPassword(module, "dummy", Rules.NONE), is("secret-2"));
+    assertThat(Collections.list(keyStore.aliases()).contains("KeystoreAESCBC#dummy"), is(false));
+    assertThat(module.getKeyJournal().isEmpty(), is(true));
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.P)
+  public void testReplaceEntryOnlyIfNotChanged_api28() throws Exception {
+    // GIVEN:
+    final ReactApplicationContext context = getRNContext();
+    final KeychainModule module = new KeychainModule(context);
+    final PrefsStorage prefs = new PrefsStorage(context);
+    final CipherStorage aes = module.getCipherStorageByName(KnownCiphers.AES);
+    final CipherStorage.EncryptionResult original = new CipherStorage.EncryptionResult(BYTES_USERNAME, BYTES_PASSWORD, aes);
+    final CipherStorage.EncryptionResult rotated = new CipherStorage.EncryptionResult(BYTES_PASSWORD, BYTES_USERNAME, aes);
+    prefs.storeEncryptedEntry("dummy", original);
+    final PrefsStorage.ResultSet expected = prefs.getEncryptedEntry("dummy");
+
+    // WHEN: entry overwritten concurrently
+    prefs.storeEncryptedEntry("dummy", rotated);
+
+    // THEN: rotation result rejected
+    assertThat(prefs.replaceEncryptedEntry("dummy", expected, original, "KeystoreAESCBC#dummy#v1", 1), is(false));
+    assertThat(prefs.getEncryptedEntry("dummy").keyVersion, is(0));
+
+    // WHEN/THEN: entry is the same, rotation result accepted
+    final PrefsStorage.ResultSet current = prefs.getEncryptedEntry("dummy");
+    assertThat(prefs.replaceEncryptedEntry("dummy", current, original, "KeystoreAESCBC#dummy#v1", 1), is(true));
+    assertThat(prefs.getEncryptedEntry("dummy").keyVersion, is(1));
+    assertThat(prefs.getEncryptedEntry("dummy").keyAlias, is("KeystoreAESCBC#dummy#v1"));
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.P)
+  public void testMigrationContinuesFromCursor_api28() throws Exception {
+    // GIVEN: migration interrupted after the first service
+    final ReactApplicationContext context = getRNContext();
+    final KeychainModule module = new KeychainModule(context);
+    final PrefsStorage prefs = new PrefsStorage(context);
+    final CipherStorage aes = module.getCipherStorageByName(KnownCiphers.AES);
+    final CipherStorage rsa = module.getCipherStorageByName(KnownCiphers.RSA);
+    prefs.storeEncryptedEntry("a-done", new CipherStorage.EncryptionResult(BYTES_USERNAME, BYTES_PASSWORD, aes));
+    prefs.storeEncryptedEntry("b-biometric", new CipherStorage.EncryptionResult(BYTES_USERNAME, BYTES_PASSWORD, rsa));
+    prefs.storeEncryptedEntry("c-best", new CipherStorage.EncryptionResult(BYTES_USERNAME, BYTES_PASSWORD, aes));
+    prefs.setMigrationCursor("a-done");
+    final List<Integer> progress = new ArrayList<>();
+
+    // WHEN:
+    final KeyMigration migration = new KeyMigration(module, prefs, 1, 0);
+    migration.setProgressListener((processed, total) -> progress.add(total));
+    migration.run();
+
+    // THEN: only services after the cursor processed, nothing to upgrade, cursor removed
+    assertThat(migration.getTargetStorageName(), is(KnownCiphers.AES));
+    assertThat(progress, is(Arrays.asList(2, 2)));
+    assertThat(migration.getSkipped(), is(2));
+    assertThat(migration.getReEncrypted(), is(0));
+    assertThat(migration.getFailed(), is(0));
+    assertThat(prefs.getMigrationCursor(), is((String) null));
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.P)
+  public void testMigrateAllRejectsWithoutStorage_api28() throws Exception {
+    // GIVEN: no storage is available for migration
+    final QueuedExecutorService executor = new QueuedExecutorService();
+    final KeychainModule module = Mockito.spy(new KeychainModule(getRNContext(), executor));
+    Mockito.doThrow(new CryptoFailedException("Unsupported Android SDK"))
+      .when(module).getCipherStorageForCurrentAPILevel(false);
+    final Promise promise = mock(Promise.class);
+
+    // WHEN:
+    module.migrateAll(null, promise);
+    executor.drain();
+
+    // THEN: crypto failure reported with own code
+    verify(promise).reject(eq(Errors.E_CRYPTO_FAILED), any(CryptoFailedException.class));
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.P)
+  public void testJournalKeepsReferencedKeys_api28() throws Exception {
+    // GIVEN: entry encrypted by service named key of the shared keystore
+    final ReactApplicationContext context = getRNContext();
+    final KeychainModule module = new KeychainModule(context);
+    final PrefsStorage prefs = new PrefsStorage(context);
+    final CipherStorage aes = module.getCipherStorageByName(KnownCiphers.AES);
+    final CipherStorage old = mock(CipherStorage.class);
+    when(old.getCipherStorageName()).thenReturn(KnownCiphers.RSA);
+    prefs.storeEncryptedEntry("dummy", new CipherStorage.EncryptionResult(BYTES_USERNAME, BYTES_PASSWORD, aes));
+    final KeyJournal journal = module.getKeyJournal();
+
+    // WHEN:
+    journal.removeKey(old, "dummy");
+    journal.removeKey(old, "unused");
+
+    // THEN: key of the stored entry kept, unused key removed, journal is clean
+    verify(old, never()).removeKey("dummy");
+    verify(old).removeKey("unused");
+    assertThat(journal.isEmpty(), is(true));
+    assertThat(journal.replay(), is(0));
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.P)
+  public void testRulesOptionIsRespected_api28() throws Exception {
+    // GIVEN:
+    final JavaOnlyMap options = new JavaOnlyMap();
+    options.putString(Maps.ACCESS_CONTROL, AccessControl.DEVICE_PASSCODE);
+
+    // WHEN/THEN: rules read from own option, not from access control
+    assertThat(KeychainModule.getSecurityRulesOrDefault(options), is(Rules.AUTOMATIC_UPGRADE));
+    options.putString(Maps.RULES, Rules.NONE);
+    assertThat(KeychainModule.getSecurityRulesOrDefault(options), is(Rules.NONE));
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.P)
+  public void testAccessControlPinnedPerEntry_api28() throws Exception {
+    // GIVEN: entry written without biometry, legacy entries without recorded access control
+    final ReactApplicationContext context = getRNContext();
+    final KeychainModule module = new KeychainModule(context);
+    final PrefsStorage prefs = new PrefsStorage(context);
+    final CipherStorage aes = module.getCipherStorageByName(KnownCiphers.AES);
+    final CipherStorage rsa = module.getCipherStorageByName(KnownCiphers.RSA);
+    prefs.storeEncryptedEntry("pinned", new CipherStorage.EncryptionResult(BYTES_USERNAME, BYTES_PASSWORD, aes),
+      null, 0, AccessControl.NONE);
+    prefs.storeEncryptedEntry("legacy", new CipherStorage.EncryptionResult(BYTES_USERNAME, BYTES_PASSWORD, aes));
+    prefs.storeEncryptedEntry("biometric", new CipherStorage.EncryptionResult(BYTES_USERNAME, BYTES_PASSWORD, rsa));
+
+    // WHEN: re-encryption keeps recorded access control
+    prefs.storeEncryptedEntry("pinned", new CipherStorage.EncryptionResult(BYTES_PASSWORD, BYTES_USERNAME, aes), null, 1);
+
+    // THEN: reads with biometry do not move entries between storages
+    assertThat(module.getPinnedAccessControl(prefs.getEncryptedEntry("pinned"), AccessControl.BIOMETRY_ANY),
+      is(AccessControl.NONE));
+    assertThat(module.getPinnedAccessControl(prefs.getEncryptedEntry("biometric"), AccessControl.NONE),
+      is(AccessControl.BIOMETRY_ANY));
+    assertThat(module.getPinnedAccessControl(prefs.getEncryptedEntry("legacy"), AccessControl.BIOMETRY_ANY),
+      is(AccessControl.BIOMETRY_ANY));
+
+    // WHEN/THEN: access control removed together with entry
+    prefs.removeEntry("pinned");
+    assertThat(context.getSharedPreferences(PrefsStorage.KEYCHAIN_DATA, Context.MODE_PRIVATE)
+      .contains(PrefsStorage.getKeyForAccessControl("pinned")), is(false));
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.P)
+  public void testEventListenerReceivesOperations_api28() throws Exception {
+    // GIVEN: module with listener, no stored entries
+    final ReactApplicationContext context = getRNContext();
+    final KeychainEventListener listener = mock(KeychainEventListener.class);
+    final KeychainModule module = new KeychainModule(context).setEventListener(listener);
+    final JavaOnlyMap options = new JavaOnlyMap();
+    options.putString(Maps.SERVICE, "secret-service");
+
+    // WHEN:
+    module.getGenericPasswordForOptions(options, mock(Promise.class));
+
+    // THEN: start and end events, service name is not exposed
+    final ArgumentCaptor<KeychainEvent> start = ArgumentCaptor.forClass(KeychainEvent.class);
+    final ArgumentCaptor<KeychainEvent> end = ArgumentCaptor.forClass(KeychainEvent.class);
+    verify(listener).onStart(start.capture());
+    verify(listener).onEnd(end.capture());
+
+    assertThat(start.getValue().operation, is(KeychainEvent.GET_GENERIC_PASSWORD));
+    assertThat(start.getValue().isStart(), is(true));
+    assertThat(start.getValue().serviceHash, is("secret-service".hashCode()));
+    assertThat(end.getValue().outcome, is(KeychainEvent.Outcome.NOT_FOUND));
+    assertThat(end.getValue().durationNanos > 0, is(true));
+
+    // WHEN: listener fails
+    Mockito.doThrow(new IllegalStateException("broken")).when(listener).onStart(any());
+    final Promise promise = mock(Promise.class);
+    module.resetGenericPasswordForOptions(options, promise);
+
+    // THEN: operation is not affected
+    verify(promise).resolve(true);
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.P)
+  public void testSyncReadRequiresNoInteraction_api28() throws Exception {
+    // GIVEN: no entry
+    final ReactApplicationContext context = getRNContext();
+    final KeychainModule module = new KeychainModule(context);
+    final JavaOnlyMap options = new JavaOnlyMap();
+    options.putString(Maps.SERVICE, "dummy");
+
+    // WHEN/THEN: nothing found
+    assertThat(module.getGenericPasswordForOptionsSync(options), nullValue());
+
+    // GIVEN: entry encrypted by biometric storage
+    final CipherStorage storage = module.getCipherStorageByName(KnownCiphers.RSA);
+    final Cipher mockCipher = Mockito.mock(Cipher.class);
+    ((CipherStorageBase) storage).setCipher(mockCipher);
+    new PrefsStorage(context).storeEncryptedEntry("dummy", new CipherStorage.EncryptionResult(BYTES_USERNAME, BYTES_PASSWORD, storage));
+
+    // WHEN:
+    final WritableMap result = module.getGenericPasswordForOptionsSync(options);
+
+    // THEN: error result instead of the prompt, cipher not touched
+    assertThat(result, notNullValue());
+    assertThat(result.getString(Maps.CODE), is(Errors.E_INTERACTION_REQUIRED));
+    Mockito.verifyNoInteractions(mockCipher);
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.P)
+  public void testLostKeyPurgesItsEntries_api28() throws Exception {
+    // GIVEN: two entries share one key, third one has own key
+    final ReactApplicationContext context = getRNContext();
+    final KeychainModule module = new KeychainModule(context);
+    final PrefsStorage prefs = new PrefsStorage(context);
+    final CipherStorage aes = module.getCipherStorageByName(KnownCiphers.AES);
+    final CipherStorage.EncryptionResult result = new CipherStorage.EncryptionResult(BYTES_USERNAME, BYTES_PASSWORD, aes);
+    prefs.storeEncryptedEntry("first", result, "shared", 0);
+    prefs.storeEncryptedEntry("second", result, "shared", 0);
+    prefs.storeEncryptedEntry("other", result);
+
+    // GIVEN: keystore cannot read any key
+    provider.faults.fail(FaultInjection.KEY_STORE_GET_KEY, () -> new UnrecoverableKeyException("Invalid key blob"));
+    final JavaOnlyMap options = new JavaOnlyMap();
+    options.putString(Maps.SERVICE, "first");
+    final Promise promise = mock(Promise.class);
+
+    // WHEN:
+    module.getGenericPasswordForOptions(options, promise);
+
+    // THEN: read resolved as missing entry, all entries of the lost key removed at once
+    verify(promise).resolve(false);
+    verify(promise, never()).reject(any(String.class), any(Throwable.class));
+    assertThat(prefs.getEncryptedEntry("first"), nullValue());
+    assertThat(prefs.getEncryptedEntry("second"), nullValue());
+    assertThat(prefs.getEncryptedEntry("other"), notNullValue());
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.P)
+  public void testLostDefaultKeyPurgesDefaultEntry_api28() throws Exception {
+    // GIVEN: entry without service encrypted by the default AES key
+    final ReactApplicationContext context = getRNContext();
+    final KeychainModule module = new KeychainModule(context);
+    final PrefsStorage prefs = new PrefsStorage(context);
+    final CipherStorage aes = module.getCipherStorageByName(KnownCiphers.AES);
+    prefs.storeEncryptedEntry("", new CipherStorage.EncryptionResult(BYTES_USERNAME, BYTES_PASSWORD, aes));
+    prefs.storeEncryptedEntry("other", new CipherStorage.EncryptionResult(BYTES_USERNAME, BYTES_PASSWORD, aes));
+
+    // GIVEN: keystore cannot read any key
+    provider.faults.fail(FaultInjection.KEY_STORE_GET_KEY, () -> new UnrecoverableKeyException("Invalid key blob"));
+    final Promise promise = mock(Promise.class);
+
+    // WHEN: read without service
+    module.getGenericPasswordForOptions(new JavaOnlyMap(), promise);
+
+    // THEN: entry of the default alias removed, read resolved as missing entry
+    verify(promise).resolve(false);
+    verify(promise, never()).reject(any(String.class), any(Throwable.class));
+    assertThat(prefs.getEncryptedEntry(""), nullValue());
+    assertThat(prefs.getEncryptedEntry("other"), notNullValue());
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.P)
+  public void testPrefetchServesFirstRead_api28() throws Exception {
+    // GIVEN: stored entry prefetched on the background executor
+    final ReactApplicationContext context = getRNContext();
+    final QueuedExecutorService executor = new QueuedExecutorService();
+    final KeychainModule module = new KeychainModule(context, executor);
+    useJvmCrypto(module);
+    writePassword(module, "dummy", KnownCiphers.AES, "secret");
+    module.setPrefetch(Collections.singletonList("dummy"));
+
+    // WHEN:
+    executor.drain();
+
+    // THEN: first read served from memory, second one decrypts the entry
+    assertThat(getPrefetchHits(module), is(0L));
+    assertThat(readPassword(module, "dummy", Rules.NONE), is("secret"));
+    assertThat(getPrefetchHits(module), is(1L));
+    assertThat(readPassword(module, "dummy", Rules.NONE), is("secret"));
+    assertThat(getPrefetchHits(module), is(1L));
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.P)
+  public void testPrefetchInvalidatedByChanges_api28() throws Exception {
+    // GIVEN: prefetched entry
+    final ReactApplicationContext context = getRNContext();
+    final QueuedExecutorService executor = new QueuedExecutorService();
+    final KeychainModule module = new KeychainModule(context, executor);
+    final PrefsStorage prefs = new PrefsStorage(context);
+    useJvmCrypto(module);
+    writePassword(module, "dummy", KnownCiphers.AES, "secret");
+    module.setPrefetch(Collections.singletonList("dummy"));
+    executor.drain();
+
+    // WHEN: entry overwritten
+    writePassword(module, "dummy", KnownCiphers.AES, "changed");
+
+    // THEN: read returns the new secret, not the prefetched one
+    assertThat(readPassword(module, "dummy", Rules.NONE), is("changed"));
+    assertThat(getPrefetchHits(module), is(0L));
+
+    // GIVEN: prefetched entry
+    final PrefsStorage.ResultSet stored = prefs.getEncryptedEntry("dummy");
+    module.setPrefetch(Collections.singletonList("dummy"));
+    executor.drain();
+
+    // WHEN: entry reset and the same bytes stored again
+    module.resetGenericPasswordForOptions(optionsOf("dummy", Rules.NONE), mock(Promise.class));
+    restoreEntry(module, prefs, "dummy", stored);
+    module.getGenericPasswordForOptions(optionsOf("dummy", Rules.NONE), mock(Promise.class));
+
+    // THEN: secret was wiped with the entry
+    assertThat(getPrefetchHits(module), is(0L));
+
+    // GIVEN: prefetched entry
+    writePassword(module, "dummy", KnownCiphers.AES, "secret");
+    final PrefsStorage.ResultSet written = prefs.getEncryptedEntry("dummy");
+    module.setPrefetch(Collections.singletonList("dummy"));
+    executor.drain();
+
+    // WHEN: entry purged with its lost key and the same bytes stored again
+    final CipherStorage aes = module.getCipherStorageByName(KnownCiphers.AES);
+    module.purgeEntriesOfLostKey(aes,
+      CipherStorageBase.getDefaultAliasIfEmpty(KeychainModule.getKeyAlias(written, "dummy"), aes.getDefaultAliasServiceName()));
+    assertThat(prefs.getEncryptedEntry("dummy"), nullValue());
+    restoreEntry(module, prefs, "dummy", written);
+
+    // THEN: entry decrypted again, secret was wiped with the entry
+    assertThat(readPassword(module, "dummy", Rules.NONE), is("secret"));
+    assertThat(getPrefetchHits(module), is(0L));
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.P)
+  public void testFailedReadLogsNoServiceName_api28() throws Exception {
+    // GIVEN: stored entry with truncated ciphertext
+    final String service = "my.secret.service";
+    final ReactApplicationContext context = getRNContext();
+    final KeychainModule module = new KeychainModule(context);
+    useJvmCrypto(module);
+    writePassword(module, service, KnownCiphers.AES, "secret");
+
+    final PrefsStorage prefs = new PrefsStorage(context);
+    final PrefsStorage.ResultSet stored = prefs.getEncryptedEntry(service);
+    final byte[] truncated = Arrays.copyOf(stored.password, 17);
+    final CipherStorage aes = module.getCipherStorageByName(KnownCiphers.AES);
+    prefs.storeEncryptedEntry(service, new CipherStorage.EncryptionResult(truncated, truncated, aes),
+      stored.keyAlias, stored.keyVersion);
+    ShadowLog.clear();
+
+    // WHEN:
+    final Promise promise = mock(Promise.class);
+    module.getGenericPasswordForOptions(optionsOf(service, Rules.NONE), promise);
+
+    // THEN: read rejected, neither messages nor failures expose the service name
+    verify(promise).reject(eq(Errors.E_CRYPTO_FAILED), any(CryptoFailedException.class));
+    assertThat(ShadowLog.getLogs().isEmpty(), is(false));
+
+    for (final ShadowLog.LogItem item : ShadowLog.getLogs()) {
+      assertThat(item.msg, item.msg.contains(service), is(false));
+
+      for (Throwable fail = item.throwable; null != fail; fail = fail.getCause()) {
+        assertThat(String.valueOf(fail.getMessage()).contains(service), is(false));
+      }
+    }
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.P)
+  public void testPackageCreatesModuleLazily_api28() throws Exception {
+    // GIVEN:
+    final KeychainPackage keychainPackage = new KeychainPackage();
+    final ReactModuleInfo info = keychainPackage.getReactModuleInfoProvider()
+      .getReactModuleInfos().get(KeychainModule.KEYCHAIN_MODULE);
+
+    // THEN: module is known, but not created on bridge start
+    assertThat(info, notNullValue());
+    assertThat(info.needsEagerInit(), is(false));
+    assertThat(keychainPackage.getModule("UnknownModule", getRNContext()), nullValue());
+  }
 }
@@ -0,0 +1,59 @@
+package com.oblador.keychain;
+
+import android.os.Build;
+
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestName;
+import org.junit.rules.Timeout;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+@RunWith(RobolectricTestRunner.class)
+public class MetricsTests {
+  /** Cancel test after 5 seconds. */
+  @ClassRule
+  public static Timeout timeout = Timeout.seconds(5);
+  /** Get test method name. */
+  @Rule
+  public TestName methodName = new TestName();
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.P)
+  public void testMetricsHistogram_api28() throws Exception {
+    // GIVEN: disabled metrics
+    final Metrics metrics = new Metrics();
+
+    // WHEN: phase measured
+    metrics.stop(Metrics.Phase.DECRYPT, metrics.start());
+
+    // THEN: nothing recorded, clock is not touched
+    assertThat(metrics.start(), is(0L));
+    assertThat(metrics.get(Metrics.Phase.DECRYPT).getCount(), is(0L));
+
+    // WHEN: durations recorded, 1ms..100ms
+    metrics.setEnabled(true);
+    final Metrics.Histogram histogram = metrics.get(Metrics.Phase.DECRYPT);
+    for (int i = 1; i <= 100; i++) {
+      histogram.record(i * 1_000_000L);
+    }
+
+    // THEN: percentiles are upper bounds within 2x error, never above max
+    assertThat(histogram.getCount(), is(100L));
+    assertThat(histogram.getMax(), is(100_000_000L));
+    assertThat(histogram.getPercentile(50) >= 50_000_000L, is(true));
+    assertThat(histogram.getPercentile(50) <= 100_000_000L, is(true));
+    assertThat(histogram.getPercentile(99), is(100_000_000L));
+    assertThat(metrics.get(Metrics.Phase.ENCRYPT).getCount(), is(0L));
+
+    // WHEN/THEN: reset drops everything
+    metrics.reset();
+    assertThat(histogram.getCount(), is(0L));
+    assertThat(histogram.getPercentile(50), is(0L));
+  }
+}
@@ -1,5 +1,7 @@
 package com.oblador.keychain;
 
+import android.os.Build;
+import android.security.keystore.KeyGenParameterSpec;
 import android.security.keystore.KeyInfo;
 
 import androidx.annotation.NonNull;
@@ -11,17 +13,21 @@ import org.mockito.Mockito;
 import java.security.Key;
 import java.security.KeyPair;
 import java.security.KeyPairGeneratorSpi;
-import java.security.NoSuchAlgorithmException;
+import java.security.KeyStore;
 import java.security.PrivateKey;
 import java.security.Provider;
-import java.security.UnrecoverableKeyException;
-import java.security.spec.InvalidKeySpecException;
+import java.security.SecureRandom;
+import java.security.spec.AlgorithmParameterSpec;
+import java.util.HashMap;
 import java.util.Map;
 
 import javax.crypto.SecretKey;
 
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.ArgumentMatchers.nullable;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.when;
 import static org.mockito.Mockito.withSettings;
 
@@ -49,26 +55,75 @@ public final class MocksForProvider {
   public final SecretKey secretKey = Mockito.mock(SecretKey.class, settings);
   public final Key key = Mockito.mock(Key.class, settings);
 
+  /** Configuration applied to mocks last time. Null - not configured yet. */
+  private Map<String, Object> applied;
+
   public void configure(@NonNull final String type, @NonNull final Provider provider, @Nullable final Map<String, Object> configuration) {
+    configure(type, provider, configuration, new FaultInjection());
+  }
+
+  public void configure(@NonNull final String type,
+                        @NonNull final Provider provider,
+                        @Nullable final Map<String, Object> configuration,
+                        @NonNull final FaultInjection faults) {
+    // stubbing is not thread safe, mocks may be in use by other threads; re-stub only on changes
+    final Map<String, Object> snapshot = (null == configuration) ? new HashMap<>() : new HashMap<>(configuration);
+    if (snapshot.equals(applied)) return;
+
     try {
-      innerConfiguration(type, provider, configuration);
+      innerConfiguration(type, provider, configuration, faults);
+      applied = snapshot;
     } catch (Throwable fail) {
       fail.printStackTrace(System.out);
     }
   }
 
-  private void innerConfiguration(@NonNull final String type, @NonNull final Provider provider, @Nullable final Map<String, Object> configuration)
-    throws InvalidKeySpecException, NoSuchAlgorithmException, UnrecoverableKeyException {
+  private void innerConfiguration(@NonNull final String type,
+                                  @NonNull final Provider provider,
+                                  @Nullable final Map<String, Object> configuration,
+                                  @NonNull final FaultInjection faults)
+    throws Exception {
     when(service.getProvider()).thenReturn(provider);
-    when(kpgSpi.generateKeyPair()).thenReturn(keyPair);
     when(keyPair.getPrivate()).thenReturn(privateKey);
 
     when(keyInfo.isInsideSecureHardware()).thenReturn(returnForIsInsideSecureHardware(configuration));
 
-    when(kgSpi.engineGenerateKey()).thenReturn(secretKey);
     when(skfSpi.engineGetKeySpec(any(), any())).thenReturn(keyInfo);
     when(kfSpi.engineGetKeySpec(any(), any())).thenReturn(keyInfo);
-    when(ksSpi.engineGetKey(any(), any())).thenReturn(key);
+
+    // operations with injectable latency and failures
+    when(kpgSpi.generateKeyPair()).thenAnswer(invocation -> {
+      faults.apply(FaultInjection.KEY_GENERATE);
+      return keyPair;
+    });
+    when(kgSpi.engineGenerateKey()).thenAnswer(invocation -> {
+      faults.apply(FaultInjection.KEY_GENERATE);
+      return secretKey;
+    });
+    doAnswer(invocation -> {
+      if (isStrongBoxBacked(invocation.getArgument(0))) faults.apply(FaultInjection.KEY_GENERATE_STRONGBOX);
+      return null;
+    }).when(kgSpi).engineInit(any(AlgorithmParameterSpec.class), nullable(SecureRandom.class));
+    doAnswer(invocation -> {
+      if (isStrongBoxBacked(invocation.getArgument(0))) faults.apply(FaultInjection.KEY_GENERATE_STRONGBOX);
+      return null;
+    }).when(kpgSpi).initialize(any(AlgorithmParameterSpec.class), nullable(SecureRandom.class));
+    when(ksSpi.engineGetKey(any(), any())).thenAnswer(invocation -> {
+      faults.apply(FaultInjection.KEY_STORE_GET_KEY);
+      return key;
+    });
+    when(ksSpi.engineContainsAlias(any())).thenAnswer(invocation -> {
+      faults.apply(FaultInjection.KEY_STORE_CONTAINS_ALIAS);
+      return false;
+    });
+    doAnswer(invocation -> {
+      faults.apply(FaultInjection.KEY_STORE_DELETE_ENTRY);
+      return null;
+    }).when(ksSpi).engineDeleteEntry(anyString());
+    doAnswer(invocation -> {
+      faults.apply(FaultInjection.KEY_STORE_LOAD);
+      return null;
+    }).when(ksSpi).engineLoad(nullable(KeyStore.LoadStoreParameter.class));
 
     switch (type) {
       case KEY_GENERATOR:
@@ -95,6 +150,13 @@ public final class MocksForProvider {
     }
   }
 
+  /** StrongBox flag of the keystore key specification, available since API28. */
+  private static boolean isStrongBoxBacked(@Nullable final AlgorithmParameterSpec spec) {
+    return Build.VERSION.SDK_INT >= Build.VERSION_CODES.P
+      && spec instanceof KeyGenParameterSpec
+      && ((KeyGenParameterSpec) spec).isStrongBoxBacked();
+  }
+
   private boolean returnForIsInsideSecureHardware(@Nullable final Map<String, Object> configuration) {
     return getBool(configuration, "isInsideSecureHardware", true);
   }
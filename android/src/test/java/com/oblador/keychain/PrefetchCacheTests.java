@@ -0,0 +1,63 @@
+package com.oblador.keychain;
+
+import android.os.Build;
+
+import com.oblador.keychain.KeychainModule.KnownCiphers;
+import com.oblador.keychain.cipherStorage.CipherStorage;
+
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestName;
+import org.junit.rules.Timeout;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static com.oblador.keychain.KeychainModuleTests.BYTES_PASSWORD;
+import static com.oblador.keychain.KeychainModuleTests.BYTES_USERNAME;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+@RunWith(RobolectricTestRunner.class)
+public class PrefetchCacheTests {
+  /** Cancel test after 5 seconds. */
+  @ClassRule
+  public static Timeout timeout = Timeout.seconds(5);
+  /** Get test method name. */
+  @Rule
+  public TestName methodName = new TestName();
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.P)
+  public void testPrefetchCacheServesOnce_api28() throws Exception {
+    // GIVEN: prefetched secret
+    final PrefetchCache cache = new PrefetchCache(60_000);
+    final PrefsStorage.ResultSet resultSet = new PrefsStorage.ResultSet(KnownCiphers.AES, BYTES_USERNAME, BYTES_PASSWORD);
+    final CipherStorage.SecretBytes username = new CipherStorage.SecretBytes();
+    final CipherStorage.SecretBytes password = new CipherStorage.SecretBytes();
+    cache.put("dummy", resultSet, new CipherStorage.SecretBytes("user"), new CipherStorage.SecretBytes("secret"));
+
+    // WHEN/THEN: entry overwritten since prefetch, secret is dropped
+    final PrefsStorage.ResultSet overwritten = new PrefsStorage.ResultSet(KnownCiphers.AES, BYTES_USERNAME, "other".getBytes());
+    assertThat(cache.take("dummy", overwritten, username, password), nullValue());
+    assertThat(cache.size(), is(0));
+
+    // WHEN: entry is unchanged
+    cache.put("dummy", resultSet, new CipherStorage.SecretBytes("user"), new CipherStorage.SecretBytes("secret"));
+    final String storageName = cache.take("dummy", resultSet, username, password);
+
+    // THEN: secret served only once
+    assertThat(storageName, is(KnownCiphers.AES));
+    assertThat(username.asString(), is("user"));
+    assertThat(password.asString(), is("secret"));
+    assertThat(cache.take("dummy", resultSet, username, password), nullValue());
+
+    // WHEN/THEN: expired secrets are wiped
+    final PrefetchCache expiring = new PrefetchCache(0);
+    expiring.put("dummy", resultSet, username, password);
+    expiring.evictExpired();
+    assertThat(expiring.size(), is(0));
+  }
+}
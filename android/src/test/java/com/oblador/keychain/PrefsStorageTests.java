@@ -0,0 +1,80 @@
+package com.oblador.keychain;
+
+import android.os.Build;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.oblador.keychain.KeychainModule.KnownCiphers;
+import com.oblador.keychain.cipherStorage.CipherStorage;
+
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestName;
+import org.junit.rules.Timeout;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@RunWith(RobolectricTestRunner.class)
+public class PrefsStorageTests {
+  /** Writes of the entry done by background thread. */
+  private static final int WRITES = 2_000;
+
+  /** Cancel test after 30 seconds. */
+  @ClassRule
+  public static Timeout timeout = Timeout.seconds(30);
+  /** Get test method name. */
+  @Rule
+  public TestName methodName = new TestName();
+
+  private ReactApplicationContext getRNContext() {
+    return new ReactApplicationContext(ApplicationProvider.getApplicationContext());
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.P)
+  public void testEntryReadDuringRewriteIsConsistent_api28() throws Exception {
+    // GIVEN: entry re-encrypted in background, each write pairs ciphertext with own key version
+    final PrefsStorage prefs = new PrefsStorage(getRNContext());
+    final CipherStorage storage = mock(CipherStorage.class);
+    when(storage.getCipherStorageName()).thenReturn(KnownCiphers.AES);
+    prefs.storeEncryptedEntry("dummy", new CipherStorage.EncryptionResult(new byte[]{0}, new byte[]{0}, storage));
+
+    final ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      final Future<?> writer = executor.submit(() -> {
+        for (int version = 1; version <= WRITES; version++) {
+          final byte[] bytes = new byte[]{(byte) version};
+          prefs.storeEncryptedEntry("dummy", new CipherStorage.EncryptionResult(bytes, bytes, storage),
+            "dummy#v" + version, version);
+        }
+      });
+
+      // WHEN: entry read while writes are in progress
+      while (!writer.isDone()) {
+        final PrefsStorage.ResultSet entry = prefs.getEncryptedEntry("dummy");
+
+        // THEN: every field comes from the same write
+        assertThat(entry, notNullValue());
+        assertThat((byte) entry.keyVersion, is(entry.password[0]));
+        assertThat(entry.keyAlias, is(0 == entry.keyVersion ? null : "dummy#v" + entry.keyVersion));
+      }
+
+      writer.get();
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}
@@ -0,0 +1,30 @@
+package com.oblador.keychain;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.JavaOnlyArray;
+import com.facebook.react.bridge.JavaOnlyMap;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+
+import org.robolectric.annotation.Implementation;
+import org.robolectric.annotation.Implements;
+
+/**
+ * Native maps of the bridge need JNI libraries that are not available in unit tests, results
+ * are created as plain java maps instead.
+ * <pre>
+ * {@literal @}Config(shadows = ShadowArguments.class, instrumentedPackages = "com.facebook.react.bridge")
+ * </pre>
+ */
+@Implements(Arguments.class)
+public final class ShadowArguments {
+  @Implementation
+  public static WritableMap createMap() {
+    return new JavaOnlyMap();
+  }
+
+  @Implementation
+  public static WritableArray createArray() {
+    return new JavaOnlyArray();
+  }
+}
@@ -0,0 +1,47 @@
+package com.oblador.keychain;
+
+import android.os.Build;
+
+import com.oblador.keychain.KeychainModule.Rules;
+
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestName;
+import org.junit.rules.Timeout;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+@RunWith(RobolectricTestRunner.class)
+public class UpgradePolicyTests {
+  /** Cancel test after 5 seconds. */
+  @ClassRule
+  public static Timeout timeout = Timeout.seconds(5);
+  /** Get test method name. */
+  @Rule
+  public TestName methodName = new TestName();
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.P)
+  public void testUpgradePolicyDecisions_api28() throws Exception {
+    // GIVEN:
+    final UpgradePolicy policy = new UpgradePolicy();
+
+    // WHEN/THEN: without measurements budgeted upgrade goes to background
+    assertThat(policy.decide(Rules.NONE, 16), is(UpgradePolicy.Decision.SKIP));
+    assertThat(policy.decide(Rules.AUTOMATIC_UPGRADE, 16), is(UpgradePolicy.Decision.ON_READ));
+    assertThat(policy.decide(Rules.BACKGROUND_UPGRADE, 16), is(UpgradePolicy.Decision.BACKGROUND));
+    assertThat(policy.decide(Rules.UPGRADE_WITHIN_BUDGET, 16), is(UpgradePolicy.Decision.BACKGROUND));
+
+    // WHEN: upgrade took 5ms
+    policy.recordCost(5_000_000L);
+
+    // THEN: it fits into one frame, but not into one millisecond
+    assertThat(policy.decide(Rules.UPGRADE_WITHIN_BUDGET, 16), is(UpgradePolicy.Decision.ON_READ));
+    assertThat(policy.decide(Rules.UPGRADE_WITHIN_BUDGET, 1), is(UpgradePolicy.Decision.BACKGROUND));
+  }
+}
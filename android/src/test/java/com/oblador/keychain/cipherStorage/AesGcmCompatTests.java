@@ -0,0 +1,107 @@
+package com.oblador.keychain.cipherStorage;
+
+import android.os.Build;
+
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestName;
+import org.junit.rules.Timeout;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.security.Key;
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.crypto.BadPaddingException;
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+@RunWith(RobolectricTestRunner.class)
+public class AesGcmCompatTests {
+  /** Cancel test after 5 seconds. */
+  @ClassRule
+  public static Timeout timeout = Timeout.seconds(5);
+  /** Get test method name. */
+  @Rule
+  public TestName methodName = new TestName();
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.JELLY_BEAN)
+  public void testSameOutputAsPlatformGcm_api16() throws Exception {
+    // fixed seed, failures are reproducible
+    final Random random = new Random(42);
+
+    // partial blocks, exact blocks and empty values of both data and additional data
+    for (int length = 0; length <= 48; length++) {
+      // GIVEN:
+      final byte[] rawKey = new byte[32];
+      final byte[] iv = new byte[12];
+      final byte[] aad = new byte[length % 19];
+      final byte[] plain = new byte[length];
+      random.nextBytes(rawKey);
+      random.nextBytes(iv);
+      random.nextBytes(aad);
+      random.nextBytes(plain);
+      final Key key = new SecretKeySpec(rawKey, "AES");
+
+      final Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding", "SunJCE");
+      cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(128, iv));
+      cipher.updateAAD(aad);
+      final byte[] expected = cipher.doFinal(plain);
+
+      // WHEN:
+      final byte[] sealed = new byte[1 + length + 16];
+      final int written = AesGcmCompat.seal(key, iv, aad, plain, 0, length, sealed, 1);
+      final byte[] opened = new byte[length];
+      final int read = AesGcmCompat.open(key, iv, aad, expected, 0, expected.length, opened, 0);
+
+      // THEN: encrypted data and tag are identical, decryption restores the input
+      assertThat(written, is(expected.length));
+      assertThat(Arrays.equals(Arrays.copyOfRange(sealed, 1, 1 + written), expected), is(true));
+      assertThat(read, is(length));
+      assertThat(Arrays.equals(opened, plain), is(true));
+    }
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.JELLY_BEAN)
+  public void testTamperedInputRejected_api16() throws Exception {
+    // GIVEN: sealed value
+    final Key key = new SecretKeySpec(new byte[32], "AES");
+    final byte[] iv = new byte[12];
+    final byte[] aad = "entity".getBytes("UTF-8");
+    final byte[] plain = "secret".getBytes("UTF-8");
+    final byte[] sealed = new byte[plain.length + 16];
+    AesGcmCompat.seal(key, iv, aad, plain, 0, plain.length, sealed, 0);
+
+    for (int i = 0; i < sealed.length; i++) {
+      // WHEN: any bit flipped, in data or in tag
+      final byte[] tampered = sealed.clone();
+      tampered[i] ^= 1;
+      final byte[] output = new byte[plain.length];
+
+      // THEN: nothing decrypted
+      try {
+        AesGcmCompat.open(key, iv, aad, tampered, 0, tampered.length, output, 0);
+        throw new AssertionError("Tampered byte " + i + " accepted.");
+      } catch (BadPaddingException expected) {
+        assertThat(Arrays.equals(output, new byte[plain.length]), is(true));
+      }
+    }
+
+    // WHEN/THEN: other additional data rejected
+    try {
+      AesGcmCompat.open(key, iv, "other".getBytes("UTF-8"), sealed, 0, sealed.length, new byte[plain.length], 0);
+      throw new AssertionError("Other entity accepted.");
+    } catch (BadPaddingException expected) {
+      // tag mismatch
+    }
+  }
+}
@@ -0,0 +1,247 @@
+package com.oblador.keychain.cipherStorage;
+
+import android.os.Build;
+
+import com.oblador.keychain.cipherStorage.CipherStorage.SecretBytes;
+
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestName;
+import org.junit.rules.Timeout;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.security.AlgorithmParameters;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.Key;
+import java.security.SecureRandom;
+import java.security.spec.AlgorithmParameterSpec;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.crypto.BadPaddingException;
+import javax.crypto.Cipher;
+import javax.crypto.CipherSpi;
+import javax.crypto.IllegalBlockSizeException;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.SecretKeySpec;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+
+@RunWith(RobolectricTestRunner.class)
+public class CipherStorageBaseTests {
+  /** Mix of ASCII, 2-byte, 3-byte and surrogate pair characters. */
+  private static final String SECRET = "pässw€rd-😀-0123456789";
+
+  /** Cancel test after 30 seconds. */
+  @ClassRule
+  public static Timeout timeout = Timeout.seconds(30);
+  /** Get test method name. */
+  @Rule
+  public TestName methodName = new TestName();
+
+  private final Key key = new SecretKeySpec(new byte[32], "AES");
+
+  /** AES storage that uses JRE implementation of the cipher instead of AndroidKeyStore. */
+  private CipherStorageKeystoreAesCbc getJreBackedStorage() throws Exception {
+    final CipherStorageKeystoreAesCbc storage = new CipherStorageKeystoreAesCbc();
+    storage.setCipher(Cipher.getInstance("AES/CBC/PKCS5Padding", "SunJCE"));
+
+    return storage;
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.P)
+  public void testEncryptDecryptRoundTrip_api28() throws Exception {
+    final CipherStorageKeystoreAesCbc storage = getJreBackedStorage();
+
+    final byte[] encrypted = storage.encryptString(key, SECRET);
+    final String decrypted = storage.decryptBytes(key, encrypted);
+
+    // IV + padded cipher text
+    assertThat(encrypted.length, is(CipherStorageBase.IV.IV_LENGTH + 32));
+    assertThat(decrypted, is(SECRET));
+    assertThat(storage.decryptBytes(key, storage.encryptString(key, "")), is(""));
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.P)
+  public void testSecretBytesRoundTrip_api28() throws Exception {
+    final CipherStorageKeystoreAesCbc storage = getJreBackedStorage();
+    final SecretBytes input = new SecretBytes(SECRET);
+    final SecretBytes output = new SecretBytes();
+
+    // WHEN: encrypt and decrypt without strings
+    final byte[] encrypted = storage.encryptBytes(key, input);
+    storage.decryptBytes(key, encrypted, output);
+
+    // THEN: same UTF-8 encoding as JRE, compatible with string based API
+    assertThat(Arrays.copyOf(input.buffer(), input.length()), is(SECRET.getBytes(CipherStorageBase.UTF8)));
+    assertThat(storage.decryptBytes(key, encrypted), is(SECRET));
+    assertThat(new String(output.toChars()), is(SECRET));
+    assertThat(output.asString(), is(SECRET));
+
+    // THEN: wipe erases plain text
+    output.wipe();
+    assertThat(output.length(), is(0));
+    for (byte b : output.buffer()) {
+      assertThat(b, is((byte) 0));
+    }
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.P)
+  public void testEncryptDecryptWithoutCopies_api28() throws Exception {
+    // GIVEN: storage with a cipher that records buffers passed to it
+    final RecordingCipherSpi spi = new RecordingCipherSpi(Cipher.getInstance("AES/CBC/PKCS5Padding", "SunJCE"));
+    final CipherStorageKeystoreAesCbc storage = new CipherStorageKeystoreAesCbc();
+    storage.setCipher(new Cipher(spi, Cipher.getInstance("AES").getProvider(), "AES/CBC/PKCS5Padding") {
+    });
+    final byte[] plain = SECRET.getBytes(CipherStorageBase.UTF8);
+
+    // WHEN: encrypt
+    final byte[] encrypted = storage.encryptString(key, SECRET);
+
+    // THEN: output sized by cipher and written in place, no stream or trimming copy
+    assertThat(spi.sizedInputs, contains(plain.length));
+    assertThat(spi.doFinals, is(1));
+    assertThat(spi.updates, is(0));
+    assertThat(spi.output, sameInstance(encrypted));
+    assertThat(spi.outputOffset, is(CipherStorageBase.IV.IV_LENGTH));
+    final byte[] pooledInput = spi.input;
+
+    // WHEN: encrypt once again
+    spi.reset();
+    storage.encryptString(key, SECRET);
+
+    // THEN: plain text encoded into the same thread confined buffer
+    assertThat(spi.input, sameInstance(pooledInput));
+
+    // WHEN: decrypt into secret bytes with enough capacity
+    final SecretBytes output = new SecretBytes();
+    final byte[] buffer = output.ensureCapacity(encrypted.length);
+    spi.reset();
+    storage.decryptBytes(key, encrypted, output);
+
+    // THEN: encrypted bytes and output buffer go directly to the cipher
+    assertThat(spi.sizedInputs, contains(encrypted.length - CipherStorageBase.IV.IV_LENGTH));
+    assertThat(spi.doFinals, is(1));
+    assertThat(spi.updates, is(0));
+    assertThat(spi.input, sameInstance(encrypted));
+    assertThat(spi.output, sameInstance(buffer));
+    assertThat(output.buffer(), sameInstance(buffer));
+    assertThat(output.asString(), is(SECRET));
+  }
+
+  /** Delegates to a real cipher and remembers how it was called. */
+  private static final class RecordingCipherSpi extends CipherSpi {
+    private final Cipher delegate;
+    /** Input lengths passed to {@link Cipher#getOutputSize(int)}. */
+    final List<Integer> sizedInputs = new ArrayList<>();
+    int updates;
+    int doFinals;
+    byte[] input;
+    byte[] output;
+    int outputOffset;
+
+    RecordingCipherSpi(final Cipher delegate) {
+      this.delegate = delegate;
+    }
+
+    void reset() {
+      sizedInputs.clear();
+      updates = doFinals = outputOffset = 0;
+      input = output = null;
+    }
+
+    @Override
+    protected void engineSetMode(final String mode) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    protected void engineSetPadding(final String padding) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    protected int engineGetBlockSize() {
+      return delegate.getBlockSize();
+    }
+
+    @Override
+    protected int engineGetOutputSize(final int inputLen) {
+      sizedInputs.add(inputLen);
+      return delegate.getOutputSize(inputLen);
+    }
+
+    @Override
+    protected byte[] engineGetIV() {
+      return delegate.getIV();
+    }
+
+    @Override
+    protected AlgorithmParameters engineGetParameters() {
+      return delegate.getParameters();
+    }
+
+    @Override
+    protected void engineInit(final int opmode, final Key key, final SecureRandom random)
+      throws InvalidKeyException {
+      delegate.init(opmode, key, random);
+    }
+
+    @Override
+    protected void engineInit(final int opmode, final Key key, final AlgorithmParameterSpec params,
+                              final SecureRandom random)
+      throws InvalidKeyException, InvalidAlgorithmParameterException {
+      delegate.init(opmode, key, params, random);
+    }
+
+    @Override
+    protected void engineInit(final int opmode, final Key key, final AlgorithmParameters params,
+                              final SecureRandom random)
+      throws InvalidKeyException, InvalidAlgorithmParameterException {
+      delegate.init(opmode, key, params, random);
+    }
+
+    @Override
+    protected byte[] engineUpdate(final byte[] input, final int offset, final int length) {
+      updates++;
+      return delegate.update(input, offset, length);
+    }
+
+    @Override
+    protected int engineUpdate(final byte[] input, final int offset, final int length,
+                               final byte[] output, final int outputOffset)
+      throws ShortBufferException {
+      updates++;
+      return delegate.update(input, offset, length, output, outputOffset);
+    }
+
+    @Override
+    protected byte[] engineDoFinal(final byte[] input, final int offset, final int length)
+      throws IllegalBlockSizeException, BadPaddingException {
+      // result array is allocated by cipher, not expected from storage
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    protected int engineDoFinal(final byte[] input, final int offset, final int length,
+                                final byte[] output, final int outputOffset)
+      throws ShortBufferException, IllegalBlockSizeException, BadPaddingException {
+      doFinals++;
+      this.input = input;
+      this.output = output;
+      this.outputOffset = outputOffset;
+      return delegate.doFinal(input, offset, length, output, outputOffset);
+    }
+  }
+}
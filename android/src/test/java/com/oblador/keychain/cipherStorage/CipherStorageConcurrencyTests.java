@@ -0,0 +1,216 @@
+package com.oblador.keychain.cipherStorage;
+
+import android.os.Build;
+
+import androidx.annotation.NonNull;
+
+import com.oblador.keychain.FakeProvider;
+import com.oblador.keychain.SecurityLevel;
+import com.oblador.keychain.cipherStorage.CipherStorage.EncryptionResult;
+import com.oblador.keychain.cipherStorage.CipherStorage.SecretBytes;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestName;
+import org.junit.rules.Timeout;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.security.Key;
+import java.security.KeyStore;
+import java.security.Security;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.when;
+
+/**
+ * Stress tests of the lazy caches and shared instances of the storages. All threads are released
+ * at once on each round, so first access of the fresh storage happens concurrently.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class CipherStorageConcurrencyTests {
+  /** Threads that hit the storage at the same time. */
+  private static final int THREADS = 8;
+  /** Fresh storage instances per test, each one is a new chance to catch the race. */
+  private static final int ROUNDS = 50;
+  /** Encrypt/decrypt pairs per thread. */
+  private static final int ITERATIONS = 200;
+
+  /** Cancel test after 60 seconds. */
+  @ClassRule
+  public static Timeout timeout = Timeout.seconds(60);
+  /** Get test method name. */
+  @Rule
+  public TestName methodName = new TestName();
+
+  private final FakeProvider provider = new FakeProvider();
+  private final Key key = new SecretKeySpec(new byte[32], "AES");
+  private ExecutorService executor;
+
+  @Before
+  public void setUp() throws Exception {
+    Security.insertProviderAt(provider, 0);
+    executor = Executors.newFixedThreadPool(THREADS);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    executor.shutdownNow();
+    executor.awaitTermination(5, TimeUnit.SECONDS);
+    Security.removeProvider(FakeProvider.NAME);
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.P)
+  public void testCachedInstancesPublishedOnce_api28() throws Exception {
+    for (int round = 0; round < ROUNDS; round++) {
+      for (final CipherStorageBase storage : createStorages()) {
+        // WHEN: first access from all threads at once
+        final List<Cipher> ciphers = runConcurrently(storage::getCachedInstance);
+        final List<KeyStore> keyStores = runConcurrently(storage::getKeyStoreAndLoad);
+
+        // THEN: every thread got the same fully initialized instance
+        for (int i = 0; i < THREADS; i++) {
+          assertThat(ciphers.get(i), notNullValue());
+          assertThat(ciphers.get(i), sameInstance(ciphers.get(0)));
+          assertThat(keyStores.get(i), sameInstance(keyStores.get(0)));
+          assertThat(keyStores.get(i).size(), is(0));
+        }
+      }
+    }
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.P)
+  public void testSecureHardwareResolvedOnce_api28() throws Exception {
+    for (int round = 0; round < ROUNDS; round++) {
+      // GIVEN: fake provider reports keys inside of secure hardware
+      final CipherStorageBase storage = new CipherStorageKeystoreAesCbc();
+
+      // WHEN: capability requested from all threads at once
+      final List<Boolean> results = runConcurrently(storage::supportsSecureHardware);
+
+      // THEN: no thread observes the value before probe is finished
+      for (final Boolean result : results) {
+        assertThat(result, is(true));
+      }
+    }
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.P)
+  public void testSharedCipherRoundTrips_api28() throws Exception {
+    for (final CipherStorageBase storage : createJreBackedStorages()) {
+      // WHEN: all threads encrypt and decrypt own secrets with the shared cipher instance
+      final List<Integer> verified = runConcurrently(() -> {
+        final String secret = "secret-of-" + Thread.currentThread().getName();
+        int count = 0;
+
+        for (int i = 0; i < ITERATIONS; i++) {
+          final String password = secret + "-" + i;
+          final EncryptionResult result = storage.encrypt("dummy", "user", password, SecurityLevel.ANY);
+
+          try (final SecretBytes username = new SecretBytes();
+               final SecretBytes plain = new SecretBytes()) {
+            storage.decrypt("dummy", result.username, result.password, SecurityLevel.ANY, username, plain);
+
+            assertThat(username.asString(), is("user"));
+            assertThat(plain.asString(), is(password));
+            count++;
+          }
+        }
+
+        return count;
+      });
+
+      // THEN: no corrupted or failed operation
+      for (final Integer count : verified) {
+        assertThat(count, is(ITERATIONS));
+      }
+    }
+  }
+
+  //region Helpers
+
+  /** Storages with ciphers and keystore from the fake provider. */
+  @NonNull
+  private List<CipherStorageBase> createStorages() {
+    final List<CipherStorageBase> storages = new ArrayList<>();
+    storages.add(new CipherStorageKeystoreAesCbc());
+    storages.add(new CipherStorageKeystoreRsaEcb());
+    storages.add(new CipherStorageSoftwareAesGcm(RuntimeEnvironment.application));
+
+    return storages;
+  }
+
+  /** Storages with JRE ciphers, fake provider mocks do not encrypt anything. */
+  @NonNull
+  private List<CipherStorageBase> createJreBackedStorages() throws Exception {
+    final KeyStore mockKeyStore = Mockito.mock(KeyStore.class);
+    when(mockKeyStore.containsAlias(any())).thenReturn(true);
+    when(mockKeyStore.getKey(any(), isNull())).thenReturn(key);
+
+    final List<CipherStorageBase> storages = new ArrayList<>();
+    storages.add(new CipherStorageKeystoreAesCbc()
+      .setCipher(Cipher.getInstance("AES/CBC/PKCS5Padding", "SunJCE"))
+      .setKeyStore(mockKeyStore));
+
+    // software storage keeps its key in preferences, generated on first use
+    storages.add(new CipherStorageSoftwareAesGcm(RuntimeEnvironment.application)
+      .setCipher(Cipher.getInstance(CipherStorageSoftwareAesGcm.ENCRYPTION_TRANSFORMATION, "SunJCE")));
+
+    return storages;
+  }
+
+  /** Run the task by all threads released at the same moment, results in threads order. */
+  @NonNull
+  private <T> List<T> runConcurrently(@NonNull final Callable<T> task) throws Exception {
+    final CyclicBarrier start = new CyclicBarrier(THREADS);
+    final List<Future<T>> futures = new ArrayList<>(THREADS);
+
+    for (int i = 0; i < THREADS; i++) {
+      futures.add(executor.submit(() -> {
+        start.await();
+        return task.call();
+      }));
+    }
+
+    final List<T> results = new ArrayList<>(THREADS);
+    for (final Future<T> future : futures) {
+      try {
+        results.add(future.get());
+      } catch (ExecutionException e) {
+        final Throwable cause = e.getCause();
+        if (cause instanceof Exception) throw (Exception) cause;
+        if (cause instanceof Error) throw (Error) cause;
+        throw e;
+      }
+    }
+
+    return results;
+  }
+  //endregion
+}
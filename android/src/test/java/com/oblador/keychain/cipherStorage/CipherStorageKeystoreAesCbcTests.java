@@ -1,10 +1,16 @@
 package com.oblador.keychain.cipherStorage;
 
 import android.os.Build;
+import android.security.keystore.StrongBoxUnavailableException;
 
 import com.facebook.react.bridge.ReactApplicationContext;
 import com.oblador.keychain.FakeProvider;
+import com.oblador.keychain.FaultInjection;
+import com.oblador.keychain.Metrics;
 import com.oblador.keychain.SecurityLevel;
+import com.oblador.keychain.cipherStorage.CipherStorage.DecryptionResult;
+import com.oblador.keychain.cipherStorage.CipherStorage.EncryptionResult;
+import com.oblador.keychain.cipherStorage.CipherStorageBase.KeyLossListener;
 
 import org.junit.After;
 import org.junit.Before;
@@ -23,12 +29,26 @@ import org.robolectric.RuntimeEnvironment;
 import org.robolectric.annotation.Config;
 
 import java.security.Key;
+import java.security.KeyStore;
 import java.security.Security;
+import java.security.UnrecoverableKeyException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import javax.crypto.Cipher;
 import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 @RunWith(RobolectricTestRunner.class)
 public class CipherStorageKeystoreAesCbcTests {
@@ -70,4 +90,117 @@ public class CipherStorageKeystoreAesCbcTests {
 
     assertThat(level, is(SecurityLevel.SECURE_HARDWARE));
   }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.P)
+  public void testKeyHandleCached_api28() throws Exception {
+    // GIVEN: keystore with existing key and JRE implementation of the cipher
+    final CipherStorageKeystoreAesCbc instance = new CipherStorageKeystoreAesCbc();
+    final KeyStore mockKeyStore = Mockito.mock(KeyStore.class);
+    final Key key = new SecretKeySpec(new byte[32], "AES");
+
+    when(mockKeyStore.containsAlias("dummy")).thenReturn(true);
+    when(mockKeyStore.getKey(eq("dummy"), isNull())).thenReturn(key);
+    instance.setCipher(Cipher.getInstance("AES/CBC/PKCS5Padding", "SunJCE")).setKeyStore(mockKeyStore);
+
+    // WHEN: several operations with the same alias
+    final EncryptionResult encrypted = instance.encrypt("dummy", "user", "password", SecurityLevel.ANY);
+    instance.decrypt("dummy", encrypted.username, encrypted.password, SecurityLevel.ANY);
+    final DecryptionResult decrypted = instance.decrypt("dummy", encrypted.username, encrypted.password, SecurityLevel.ANY);
+
+    // THEN: key extracted from keystore only once
+    assertThat(decrypted.username, is("user"));
+    assertThat(decrypted.password, is("password"));
+    verify(mockKeyStore, times(1)).getKey(eq("dummy"), isNull());
+
+    // WHEN: key removed
+    instance.removeKey("dummy");
+    instance.decrypt("dummy", encrypted.username, encrypted.password, SecurityLevel.ANY);
+
+    // THEN: cache invalidated, key extracted again
+    verify(mockKeyStore, times(2)).getKey(eq("dummy"), isNull());
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.P)
+  public void testRetryOnInvalidKeyBlob_api28() throws Exception {
+    // GIVEN: keystore reports broken key once
+    provider.faults.failTimes(FaultInjection.KEY_STORE_GET_KEY, 1,
+      () -> new UnrecoverableKeyException("Invalid key blob"));
+    final Metrics metrics = new Metrics();
+    final KeyLossListener listener = Mockito.mock(KeyLossListener.class);
+    final CipherStorageKeystoreAesCbc instance = new CipherStorageKeystoreAesCbc();
+    instance.setMetrics(metrics).setKeyLossListener(listener);
+
+    // WHEN:
+    final Key key = instance.extractGeneratedKey("dummy", SecurityLevel.ANY, new AtomicInteger(1));
+
+    // THEN: transient failure, key read again after backoff and kept
+    assertThat(key, notNullValue());
+    assertThat(provider.faults.getCalls(FaultInjection.KEY_STORE_GET_KEY), is(2));
+    assertThat(provider.faults.getCalls(FaultInjection.KEY_STORE_DELETE_ENTRY), is(0));
+    assertThat(provider.faults.getCalls(FaultInjection.KEY_GENERATE), is(1));
+    assertThat(metrics.get(Metrics.Counter.KEY_READ_RETRY), is(1L));
+    assertThat(metrics.get(Metrics.Counter.KEY_RECOVERED), is(1L));
+    assertThat(metrics.get(Metrics.Counter.KEY_LOST), is(0L));
+    Mockito.verifyNoInteractions(listener);
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.P)
+  public void testNoRetriesLeftOnInvalidKeyBlob_api28() throws Exception {
+    // GIVEN: keystore reports broken key always
+    provider.faults.fail(FaultInjection.KEY_STORE_GET_KEY, () -> new UnrecoverableKeyException("Invalid key blob"));
+    final Metrics metrics = new Metrics();
+    final KeyLossListener listener = Mockito.mock(KeyLossListener.class);
+    final CipherStorageKeystoreAesCbc instance = new CipherStorageKeystoreAesCbc();
+    instance.setMetrics(metrics).setKeyLossListener(listener);
+
+    // WHEN/THEN: all reads fail, key deleted and regenerated once, then the failure is raised
+    try {
+      instance.extractGeneratedKey("dummy", SecurityLevel.ANY, new AtomicInteger(1));
+      fail("Broken key is not reported");
+    } catch (UnrecoverableKeyException expected) {
+      assertThat(provider.faults.getCalls(FaultInjection.KEY_STORE_GET_KEY), is(2 * CipherStorageBase.KEY_READ_ATTEMPTS));
+      assertThat(provider.faults.getCalls(FaultInjection.KEY_STORE_DELETE_ENTRY), is(1));
+      assertThat(metrics.get(Metrics.Counter.KEY_READ_RETRY), is(2L * (CipherStorageBase.KEY_READ_ATTEMPTS - 1)));
+      assertThat(metrics.get(Metrics.Counter.KEY_RECOVERED), is(0L));
+      assertThat(metrics.get(Metrics.Counter.KEY_LOST), is(1L));
+      verify(listener).onKeyLost(instance, "dummy");
+    }
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.P)
+  public void testStrongBoxFailureFallsBackToRegularKey_api28() throws Exception {
+    // GIVEN: device without StrongBox chip
+    provider.faults.fail(FaultInjection.KEY_GENERATE_STRONGBOX, StrongBoxUnavailableException::new);
+    final CipherStorageKeystoreAesCbc instance = new CipherStorageKeystoreAesCbc();
+
+    // WHEN: two keys generated
+    instance.generateKeyAndStoreUnderAlias("first", SecurityLevel.ANY);
+    instance.generateKeyAndStoreUnderAlias("second", SecurityLevel.ANY);
+
+    // THEN: StrongBox probed only once, both keys generated in regular way
+    assertThat(provider.faults.getCalls(FaultInjection.KEY_GENERATE_STRONGBOX), is(1));
+    assertThat(provider.faults.getCalls(FaultInjection.KEY_GENERATE), is(2));
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.P)
+  public void testSlowKeystoreVisibleInMetrics_api28() throws Exception {
+    // GIVEN: slow keystore binder call
+    provider.faults.latency(FaultInjection.KEY_STORE_GET_KEY, FaultInjection.fixed(20));
+    final Metrics metrics = new Metrics();
+    metrics.setEnabled(true);
+    final CipherStorageKeystoreAesCbc instance = new CipherStorageKeystoreAesCbc();
+    instance.setMetrics(metrics);
+
+    // WHEN:
+    instance.extractGeneratedKey("dummy", SecurityLevel.ANY, new AtomicInteger(1));
+
+    // THEN: latency is attributed to the key extraction phase
+    assertThat(metrics.get(Metrics.Phase.KEY_EXTRACT).getCount(), is(1L));
+    assertThat(metrics.get(Metrics.Phase.KEY_EXTRACT).getMax(), greaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(20)));
+  }
 }
@@ -4,12 +4,17 @@ import android.content.Context;
 import android.content.pm.PackageManager;
 import android.hardware.fingerprint.FingerprintManager;
 import android.os.Build;
+import android.security.keystore.KeyGenParameterSpec;
 
+import androidx.annotation.NonNull;
 import androidx.biometric.BiometricManager;
 
 import com.facebook.react.bridge.ReactApplicationContext;
 import com.oblador.keychain.FakeProvider;
 import com.oblador.keychain.SecurityLevel;
+import com.oblador.keychain.cipherStorage.CipherStorage.DecryptionContext;
+import com.oblador.keychain.cipherStorage.CipherStorage.DecryptionResult;
+import com.oblador.keychain.cipherStorage.CipherStorage.EncryptionResult;
 
 import org.junit.After;
 import org.junit.Before;
@@ -28,12 +33,23 @@ import org.robolectric.RuntimeEnvironment;
 import org.robolectric.annotation.Config;
 
 import java.security.Key;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.KeyStore;
 import java.security.Security;
+import java.security.cert.Certificate;
+import java.util.concurrent.atomic.AtomicReference;
 
+import javax.crypto.Cipher;
 import javax.crypto.SecretKey;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.when;
 import static org.robolectric.Shadows.shadowOf;
 
 @RunWith(RobolectricTestRunner.class)
@@ -99,4 +115,83 @@ public class CipherStorageKeystoreRsaEcbTests {
     assertThat(storage.supportsSecureHardware(), is(true));
   }
 
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.P)
+  public void testAuthValidityKeptInKeyAlias_api28() throws Exception {
+    // GIVEN:
+    final CipherStorageKeystoreRsaEcb instance = new CipherStorageKeystoreRsaEcb();
+
+    // WHEN:
+    final String alias = CipherStorageKeystoreRsaEcb.getKeyAliasWithAuthValidity("dummy", 30);
+    final KeyGenParameterSpec spec = instance.getKeyGenSpecBuilder(alias).build();
+
+    // THEN: custom validity honored by the key, default keeps legacy alias
+    assertThat(alias, is("KeystoreRSAECB#dummy#auth30"));
+    assertThat(spec.getUserAuthenticationValidityDurationSeconds(), is(30));
+    assertThat(CipherStorageKeystoreRsaEcb.getKeyAliasWithAuthValidity("dummy", 1), is("dummy"));
+    assertThat(CipherStorageKeystoreRsaEcb.getAuthValidity("dummy"), is(1));
+    assertThat(instance.getKeyGenSpecBuilder("dummy").build().getUserAuthenticationValidityDurationSeconds(), is(1));
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.P)
+  public void testAuthValidityMarkerTrustedOnlyInNamespace_api28() throws Exception {
+    // WHEN/THEN: legacy keys are named by services, marker-like service name is not a marker
+    assertThat(CipherStorageKeystoreRsaEcb.getAuthValidity("dummy#auth0"), is(1));
+    assertThat(CipherStorageKeystoreRsaEcb.isPerUseKey("dummy#auth0"), is(false));
+    assertThat(CipherStorageKeystoreRsaEcb.getAuthValidity("KeystoreRSAECB#auth0"), is(1));
+
+    // WHEN/THEN: generated aliases are namespaced, the last marker wins
+    assertThat(CipherStorageKeystoreRsaEcb.getKeyAliasWithAuthValidity("dummy#auth0", 30), is("KeystoreRSAECB#dummy#auth0#auth30"));
+    assertThat(CipherStorageKeystoreRsaEcb.getAuthValidity("KeystoreRSAECB#dummy#auth0#auth30"), is(30));
+    assertThat(CipherStorageKeystoreRsaEcb.getKeyAliasWithAuthValidity("", 0), is("KeystoreRSAECB#KeystoreRSAECB#auth0"));
+
+    // WHEN/THEN: namespaced service that looks like marked alias gets explicit legacy marker
+    final String legacy = CipherStorageKeystoreRsaEcb.getKeyAliasWithAuthValidity("KeystoreRSAECB#dummy#auth0", 1);
+    assertThat(legacy, is("KeystoreRSAECB#dummy#auth0#auth1"));
+    assertThat(CipherStorageKeystoreRsaEcb.getAuthValidity(legacy), is(1));
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.P)
+  public void testPerUseKeyDecryptsOnceWithAuthorizedCipher_api28() throws Exception {
+    // GIVEN: per-use key pair served by mocked keystore, JRE implementation of ciphers
+    Security.removeProvider(FakeProvider.NAME);
+
+    final CipherStorageKeystoreRsaEcb instance = new CipherStorageKeystoreRsaEcb();
+    final KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+    generator.initialize(2048);
+    final KeyPair pair = generator.generateKeyPair();
+    final KeyStore mockKeyStore = Mockito.mock(KeyStore.class);
+    final Certificate mockCertificate = Mockito.mock(Certificate.class);
+    final String alias = CipherStorageKeystoreRsaEcb.getKeyAliasWithAuthValidity("dummy", 0);
+
+    when(mockCertificate.getPublicKey()).thenReturn(pair.getPublic());
+    when(mockKeyStore.containsAlias(alias)).thenReturn(true);
+    when(mockKeyStore.getCertificate(alias)).thenReturn(mockCertificate);
+    when(mockKeyStore.getKey(eq(alias), isNull())).thenReturn(pair.getPrivate());
+    instance.setCipher(Cipher.getInstance("RSA/ECB/PKCS1Padding", "SunJCE")).setKeyStore(mockKeyStore);
+
+    final EncryptionResult encrypted = instance.encrypt(alias, "user", "password", SecurityLevel.ANY);
+    final AtomicReference<DecryptionContext> asked = new AtomicReference<>();
+    final CipherStorageKeystoreRsaEcb.NonInteractiveHandler handler = new CipherStorageKeystoreRsaEcb.NonInteractiveHandler() {
+      @Override
+      public void askAccessPermissions(@NonNull final DecryptionContext context) {
+        asked.set(context);
+      }
+    };
+
+    // WHEN: no decryption attempt before user authorization
+    instance.decrypt(handler, alias, encrypted.username, encrypted.password, SecurityLevel.ANY);
+
+    // THEN: initialized cipher handed over to the prompt, one decryption after authorization
+    assertThat(handler.getError(), nullValue());
+    assertThat(asked.get().cipher, notNullValue());
+
+    final DecryptionResult decrypted = instance.decrypt(asked.get().cipher, asked.get());
+    assertThat(decrypted.username, is("user"));
+    assertThat(decrypted.password, is("password"));
+    assertThat(instance.getKeyGenSpecBuilder(alias).build().getUserAuthenticationValidityDurationSeconds(), is(-1));
+  }
 }
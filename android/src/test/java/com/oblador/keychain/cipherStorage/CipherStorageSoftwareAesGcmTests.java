@@ -0,0 +1,197 @@
+package com.oblador.keychain.cipherStorage;
+
+import android.content.Context;
+import android.os.Build;
+import android.util.Base64;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import com.oblador.keychain.SecurityLevel;
+import com.oblador.keychain.cipherStorage.CipherStorage.DecryptionResult;
+import com.oblador.keychain.cipherStorage.CipherStorage.EncryptionResult;
+import com.oblador.keychain.cipherStorage.CipherStorage.SecretBytes;
+import com.oblador.keychain.exceptions.CryptoFailedException;
+
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestName;
+import org.junit.rules.Timeout;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.Arrays;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+
+@RunWith(RobolectricTestRunner.class)
+public class CipherStorageSoftwareAesGcmTests {
+  /** Cancel test after 5 seconds. */
+  @ClassRule
+  public static Timeout timeout = Timeout.seconds(5);
+  /** Get test method name. */
+  @Rule
+  public TestName methodName = new TestName();
+
+  // vectors produced by the Conceal 1.1.3 native library, CryptoConfig.KEY_256 and key 0..31:
+  // crypto.encrypt(bytes, Entity.create(entity))
+
+  /** Conceal output of "user" for entity "RN_KEYCHAIN:dummyuser". */
+  private static final String CONCEAL_USERNAME = "AQIQERITFBUWFxgZGhsIjf1kL7eWzZVQ/c5+JsrNZnIpHg==";
+  /** Conceal output of "pässword" for entity "RN_KEYCHAIN:dummypass". */
+  private static final String CONCEAL_PASSWORD = "AQIgISIjJCUmJygpKiui+QIDH+91fH4iPR0siD5lcoQ70X+6KYAl";
+  /** Conceal output of empty string for entity "RN_KEYCHAIN:user". */
+  private static final String CONCEAL_EMPTY_USERNAME = "AQIwMTIzNDU2Nzg5Oju7LsWMKuWWY1Ud4kIs1JvU";
+  /** Conceal output of empty string for entity "RN_KEYCHAIN:pass". */
+  private static final String CONCEAL_EMPTY_PASSWORD = "AQJAQUJDREVGR0hJSkvio1xkM2qjJmmYJtAO7aao";
+
+  private final byte[] rawKey = new byte[]{
+    0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15,
+    16, 17, 18, 19, 20, 21, 22, 23, 24, 25, 26, 27, 28, 29, 30, 31};
+
+  private Context getContext() {
+    return ApplicationProvider.getApplicationContext();
+  }
+
+  /** Emulate key stored by Conceal {@code SharedPrefsBackedKeyChain}. */
+  private void storeConcealKey() {
+    getContext()
+      .getSharedPreferences("crypto.KEY_256", Context.MODE_PRIVATE)
+      .edit()
+      .putString("cipher_key", Base64.encodeToString(rawKey, Base64.DEFAULT))
+      .commit();
+  }
+
+  private static byte[] decode(final String vector) {
+    return Base64.decode(vector, Base64.DEFAULT);
+  }
+
+  /** Decrypt vectors produced by Conceal. */
+  private void assertDecryptsConcealData() throws Exception {
+    storeConcealKey();
+    final CipherStorageSoftwareAesGcm storage = new CipherStorageSoftwareAesGcm(getContext());
+
+    final DecryptionResult result = storage.decrypt("dummy",
+      decode(CONCEAL_USERNAME), decode(CONCEAL_PASSWORD), SecurityLevel.ANY);
+
+    assertThat(result.username, is("user"));
+    assertThat(result.password, is("pässword"));
+
+    // empty service and empty values
+    final DecryptionResult empty = storage.decrypt("",
+      decode(CONCEAL_EMPTY_USERNAME), decode(CONCEAL_EMPTY_PASSWORD), SecurityLevel.ANY);
+
+    assertThat(empty.username, is(""));
+    assertThat(empty.password, is(""));
+
+    // entity is part of authenticated data, entry of other service is rejected
+    try {
+      storage.decrypt("other", decode(CONCEAL_USERNAME), decode(CONCEAL_PASSWORD), SecurityLevel.ANY);
+      throw new AssertionError("Entry of other service accepted.");
+    } catch (CryptoFailedException expected) {
+      // tag mismatch
+    }
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.KITKAT)
+  public void testDecryptConcealData_api19() throws Exception {
+    assertDecryptsConcealData();
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.JELLY_BEAN)
+  public void testDecryptConcealData_api16() throws Exception {
+    assertDecryptsConcealData();
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.JELLY_BEAN)
+  public void testEncryptInConcealFormat_api16() throws Exception {
+    // GIVEN: platform without GCM in JCA
+    storeConcealKey();
+    final CipherStorageSoftwareAesGcm storage = new CipherStorageSoftwareAesGcm(getContext());
+
+    // WHEN:
+    final EncryptionResult result = storage.encrypt("dummy", "user", "pässword", SecurityLevel.ANY);
+
+    // THEN: header + IV + data + tag, readable by the same GCM as Conceal uses
+    assertThat(result.username.length, is(2 + 12 + 4 + 16));
+    assertThat(result.username[0], is((byte) 1));
+    assertThat(result.username[1], is((byte) 2));
+
+    final Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding", "SunJCE");
+    cipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(rawKey, "AES"),
+      new GCMParameterSpec(128, Arrays.copyOfRange(result.password, 2, 14)));
+    cipher.updateAAD(new byte[]{1, 2});
+    cipher.updateAAD("RN_KEYCHAIN:dummypass".getBytes("UTF-8"));
+    final byte[] plain = cipher.doFinal(result.password, 14, result.password.length - 14);
+
+    assertThat(new String(plain, "UTF-8"), is("pässword"));
+
+    // WHEN/THEN: round trip, tampered data rejected
+    assertThat(storage.decrypt("dummy", result.username, result.password, SecurityLevel.ANY).password, is("pässword"));
+
+    result.password[result.password.length - 1] ^= 1;
+    try {
+      storage.decrypt("dummy", result.username, result.password, SecurityLevel.ANY);
+      throw new AssertionError("Tampered data accepted.");
+    } catch (CryptoFailedException expected) {
+      // tag mismatch
+    }
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.KITKAT)
+  public void testEncryptInConcealFormat_api19() throws Exception {
+    // GIVEN:
+    storeConcealKey();
+    final CipherStorageSoftwareAesGcm storage = new CipherStorageSoftwareAesGcm(getContext());
+
+    // WHEN:
+    final EncryptionResult result = storage.encrypt("dummy", new SecretBytes("user"), new SecretBytes("password"), SecurityLevel.ANY);
+
+    // THEN: header + IV + data + tag, readable by Conceal key and entity
+    assertThat(result.username.length, is(2 + 12 + 4 + 16));
+    assertThat(result.username[0], is((byte) 1));
+    assertThat(result.username[1], is((byte) 2));
+
+    final Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+    cipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(rawKey, "AES"),
+      new GCMParameterSpec(128, Arrays.copyOfRange(result.password, 2, 14)));
+    cipher.updateAAD(new byte[]{1, 2});
+    cipher.updateAAD("RN_KEYCHAIN:dummypass".getBytes("UTF-8"));
+    final byte[] plain = cipher.doFinal(result.password, 14, result.password.length - 14);
+
+    assertThat(new String(plain, "UTF-8"), is("password"));
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.KITKAT)
+  public void testGenerateKeyOnFirstUse_api19() throws Exception {
+    // GIVEN: no key stored yet
+    final CipherStorageSoftwareAesGcm storage = new CipherStorageSoftwareAesGcm(getContext());
+    final SecretBytes username = new SecretBytes();
+    final SecretBytes password = new SecretBytes();
+
+    // WHEN:
+    final EncryptionResult result = storage.encrypt("dummy", "user", "password", SecurityLevel.ANY);
+    storage.decrypt("dummy", result.username, result.password, SecurityLevel.ANY, username, password);
+
+    // THEN: key persisted in Conceal compatible way, round trip works
+    final String stored = getContext()
+      .getSharedPreferences("crypto.KEY_256", Context.MODE_PRIVATE)
+      .getString("cipher_key", null);
+    assertThat(stored, notNullValue());
+    assertThat(Base64.decode(stored, Base64.DEFAULT).length, is(32));
+    assertThat(username.asString(), is("user"));
+    assertThat(password.asString(), is("password"));
+  }
+}
@@ -0,0 +1,139 @@
+package com.oblador.keychain.cipherStorage;
+
+import android.os.Build;
+
+import com.oblador.keychain.SecurityLevel;
+import com.oblador.keychain.exceptions.CryptoFailedException;
+
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.rules.TestName;
+import org.junit.rules.Timeout;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.security.Key;
+import java.security.KeyStore;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.when;
+
+@RunWith(RobolectricTestRunner.class)
+public class FileCipherTests {
+  /** Cancel test after 5 seconds. */
+  @ClassRule
+  public static Timeout timeout = Timeout.seconds(5);
+  /** Get test method name. */
+  @Rule
+  public TestName methodName = new TestName();
+  /** Folder for input/output files. */
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  /** Files cipher with small chunks, wrapping key served by mocked keystore. */
+  private FileCipher createFileCipher() throws Exception {
+    final CipherStorageKeystoreAesCbc storage = new CipherStorageKeystoreAesCbc();
+    final KeyStore mockKeyStore = Mockito.mock(KeyStore.class);
+    final Key key = new SecretKeySpec(new byte[32], "AES");
+
+    when(mockKeyStore.containsAlias(any())).thenReturn(true);
+    when(mockKeyStore.getKey(any(), isNull())).thenReturn(key);
+    storage.setCipher(Cipher.getInstance("AES/CBC/PKCS5Padding", "SunJCE")).setKeyStore(mockKeyStore);
+
+    return new FileCipher(storage, 16);
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.P)
+  public void testRoundTripInChunks_api28() throws Exception {
+    // GIVEN:
+    final FileCipher cipher = createFileCipher();
+    final byte[] data = new byte[50];
+    new Random(42).nextBytes(data);
+    final List<Long> progress = new ArrayList<>();
+
+    // WHEN:
+    final ByteArrayOutputStream encrypted = new ByteArrayOutputStream();
+    cipher.encrypt("dummy", new ByteArrayInputStream(data), encrypted, data.length,
+      SecurityLevel.ANY, (processed, total) -> progress.add(processed));
+    final ByteArrayOutputStream decrypted = new ByteArrayOutputStream();
+    cipher.decrypt("dummy", new ByteArrayInputStream(encrypted.toByteArray()), decrypted,
+      encrypted.size(), null);
+
+    // THEN: four chunks reported, data restored
+    assertThat(progress, is(Arrays.asList(16L, 32L, 48L, 50L)));
+    assertThat(decrypted.toByteArray(), is(data));
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.P)
+  public void testTruncatedFileRejected_api28() throws Exception {
+    // GIVEN: file without the last chunk
+    final FileCipher cipher = createFileCipher();
+    final ByteArrayOutputStream encrypted = new ByteArrayOutputStream();
+    cipher.encrypt("dummy", new ByteArrayInputStream(new byte[32]), encrypted, 32, SecurityLevel.ANY, null);
+    final byte[] bytes = encrypted.toByteArray();
+    final byte[] truncated = Arrays.copyOf(bytes, bytes.length - (1 + 4 + 12 + 16 + 16));
+
+    // WHEN/THEN:
+    try {
+      cipher.decrypt("dummy", new ByteArrayInputStream(truncated), new ByteArrayOutputStream(), truncated.length, null);
+      fail("Truncation is not detected");
+    } catch (CryptoFailedException expected) {
+      assertThat(expected.getMessage(), is("File is truncated"));
+    }
+  }
+
+  @Test
+  @Config(sdk = Build.VERSION_CODES.P)
+  public void testTamperedFileLeavesNoOutput_api28() throws Exception {
+    // GIVEN: encrypted file with one flipped bit
+    final FileCipher cipher = createFileCipher();
+    final File plain = folder.newFile("plain.bin");
+    final File sealed = new File(folder.getRoot(), "sealed.bin");
+    final File restored = new File(folder.getRoot(), "restored.bin");
+
+    try (final FileOutputStream out = new FileOutputStream(plain)) {
+      out.write(new byte[40]);
+    }
+    cipher.encryptFile(cipher.getKeyAlias("dummy"), plain, sealed, SecurityLevel.ANY, null);
+
+    try (final RandomAccessFile file = new RandomAccessFile(sealed, "rw")) {
+      file.seek(file.length() - 1);
+      final int last = file.read();
+      file.seek(file.length() - 1);
+      file.write(last ^ 1);
+    }
+
+    // WHEN:
+    try {
+      cipher.decryptFile(cipher.getKeyAlias("dummy"), sealed, restored, null);
+      fail("Tampering is not detected");
+    } catch (CryptoFailedException expected) {
+      // THEN: neither output, nor temporary file left
+      assertThat(restored.exists(), is(false));
+      assertThat(new File(restored.getPath() + ".tmp").exists(), is(false));
+    }
+    assertThat(cipher.getKeyAlias("dummy"), is("KeystoreAESCBC#files#dummy"));
+  }
+}
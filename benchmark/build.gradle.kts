@@ -0,0 +1,49 @@
+// JMH micro-benchmarks of the cipher storages. Run on a plain JVM:
+//   ./KeychainExample/android/gradlew -p . :benchmark:jmh
+// Results are stored in benchmark/build/reports/jmh/results.json
+
+plugins {
+  java
+  /* https://github.com/melix/jmh-gradle-plugin */
+  id("me.champeau.gradle.jmh") version "0.5.0"
+}
+
+java {
+  sourceCompatibility = JavaVersion.VERSION_1_8
+  targetCompatibility = JavaVersion.VERSION_1_8
+}
+
+evaluationDependsOn(":library")
+
+val library = project(":library")
+
+/* compiled classes of the library, the same classes Robolectric tests run on */
+val libraryClasses = files("${library.buildDir}/intermediates/javac/release/classes") {
+  builtBy(":library:compileReleaseJavaWithJavac")
+}
+
+/* classes jars of the library dependencies, extracted from AARs by the android plugin */
+val libraryDependencies = library.configurations.getByName("releaseCompileClasspath").incoming.artifactView {
+  attributes {
+    attribute(Attribute.of("artifactType", String::class.java), "android-classes-jar")
+  }
+}.files
+
+dependencies {
+  jmhImplementation(libraryClasses)
+  jmhImplementation(libraryDependencies)
+
+  /* JVM implementation of the Android framework classes, http://robolectric.org/ */
+  jmhImplementation("org.robolectric:android-all:9-robolectric-4913185-2")
+}
+
+jmh {
+  jmhVersion = "1.23"
+  fork = 1
+  warmupIterations = 3
+  iterations = 5
+  /* allocations per operation: gc.alloc.rate.norm */
+  profilers = listOf("gc")
+  resultFormat = "JSON"
+  duplicateClassesStrategy = DuplicatesStrategy.EXCLUDE
+}
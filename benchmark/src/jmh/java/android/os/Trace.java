@@ -0,0 +1,17 @@
+package android.os;
+
+/**
+ * JVM replacement of the framework Trace, takes precedence over the android-all copy. The
+ * framework class reads system properties through native methods in its static initializer,
+ * that are not available on a plain JVM. Sections are not recorded.
+ */
+public final class Trace {
+  private Trace() {
+  }
+
+  public static void beginSection(final String sectionName) {
+  }
+
+  public static void endSection() {
+  }
+}
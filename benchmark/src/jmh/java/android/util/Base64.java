@@ -0,0 +1,31 @@
+package android.util;
+
+/**
+ * JVM replacement of the framework Base64, takes precedence over the android-all copy. The
+ * framework decoder calls a libcore only overload of {@code System.arraycopy}, that exists on
+ * devices and under Robolectric instrumentation, but not on a plain JVM. Output format of
+ * {@link #DEFAULT} is the same: lines of 76 chars, each one terminated by '\n'.
+ */
+public final class Base64 {
+  public static final int DEFAULT = 0;
+  public static final int NO_WRAP = 2;
+
+  private static final java.util.Base64.Encoder WRAPPING = java.util.Base64.getMimeEncoder(76, new byte[]{'\n'});
+
+  private Base64() {
+  }
+
+  public static String encodeToString(final byte[] input, final int flags) {
+    if (NO_WRAP == (flags & NO_WRAP)) {
+      return java.util.Base64.getEncoder().encodeToString(input);
+    }
+
+    final String encoded = WRAPPING.encodeToString(input);
+
+    return encoded.isEmpty() ? encoded : encoded + '\n';
+  }
+
+  public static byte[] decode(final String str, final int flags) {
+    return java.util.Base64.getMimeDecoder().decode(str);
+  }
+}
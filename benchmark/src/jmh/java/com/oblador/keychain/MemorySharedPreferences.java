@@ -0,0 +1,147 @@
+package com.oblador.keychain;
+
+import android.content.SharedPreferences;
+
+import androidx.annotation.Nullable;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/** Map based preferences, keeps disk I/O out of the encode/decode measurements. */
+public final class MemorySharedPreferences implements SharedPreferences {
+  private final Map<String, Object> values = new HashMap<>();
+
+  @Override
+  public Map<String, ?> getAll() {
+    return new HashMap<>(values);
+  }
+
+  @Nullable
+  @Override
+  public String getString(final String key, @Nullable final String defValue) {
+    final Object value = values.get(key);
+    return null == value ? defValue : (String) value;
+  }
+
+  @SuppressWarnings("unchecked")
+  @Nullable
+  @Override
+  public Set<String> getStringSet(final String key, @Nullable final Set<String> defValues) {
+    final Object value = values.get(key);
+    return null == value ? defValues : (Set<String>) value;
+  }
+
+  @Override
+  public int getInt(final String key, final int defValue) {
+    final Object value = values.get(key);
+    return null == value ? defValue : (Integer) value;
+  }
+
+  @Override
+  public long getLong(final String key, final long defValue) {
+    final Object value = values.get(key);
+    return null == value ? defValue : (Long) value;
+  }
+
+  @Override
+  public float getFloat(final String key, final float defValue) {
+    final Object value = values.get(key);
+    return null == value ? defValue : (Float) value;
+  }
+
+  @Override
+  public boolean getBoolean(final String key, final boolean defValue) {
+    final Object value = values.get(key);
+    return null == value ? defValue : (Boolean) value;
+  }
+
+  @Override
+  public boolean contains(final String key) {
+    return values.containsKey(key);
+  }
+
+  @Override
+  public Editor edit() {
+    return new MemoryEditor();
+  }
+
+  @Override
+  public void registerOnSharedPreferenceChangeListener(final OnSharedPreferenceChangeListener listener) {
+  }
+
+  @Override
+  public void unregisterOnSharedPreferenceChangeListener(final OnSharedPreferenceChangeListener listener) {
+  }
+
+  /** Changes are applied to the map on commit/apply, removals first. */
+  private final class MemoryEditor implements Editor {
+    private final Map<String, Object> changes = new HashMap<>();
+    private final Set<String> removals = new HashSet<>();
+    private boolean clear;
+
+    private Editor put(final String key, final Object value) {
+      changes.put(key, value);
+      return this;
+    }
+
+    @Override
+    public Editor putString(final String key, @Nullable final String value) {
+      if (null == value) return remove(key);
+      return put(key, value);
+    }
+
+    @Override
+    public Editor putStringSet(final String key, @Nullable final Set<String> values) {
+      if (null == values) return remove(key);
+      return put(key, values);
+    }
+
+    @Override
+    public Editor putInt(final String key, final int value) {
+      return put(key, value);
+    }
+
+    @Override
+    public Editor putLong(final String key, final long value) {
+      return put(key, value);
+    }
+
+    @Override
+    public Editor putFloat(final String key, final float value) {
+      return put(key, value);
+    }
+
+    @Override
+    public Editor putBoolean(final String key, final boolean value) {
+      return put(key, value);
+    }
+
+    @Override
+    public Editor remove(final String key) {
+      removals.add(key);
+      return this;
+    }
+
+    @Override
+    public Editor clear() {
+      clear = true;
+      return this;
+    }
+
+    @Override
+    public boolean commit() {
+      if (clear) values.clear();
+      values.keySet().removeAll(removals);
+      values.putAll(changes);
+
+      return true;
+    }
+
+    @Override
+    public void apply() {
+      commit();
+    }
+  }
+}
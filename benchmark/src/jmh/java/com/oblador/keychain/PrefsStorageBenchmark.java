@@ -0,0 +1,56 @@
+package com.oblador.keychain;
+
+import com.oblador.keychain.PrefsStorage.ResultSet;
+import com.oblador.keychain.cipherStorage.CipherStorage.EncryptionResult;
+import com.oblador.keychain.cipherStorage.CipherStorageKeystoreAesCbc;
+import com.oblador.keychain.cipherStorage.JvmKeyStore;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/** Base64 encoding and decoding of the entries in shared preferences. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class PrefsStorageBenchmark {
+  private static final String SERVICE = "benchmark";
+
+  /** Length of the encrypted username and password. */
+  @Param({"32", "288", "4112"})
+  public int length;
+
+  private PrefsStorage prefs;
+  private EncryptionResult result;
+
+  @Setup
+  public void setup() throws Exception {
+    final CipherStorageKeystoreAesCbc storage = JvmKeyStore.createAesStorage(SERVICE);
+    final byte[] bytes = new byte[length];
+    new Random(length).nextBytes(bytes);
+
+    prefs = new PrefsStorage(new MemorySharedPreferences());
+    result = new EncryptionResult(bytes, bytes, storage);
+    prefs.storeEncryptedEntry(SERVICE, result);
+  }
+
+  @Benchmark
+  public PrefsStorage storeEncryptedEntry() {
+    prefs.storeEncryptedEntry(SERVICE, result, null, 0);
+
+    return prefs;
+  }
+
+  @Benchmark
+  public ResultSet getEncryptedEntry() {
+    return prefs.getEncryptedEntry(SERVICE);
+  }
+}
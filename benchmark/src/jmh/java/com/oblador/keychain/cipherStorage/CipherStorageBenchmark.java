@@ -0,0 +1,108 @@
+package com.oblador.keychain.cipherStorage;
+
+import com.oblador.keychain.SecurityLevel;
+import com.oblador.keychain.cipherStorage.CipherStorage.DecryptionResult;
+import com.oblador.keychain.cipherStorage.CipherStorage.EncryptionResult;
+import com.oblador.keychain.cipherStorage.CipherStorageBase.IV;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.security.Key;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.Cipher;
+
+/** Encryption primitives and full round trips of the AES storage. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CipherStorageBenchmark {
+  private static final String ALIAS = "benchmark";
+
+  /** Length of the secret, typical password, token and certificate sizes. */
+  @Param({"16", "256", "4096"})
+  public int length;
+
+  private CipherStorageKeystoreAesCbc storage;
+  private Key key;
+  private String value;
+  private byte[] encrypted;
+  private EncryptionResult result;
+  private Cipher cipher;
+  private byte[] iv;
+  private final ByteArrayOutputStream ivOutput = new ByteArrayOutputStream(IV.IV_LENGTH);
+
+  @Setup
+  public void setup() throws Exception {
+    storage = JvmKeyStore.createAesStorage(ALIAS);
+    key = storage.getKeyStoreAndLoad().getKey(ALIAS, null);
+
+    final Random random = new Random(length);
+    final StringBuilder builder = new StringBuilder(length);
+    for (int i = 0; i < length; i++) {
+      builder.append((char) ('!' + random.nextInt('~' - '!')));
+    }
+
+    value = builder.toString();
+    encrypted = storage.encryptString(key, value);
+    result = storage.encrypt(ALIAS, value, value, SecurityLevel.ANY);
+    cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+    iv = new byte[IV.IV_LENGTH];
+    random.nextBytes(iv);
+  }
+
+  @Benchmark
+  public byte[] encryptString() throws Exception {
+    return storage.encryptString(key, value);
+  }
+
+  @Benchmark
+  public String decryptBytes() throws Exception {
+    return storage.decryptBytes(key, encrypted);
+  }
+
+  /** Cipher initialization with random IV and writing of the IV prefix. */
+  @Benchmark
+  public Cipher ivEncrypt() throws Exception {
+    ivOutput.reset();
+    IV.encrypt.initialize(cipher, key, ivOutput);
+
+    return cipher;
+  }
+
+  /** Reading of the IV prefix and cipher initialization by it. */
+  @Benchmark
+  public Cipher ivDecrypt() throws Exception {
+    IV.decrypt.initialize(cipher, key, new ByteArrayInputStream(iv));
+
+    return cipher;
+  }
+
+  @Benchmark
+  public EncryptionResult encrypt() throws Exception {
+    return storage.encrypt(ALIAS, value, value, SecurityLevel.ANY);
+  }
+
+  @Benchmark
+  public DecryptionResult decrypt() throws Exception {
+    return storage.decrypt(ALIAS, result.username, result.password, SecurityLevel.ANY);
+  }
+
+  @Benchmark
+  public void roundTrip(final Blackhole blackhole) throws Exception {
+    final EncryptionResult encrypted = storage.encrypt(ALIAS, value, value, SecurityLevel.ANY);
+
+    blackhole.consume(storage.decrypt(ALIAS, encrypted.username, encrypted.password, SecurityLevel.ANY));
+  }
+}
@@ -0,0 +1,137 @@
+package com.oblador.keychain.cipherStorage;
+
+import androidx.annotation.NonNull;
+
+import com.oblador.keychain.SecurityLevel;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.Key;
+import java.security.KeyStore;
+import java.security.KeyStoreSpi;
+import java.security.cert.Certificate;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Enumeration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+
+/**
+ * In-memory keystore that stands in for AndroidKeyStore on a plain JVM. Keys are generated by
+ * the JRE providers, so benchmarks measure the library code and JCA ciphers, not the keystore IPC.
+ */
+public final class JvmKeyStore extends KeyStore {
+  public JvmKeyStore() throws Exception {
+    super(new Spi(), null, "AndroidKeyStore");
+    load(null);
+  }
+
+  /** AES storage on top of JVM keystore with pre-generated key under provided alias. */
+  @NonNull
+  public static CipherStorageKeystoreAesCbc createAesStorage(@NonNull final String alias) throws Exception {
+    final KeyStore keyStore = new JvmKeyStore();
+    final KeyGenerator generator = KeyGenerator.getInstance("AES");
+    generator.init(256);
+    keyStore.setKeyEntry(alias, generator.generateKey(), null, null);
+
+    final CipherStorageKeystoreAesCbc storage = new CipherStorageKeystoreAesCbc() {
+      /** Key info is available only inside AndroidKeyStore. */
+      @NonNull
+      @Override
+      protected SecurityLevel getSecurityLevel(@NonNull final Key key) {
+        return SecurityLevel.SECURE_SOFTWARE;
+      }
+    };
+
+    // PKCS5 is the JRE name of the same padding
+    storage.setCipher(Cipher.getInstance("AES/CBC/PKCS5Padding")).setKeyStore(keyStore);
+
+    return storage;
+  }
+
+  /** Map based keystore implementation, supports key entries only. */
+  private static final class Spi extends KeyStoreSpi {
+    private final Map<String, Key> keys = new ConcurrentHashMap<>();
+
+    @Override
+    public Key engineGetKey(final String alias, final char[] password) {
+      return keys.get(alias);
+    }
+
+    @Override
+    public Certificate[] engineGetCertificateChain(final String alias) {
+      return null;
+    }
+
+    @Override
+    public Certificate engineGetCertificate(final String alias) {
+      return null;
+    }
+
+    @Override
+    public Date engineGetCreationDate(final String alias) {
+      return null;
+    }
+
+    @Override
+    public void engineSetKeyEntry(final String alias, final Key key, final char[] password, final Certificate[] chain) {
+      keys.put(alias, key);
+    }
+
+    @Override
+    public void engineSetKeyEntry(final String alias, final byte[] key, final Certificate[] chain) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void engineSetCertificateEntry(final String alias, final Certificate cert) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void engineDeleteEntry(final String alias) {
+      keys.remove(alias);
+    }
+
+    @Override
+    public Enumeration<String> engineAliases() {
+      return Collections.enumeration(keys.keySet());
+    }
+
+    @Override
+    public boolean engineContainsAlias(final String alias) {
+      return keys.containsKey(alias);
+    }
+
+    @Override
+    public int engineSize() {
+      return keys.size();
+    }
+
+    @Override
+    public boolean engineIsKeyEntry(final String alias) {
+      return keys.containsKey(alias);
+    }
+
+    @Override
+    public boolean engineIsCertificateEntry(final String alias) {
+      return false;
+    }
+
+    @Override
+    public String engineGetCertificateAlias(final Certificate cert) {
+      return null;
+    }
+
+    @Override
+    public void engineStore(final OutputStream stream, final char[] password) {
+    }
+
+    @Override
+    public void engineLoad(final InputStream stream, final char[] password) {
+    }
+  }
+}
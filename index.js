@@ -1,5 +1,5 @@
 // @flow
-import { NativeModules, Platform } from 'react-native';
+import { DeviceEventEmitter, NativeModules, Platform } from 'react-native';
 
 const { RNKeychainManager } = NativeModules;
 
@@ -51,6 +51,8 @@ export const STORAGE_TYPE = Object.freeze({
 export const SECURITY_RULES = Object.freeze({
   NONE: 'none',
   AUTOMATIC_UPGRADE: 'automaticUpgradeToMoreSecuredStorage',
+  BACKGROUND_UPGRADE: 'backgroundUpgrade',
+  UPGRADE_WITHIN_BUDGET: 'upgradeWithinBudget',
 });
 
 export type SecAccessible = $Values<typeof ACCESSIBLE>;
@@ -79,10 +81,12 @@ type BaseOptions = {|
   accessGroup?: string,
   accessible?: SecAccessible,
   authenticationType?: LAPolicy,
+  authenticationValidityDuration?: number,
   service?: string,
   securityLevel?: SecMinimumLevel,
   storage?: SecStorageType,
   rules?: SecSecurityRules,
+  upgradeBudget?: number,
 |};
 
 type NormalizedOptions = {
@@ -111,6 +115,64 @@ export type SharedWebCredentials = {|
   ...UserCredentials,
 |};
 
+export type RotationOptions = {|
+  batchSize?: number,
+  batchDelay?: number,
+|};
+
+export type MigrationResult = {|
+  +migrated: number,
+  +skipped: number,
+  +failed: number,
+|};
+
+export type MigrationProgress = {|
+  +processed: number,
+  +total: number,
+|};
+
+export type PhaseMetrics = {|
+  +count: number,
+  +mean: number,
+  +p50: number,
+  +p90: number,
+  +p99: number,
+  +max: number,
+|};
+
+export type MetricsCounters = {|
+  +keyReadRetries: number,
+  +keysRecovered: number,
+  +keysLost: number,
+  +entriesPurged: number,
+  +prefetchHits: number,
+|};
+
+export type Metrics = {|
+  +selection: PhaseMetrics,
+  +prefsRead: PhaseMetrics,
+  +prefsWrite: PhaseMetrics,
+  +keyExtract: PhaseMetrics,
+  +encrypt: PhaseMetrics,
+  +decrypt: PhaseMetrics,
+  +migrate: PhaseMetrics,
+  +biometricWait: PhaseMetrics,
+  +counters: MetricsCounters,
+|};
+
+export type FileProgress = {|
+  +path: string,
+  +processed: number,
+  +total: number,
+|};
+
+export type RotationResult = {|
+  +keyVersion: number,
+  +rotated: number,
+  +skipped: number,
+  +failed: number,
+|};
+
 const AUTH_PROMPT_DEFAULTS = {
   title: 'Authenticate to retrieve secret',
   cancel: 'Cancel',
@@ -193,6 +255,34 @@ export function getGenericPassword(
   return RNKeychainManager.getGenericPasswordForOptions(options);
 }
 
+/**
+ * Fetches login combination for `service` synchronously, without the bridge round trip.
+ * Entries protected by biometry need the user interaction, use `getGenericPassword` for them.
+ * @param {object} options A keychain options object.
+ * @return {object} `{ service, username, password, storage }` or `false` if there is no entry,
+ * throws an error with `code` if the entry cannot be read synchronously
+ */
+export function getGenericPasswordSync(
+  serviceOrOptions?: string | Options
+): false | SharedWebCredentials {
+  if (Platform.OS !== 'android') {
+    throw new Error(
+      `getGenericPasswordSync() is not supported on ${Platform.OS} yet`
+    );
+  }
+  const options = normalizeOptions(serviceOrOptions);
+  const result = RNKeychainManager.getGenericPasswordForOptionsSync(options);
+  if (!result) {
+    return false;
+  }
+  if (result.code) {
+    const error: Object = new Error(result.message);
+    error.code = result.code;
+    throw error;
+  }
+  return result;
+}
+
 /**
  * Deletes all generic password keychain entries for `service`.
  * @param {object} options An Keychain options object.
@@ -357,6 +447,134 @@ export function getSecurityLevel(
   return RNKeychainManager.getSecurityLevel(options);
 }
 
+/**
+ * (Android only) Generates new version of the encryption keys and re-encrypts
+ * all stored entries in background.
+ * @param {object} options Batch size and delay between batches in milliseconds.
+ * @return {Promise} Resolves to rotation statistics when supported, otherwise `null`.
+ */
+export function rotateKeys(
+  options?: RotationOptions
+): Promise<null | RotationResult> {
+  if (!RNKeychainManager.rotateKeys) {
+    return Promise.resolve(null);
+  }
+  return RNKeychainManager.rotateKeys(options);
+}
+
+/**
+ * (Android only) Moves all stored entries to the best available storage in
+ * background. Interrupted migration is continued on next app start.
+ * @param {object} options Batch size and delay between batches in milliseconds.
+ * @return {Promise} Resolves to migration statistics when supported, otherwise `null`.
+ */
+export function migrateAll(
+  options?: RotationOptions
+): Promise<null | MigrationResult> {
+  if (!RNKeychainManager.migrateAll) {
+    return Promise.resolve(null);
+  }
+  return RNKeychainManager.migrateAll(options);
+}
+
+/**
+ * (Android only) Subscribes to progress of `migrateAll`.
+ * @param {function} listener Receives `{ processed, total }` events.
+ * @return {object} Subscription, call `remove()` to unsubscribe.
+ */
+export function addMigrationProgressListener(
+  listener: (progress: MigrationProgress) => void
+): { remove: () => void } {
+  return DeviceEventEmitter.addListener('RNKeychainMigrationProgress', listener);
+}
+
+/**
+ * (Android only) Gets latency histograms of the operation phases. Durations
+ * are in milliseconds, percentiles are upper bounds. Event counters are
+ * collected always.
+ * @return {Promise} Resolves to metrics per phase when supported, otherwise `null`.
+ */
+export function getMetrics(): Promise<null | Metrics> {
+  if (!RNKeychainManager.getMetrics) {
+    return Promise.resolve(null);
+  }
+  return RNKeychainManager.getMetrics();
+}
+
+/**
+ * (Android only) Drops collected latency metrics and counters.
+ * @return {Promise} Resolves to `true` when supported, otherwise `false`.
+ */
+export function resetMetrics(): Promise<boolean> {
+  if (!RNKeychainManager.resetMetrics) {
+    return Promise.resolve(false);
+  }
+  return RNKeychainManager.resetMetrics();
+}
+
+/**
+ * (Android only) Decrypts entries of the services in background and keeps
+ * them in memory for a short time, so their first reads resolve immediately.
+ * Each prefetched entry serves a single read. Entries protected by biometry
+ * are skipped.
+ * @param {Array} services Names of the services, as used in the options.
+ * @return {Promise} Resolves to the number of prefetched entries.
+ */
+export function prefetch(services: Array<string>): Promise<number> {
+  if (!RNKeychainManager.prefetch) {
+    return Promise.resolve(0);
+  }
+  return RNKeychainManager.prefetch(services);
+}
+
+/**
+ * (Android only) Encrypts file in background with constant memory usage.
+ * @param {string} inPath Path of the plain file.
+ * @param {string} outPath Path of the encrypted file.
+ * @param {object} options A keychain options object.
+ * @return {Promise} Resolves to `outPath` when done, otherwise `null`.
+ */
+export function encryptFile(
+  inPath: string,
+  outPath: string,
+  options?: Options
+): Promise<null | string> {
+  if (!RNKeychainManager.encryptFile) {
+    return Promise.resolve(null);
+  }
+  return RNKeychainManager.encryptFile(inPath, outPath, options);
+}
+
+/**
+ * (Android only) Decrypts file created by `encryptFile`. Output file appears
+ * only when every chunk of the input is authenticated.
+ * @param {string} inPath Path of the encrypted file.
+ * @param {string} outPath Path of the plain file.
+ * @param {object} options A keychain options object.
+ * @return {Promise} Resolves to `outPath` when done, otherwise `null`.
+ */
+export function decryptFile(
+  inPath: string,
+  outPath: string,
+  options?: Options
+): Promise<null | string> {
+  if (!RNKeychainManager.decryptFile) {
+    return Promise.resolve(null);
+  }
+  return RNKeychainManager.decryptFile(inPath, outPath, options);
+}
+
+/**
+ * (Android only) Subscribes to progress of `encryptFile` and `decryptFile`.
+ * @param {function} listener Receives `{ path, processed, total }` events.
+ * @return {object} Subscription, call `remove()` to unsubscribe.
+ */
+export function addFileProgressListener(
+  listener: (progress: FileProgress) => void
+): { remove: () => void } {
+  return DeviceEventEmitter.addListener('RNKeychainFileProgress', listener);
+}
+
 /** Refs: https://www.saltycrane.com/cheat-sheets/flow-type/latest/ */
 
 export default {
@@ -368,6 +586,15 @@ export default {
   STORAGE_TYPE,
   SECURITY_RULES,
   getSecurityLevel,
+  rotateKeys,
+  migrateAll,
+  addMigrationProgressListener,
+  getMetrics,
+  resetMetrics,
+  prefetch,
+  encryptFile,
+  decryptFile,
+  addFileProgressListener,
   canImplyAuthentication,
   getSupportedBiometryType,
   setInternetCredentials,
@@ -375,6 +602,7 @@ export default {
   resetInternetCredentials,
   setGenericPassword,
   getGenericPassword,
+  getGenericPasswordSync,
   resetGenericPassword,
   requestSharedWebCredentials,
   setSharedWebCredentials,
@@ -3,5 +3,8 @@ rootProject.name = "react-native-keychain"
 include(":library")
 project(":library").projectDir = File(rootProject.projectDir, "./android")
 
+// JMH benchmarks of the library, plain JVM
+include(":benchmark")
+
 // androidx, ReactNative 0.60+
 includeBuild("KeychainExample/android")
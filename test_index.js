@@ -6,9 +6,11 @@ import {
   BIOMETRY_TYPE,
   canImplyAuthentication,
   getGenericPassword,
+  getGenericPasswordSync,
   getInternetCredentials,
   getSupportedBiometryType,
   hasInternetCredentials,
+  prefetch,
   requestSharedWebCredentials,
   resetGenericPassword,
   resetInternetCredentials,
@@ -101,6 +103,13 @@ getGenericPassword({
 });
 getGenericPassword('service');
 
+(getGenericPasswordSync(): boolean | SharedWebCredentials);
+(getGenericPasswordSync('service'): boolean | SharedWebCredentials);
+
+prefetch(['service']).then(result => {
+  (result: number);
+});
+
 resetGenericPassword().then(result => {
   (result: boolean);
 });
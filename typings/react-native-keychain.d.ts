@@ -60,6 +60,8 @@ declare module 'react-native-keychain' {
   export enum SECURITY_RULES {
     NONE = 'none',
     AUTOMATIC_UPGRADE = 'automaticUpgradeToMoreSecuredStorage',
+    BACKGROUND_UPGRADE = 'backgroundUpgrade',
+    UPGRADE_WITHIN_BUDGET = 'upgradeWithinBudget',
   }
 
   export interface AuthenticationPrompt {
@@ -75,10 +77,70 @@ declare module 'react-native-keychain' {
     accessible?: ACCESSIBLE;
     authenticationPrompt?: string | AuthenticationPrompt;
     authenticationType?: AUTHENTICATION_TYPE;
+    authenticationValidityDuration?: number;
     service?: string;
     securityLevel?: SECURITY_LEVEL;
     storage?: STORAGE_TYPE;
     rules?: SECURITY_RULES;
+    upgradeBudget?: number;
+  }
+
+  export interface RotationOptions {
+    batchSize?: number;
+    batchDelay?: number;
+  }
+
+  export interface MigrationResult {
+    migrated: number;
+    skipped: number;
+    failed: number;
+  }
+
+  export interface MigrationProgress {
+    processed: number;
+    total: number;
+  }
+
+  export interface PhaseMetrics {
+    count: number;
+    mean: number;
+    p50: number;
+    p90: number;
+    p99: number;
+    max: number;
+  }
+
+  export interface MetricsCounters {
+    keyReadRetries: number;
+    keysRecovered: number;
+    keysLost: number;
+    entriesPurged: number;
+    prefetchHits: number;
+  }
+
+  export interface Metrics {
+    selection: PhaseMetrics;
+    prefsRead: PhaseMetrics;
+    prefsWrite: PhaseMetrics;
+    keyExtract: PhaseMetrics;
+    encrypt: PhaseMetrics;
+    decrypt: PhaseMetrics;
+    migrate: PhaseMetrics;
+    biometricWait: PhaseMetrics;
+    counters: MetricsCounters;
+  }
+
+  export interface FileProgress {
+    path: string;
+    processed: number;
+    total: number;
+  }
+
+  export interface RotationResult {
+    keyVersion: number;
+    rotated: number;
+    skipped: number;
+    failed: number;
   }
 
   function setGenericPassword(
@@ -91,6 +153,10 @@ declare module 'react-native-keychain' {
     options?: Options
   ): Promise<false | SharedWebCredentials>;
 
+  function getGenericPasswordSync(
+    options?: Options
+  ): false | SharedWebCredentials;
+
   function resetGenericPassword(options?: Options): Promise<boolean>;
 
   function hasInternetCredentials(server: string): Promise<false | Result>;
@@ -131,4 +197,38 @@ declare module 'react-native-keychain' {
   /** ANDROID ONLY */
 
   function getSecurityLevel(options?: Options): Promise<null | SECURITY_LEVEL>;
+
+  function rotateKeys(
+    options?: RotationOptions
+  ): Promise<null | RotationResult>;
+
+  function migrateAll(
+    options?: RotationOptions
+  ): Promise<null | MigrationResult>;
+
+  function addMigrationProgressListener(
+    listener: (progress: MigrationProgress) => void
+  ): { remove(): void };
+
+  function getMetrics(): Promise<null | Metrics>;
+
+  function resetMetrics(): Promise<boolean>;
+
+  function prefetch(services: string[]): Promise<number>;
+
+  function encryptFile(
+    inPath: string,
+    outPath: string,
+    options?: Options
+  ): Promise<null | string>;
+
+  function decryptFile(
+    inPath: string,
+    outPath: string,
+    options?: Options
+  ): Promise<null | string>;
+
+  function addFileProgressListener(
+    listener: (progress: FileProgress) => void
+  ): { remove(): void };
 }